@@ -0,0 +1,58 @@
+package tech.icey.ds.bench;
+
+import java.util.Random;
+
+public enum KeyDistribution {
+    SEQUENTIAL {
+        @Override
+        long[] sample(int keySpace, int count, Random random) {
+            var ret = new long[count];
+            for (var i = 0; i < count; i++) {
+                ret[i] = i % keySpace;
+            }
+            return ret;
+        }
+    },
+
+    RANDOM {
+        @Override
+        long[] sample(int keySpace, int count, Random random) {
+            var permutation = shuffledKeys(keySpace, random);
+            var ret = new long[count];
+            for (var i = 0; i < count; i++) {
+                ret[i] = permutation[i % keySpace];
+            }
+            return ret;
+        }
+    },
+
+    ZIPFIAN {
+        @Override
+        long[] sample(int keySpace, int count, Random random) {
+            var hotOrder = shuffledKeys(keySpace, random);
+            var zipfian = new ZipfianGenerator(keySpace, 0.99);
+            var ret = new long[count];
+            for (var i = 0; i < count; i++) {
+                ret[i] = hotOrder[zipfian.next(random)];
+            }
+            return ret;
+        }
+    };
+
+    // draws count keys from [0, keySpace)
+    abstract long[] sample(int keySpace, int count, Random random);
+
+    private static long[] shuffledKeys(int keySpace, Random random) {
+        var ret = new long[keySpace];
+        for (var i = 0; i < keySpace; i++) {
+            ret[i] = i;
+        }
+        for (var i = keySpace - 1; i > 0; i--) {
+            var j = random.nextInt(i + 1);
+            var t = ret[i];
+            ret[i] = ret[j];
+            ret[j] = t;
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,97 @@
+package tech.icey.ds.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeBenchmark {
+    @Param({"BTREE", "BPLUS_TREE", "TREE_MAP", "SKIP_LIST"})
+    public TreeKind kind;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    @Param({"4", "16", "64"})
+    public int degree;
+
+    @Param({"100000"})
+    public int size;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        var random = new Random(SEED);
+        operationKeys = distribution.sample(size, size, random);
+        populated = kind.create(degree);
+        for (var key : KeyDistribution.RANDOM.sample(size, size, random)) {
+            populated.insert(key);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean get() {
+        var key = operationKeys[cursor];
+        cursor = cursor + 1 == operationKeys.length ? 0 : cursor + 1;
+        return populated.contains(key);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int traverse() {
+        return populated.traverse();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public TreeKind.BenchTree insertAll() {
+        var tree = kind.create(degree);
+        for (var key : operationKeys) {
+            tree.insert(key);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public int deleteAll(DeleteState state) {
+        var deleted = 0;
+        for (var key : operationKeys) {
+            if (state.tree.delete(key)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    @State(Scope.Thread)
+    public static class DeleteState {
+        @Setup(Level.Invocation)
+        public void setUp(TreeBenchmark benchmark) {
+            tree = benchmark.kind.create(benchmark.degree);
+            for (var key = 0L; key < benchmark.size; key++) {
+                tree.insert(key);
+            }
+        }
+
+        TreeKind.BenchTree tree;
+    }
+
+    private static final long SEED = 0x5eed;
+
+    private long[] operationKeys;
+    private TreeKind.BenchTree populated;
+    private int cursor;
+}
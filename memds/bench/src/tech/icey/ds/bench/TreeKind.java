@@ -0,0 +1,118 @@
+package tech.icey.ds.bench;
+
+import tech.icey.ds.BPlusTree;
+import tech.icey.ds.BTree;
+
+import java.util.ArrayList;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+public enum TreeKind {
+    BTREE {
+        @Override
+        BenchTree create(int degree) {
+            var tree = new BTree<Long>(degree);
+            return new BenchTree() {
+                @Override
+                public void insert(long key) {
+                    tree.insert(key);
+                }
+
+                @Override
+                public boolean delete(long key) {
+                    return tree.delete(key);
+                }
+
+                @Override
+                public boolean contains(long key) {
+                    return tree.contains(key);
+                }
+
+                @Override
+                public int traverse() {
+                    return tree.traverse().size();
+                }
+            };
+        }
+    },
+
+    BPLUS_TREE {
+        @Override
+        BenchTree create(int degree) {
+            var tree = new BPlusTree<Long, Long>(degree);
+            return new BenchTree() {
+                @Override
+                public void insert(long key) {
+                    tree.insert(key, key);
+                }
+
+                @Override
+                public boolean delete(long key) {
+                    return tree.delete(key);
+                }
+
+                @Override
+                public boolean contains(long key) {
+                    return tree.containsKey(key);
+                }
+
+                @Override
+                public int traverse() {
+                    return tree.traverse().size();
+                }
+            };
+        }
+    },
+
+    TREE_MAP {
+        @Override
+        BenchTree create(int degree) {
+            return mapTree(new TreeMap<>());
+        }
+    },
+
+    SKIP_LIST {
+        @Override
+        BenchTree create(int degree) {
+            return mapTree(new ConcurrentSkipListMap<>());
+        }
+    };
+
+    abstract BenchTree create(int degree);
+
+    interface BenchTree {
+        void insert(long key);
+
+        boolean delete(long key);
+
+        boolean contains(long key);
+
+        // materializes every entry the way the memds trees do, returns the count so the work is not eliminated
+        int traverse();
+    }
+
+    private static BenchTree mapTree(NavigableMap<Long, Long> map) {
+        return new BenchTree() {
+            @Override
+            public void insert(long key) {
+                map.put(key, key);
+            }
+
+            @Override
+            public boolean delete(long key) {
+                return map.remove(key) != null;
+            }
+
+            @Override
+            public boolean contains(long key) {
+                return map.containsKey(key);
+            }
+
+            @Override
+            public int traverse() {
+                return new ArrayList<>(map.entrySet()).size();
+            }
+        };
+    }
+}
@@ -0,0 +1,41 @@
+package tech.icey.ds.bench;
+
+import java.util.Random;
+
+// Gray et al., "Quickly Generating Billion-Record Synthetic Databases", as used by YCSB
+class ZipfianGenerator {
+    ZipfianGenerator(int itemCount, double theta) {
+        this.itemCount = itemCount;
+        this.theta = theta;
+        this.alpha = 1.0 / (1.0 - theta);
+        this.zetaN = zeta(itemCount, theta);
+        var zeta2 = zeta(2, theta);
+        this.eta = (1.0 - Math.pow(2.0 / itemCount, 1.0 - theta)) / (1.0 - zeta2 / zetaN);
+    }
+
+    int next(Random random) {
+        var u = random.nextDouble();
+        var uz = u * zetaN;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return Math.min(1, itemCount - 1);
+        }
+        return Math.min(itemCount - 1, (int)(itemCount * Math.pow(eta * u - eta + 1.0, alpha)));
+    }
+
+    private static double zeta(int n, double theta) {
+        var sum = 0.0;
+        for (var i = 1; i <= n; i++) {
+            sum += 1.0 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+    private final int itemCount;
+    private final double theta;
+    private final double alpha;
+    private final double zetaN;
+    private final double eta;
+}
@@ -0,0 +1,9 @@
+package tech.icey.basic;
+
+import java.nio.ByteBuffer;
+
+public interface Codec<T> {
+    byte[] encode(T value);
+
+    T decode(ByteBuffer buffer, int offset, int length);
+}
@@ -0,0 +1,88 @@
+package tech.icey.basic;
+
+import java.nio.ByteBuffer;
+
+// every codec here is order-preserving: comparing two encodings byte by byte (unsigned) gives the same
+// result as comparing the values, so paged trees can compare keys without decoding them
+public class Codecs {
+    // UTF-8 applied to each UTF-16 code unit on its own (CESU-8), so surrogates take three bytes each instead of a
+    // supplementary character taking four. Plain UTF-8 follows code point order, which puts U+E000..U+FFFF after
+    // supplementary characters where String.compareTo, going by code unit, puts them before; encoding code units
+    // keeps the byte order identical to String.compareTo. Text without supplementary characters is plain UTF-8
+    public static final Codec<String> STRING = new Codec<>() {
+        @Override
+        public byte[] encode(String value) {
+            var length = 0;
+            for (var i = 0; i < value.length(); i++) {
+                var c = value.charAt(i);
+                length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+            }
+            var bytes = new byte[length];
+            var position = 0;
+            for (var i = 0; i < value.length(); i++) {
+                var c = value.charAt(i);
+                if (c < 0x80) {
+                    bytes[position++] = (byte)c;
+                } else if (c < 0x800) {
+                    bytes[position++] = (byte)(0xC0 | c >>> 6);
+                    bytes[position++] = (byte)(0x80 | c & 0x3F);
+                } else {
+                    bytes[position++] = (byte)(0xE0 | c >>> 12);
+                    bytes[position++] = (byte)(0x80 | c >>> 6 & 0x3F);
+                    bytes[position++] = (byte)(0x80 | c & 0x3F);
+                }
+            }
+            return bytes;
+        }
+
+        @Override
+        public String decode(ByteBuffer buffer, int offset, int length) {
+            var chars = new char[length];
+            var count = 0;
+            var end = offset + length;
+            for (var position = offset; position < end; ) {
+                var b = buffer.get(position++) & 0xFF;
+                if (b < 0x80) {
+                    chars[count++] = (char)b;
+                } else if (b < 0xE0) {
+                    chars[count++] = (char)((b & 0x1F) << 6 | buffer.get(position++) & 0x3F);
+                } else {
+                    var high = (b & 0x0F) << 12 | (buffer.get(position++) & 0x3F) << 6;
+                    chars[count++] = (char)(high | buffer.get(position++) & 0x3F);
+                }
+            }
+            return new String(chars, 0, count);
+        }
+    };
+
+    public static final Codec<Long> LONG = new Codec<>() {
+        @Override
+        public byte[] encode(Long value) {
+            var bits = value ^ Long.MIN_VALUE;
+            var bytes = new byte[8];
+            for (var i = 7; i >= 0; i--) {
+                bytes[i] = (byte)bits;
+                bits >>>= 8;
+            }
+            return bytes;
+        }
+
+        @Override
+        public Long decode(ByteBuffer buffer, int offset, int length) {
+            return buffer.getLong(offset) ^ Long.MIN_VALUE;
+        }
+    };
+
+    public static final Codec<Integer> INT = new Codec<>() {
+        @Override
+        public byte[] encode(Integer value) {
+            var bits = value ^ Integer.MIN_VALUE;
+            return new byte[] { (byte)(bits >>> 24), (byte)(bits >>> 16), (byte)(bits >>> 8), (byte)bits };
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buffer, int offset, int length) {
+            return buffer.getInt(offset) ^ Integer.MIN_VALUE;
+        }
+    };
+}
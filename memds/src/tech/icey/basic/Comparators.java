@@ -0,0 +1,10 @@
+package tech.icey.basic;
+
+import java.util.Comparator;
+
+public class Comparators {
+    @SuppressWarnings("unchecked")
+    public static<T> Comparator<T> naturalOrder() {
+        return (Comparator<T>)Comparator.naturalOrder();
+    }
+}
@@ -0,0 +1,24 @@
+package tech.icey.basic;
+
+import java.util.function.BinaryOperator;
+
+// an associative combine with an identity element, e.g. sum with 0 or max with the smallest value
+public interface Monoid<T> {
+    T identity();
+
+    T combine(T lhs, T rhs);
+
+    static<T> Monoid<T> of(T identity, BinaryOperator<T> combine) {
+        return new Monoid<>() {
+            @Override
+            public T identity() {
+                return identity;
+            }
+
+            @Override
+            public T combine(T lhs, T rhs) {
+                return combine.apply(lhs, rhs);
+            }
+        };
+    }
+}
@@ -0,0 +1,148 @@
+package tech.icey.ds;
+
+import java.util.Arrays;
+
+// The node layout IntBPlusTree, LongBPlusTree, ConcurrentBPlusTree and CopyOnWriteBPlusTree have in common: size keys
+// in an int[], long[] or Object[] and next to them the children of an internal node or the values of a leaf. Splits,
+// merges and borrowing only move slots around, so they are written once here against keyArray() and slots() with
+// System.arraycopy and work whatever the keys are.
+abstract class ArrayBPlusTreeNode {
+    abstract Object keyArray();
+
+    // the size + 1 children of an internal node, the size values of a leaf
+    abstract Object[] slots();
+
+    abstract boolean isLeaf();
+
+    // called on a leaf after the leaf to its right has been merged into it
+    void absorbed(ArrayBPlusTreeNode right) {
+    }
+
+    // removes the separator at separatorIndex together with the child to its right
+    void removeChild(int separatorIndex) {
+        var keys = keyArray();
+        var children = slots();
+        System.arraycopy(keys, separatorIndex + 1, keys, separatorIndex, size - separatorIndex - 1);
+        System.arraycopy(children, separatorIndex + 2, children, separatorIndex + 1, size - separatorIndex - 1);
+        clearKeys(size - 1, size);
+        children[size] = null;
+        size--;
+    }
+
+    // inserts entry sourceIndex of the leaf source at index
+    void insertEntry(int index, ArrayBPlusTreeNode source, int sourceIndex) {
+        var keys = keyArray();
+        var values = slots();
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        System.arraycopy(source.keyArray(), sourceIndex, keys, index, 1);
+        values[index] = source.slots()[sourceIndex];
+        size++;
+    }
+
+    void removeEntry(int index) {
+        var keys = keyArray();
+        var values = slots();
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        clearKeys(size - 1, size);
+        values[size - 1] = null;
+        size--;
+    }
+
+    // primitive keys hold no references, so only Object[] keys need clearing
+    void clearKeys(int from, int to) {
+        if (keyArray() instanceof Object[]) {
+            Arrays.fill((Object[])keyArray(), from, to, null);
+        }
+    }
+
+    int size;
+
+    static int minimumSize(ArrayBPlusTreeNode node, int degree) {
+        return node.isLeaf() ? (degree - 1) / 2 : (degree + 1) / 2 - 1;
+    }
+
+    // moves the upper half of leaf into the empty leaf right, whose first key becomes the separator
+    static void splitLeaf(ArrayBPlusTreeNode leaf, ArrayBPlusTreeNode right) {
+        var mid = leaf.size / 2;
+        right.size = leaf.size - mid;
+        System.arraycopy(leaf.keyArray(), mid, right.keyArray(), 0, right.size);
+        System.arraycopy(leaf.slots(), mid, right.slots(), 0, right.size);
+        leaf.clearKeys(mid, leaf.size);
+        Arrays.fill(leaf.slots(), mid, leaf.size, null);
+        leaf.size = mid;
+    }
+
+    // moves the keys and children right of the middle key into the empty node right. The middle key, at size / 2,
+    // moves up as the separator and is cleared here, so the caller has to read it first
+    static void splitIntNode(ArrayBPlusTreeNode node, ArrayBPlusTreeNode right) {
+        var mid = node.size / 2;
+        right.size = node.size - mid - 1;
+        System.arraycopy(node.keyArray(), mid + 1, right.keyArray(), 0, right.size);
+        System.arraycopy(node.slots(), mid + 1, right.slots(), 0, right.size + 1);
+        node.clearKeys(mid, node.size);
+        Arrays.fill(node.slots(), mid + 1, node.size + 1, null);
+        node.size = mid;
+    }
+
+    // merges the underflowing child at childIndex with its left sibling (the right one for the first child) if both
+    // fit in one node, and moves one entry over from the sibling otherwise
+    static void fixUnderflow(ArrayBPlusTreeNode parent, int childIndex, int degree) {
+        var separatorIndex = childIndex > 0 ? childIndex - 1 : childIndex;
+        var parentKeys = parent.keyArray();
+        var left = (ArrayBPlusTreeNode)parent.slots()[separatorIndex];
+        var right = (ArrayBPlusTreeNode)parent.slots()[separatorIndex + 1];
+        var leftKeys = left.keyArray();
+        var rightKeys = right.keyArray();
+
+        if (left.isLeaf()) {
+            if (left.size + right.size < degree) {
+                System.arraycopy(rightKeys, 0, leftKeys, left.size, right.size);
+                System.arraycopy(right.slots(), 0, left.slots(), left.size, right.size);
+                left.size += right.size;
+                left.absorbed(right);
+                parent.removeChild(separatorIndex);
+            } else if (left.size > right.size) {
+                right.insertEntry(0, left, left.size - 1);
+                left.removeEntry(left.size - 1);
+                System.arraycopy(rightKeys, 0, parentKeys, separatorIndex, 1);
+            } else {
+                left.insertEntry(left.size, right, 0);
+                right.removeEntry(0);
+                System.arraycopy(rightKeys, 0, parentKeys, separatorIndex, 1);
+            }
+            return;
+        }
+
+        var leftChildren = left.slots();
+        var rightChildren = right.slots();
+        if (left.size + right.size + 1 < degree) {
+            System.arraycopy(parentKeys, separatorIndex, leftKeys, left.size, 1);
+            System.arraycopy(rightKeys, 0, leftKeys, left.size + 1, right.size);
+            System.arraycopy(rightChildren, 0, leftChildren, left.size + 1, right.size + 1);
+            left.size += right.size + 1;
+            parent.removeChild(separatorIndex);
+        } else if (left.size > right.size) {
+            System.arraycopy(rightKeys, 0, rightKeys, 1, right.size);
+            System.arraycopy(rightChildren, 0, rightChildren, 1, right.size + 1);
+            System.arraycopy(parentKeys, separatorIndex, rightKeys, 0, 1);
+            rightChildren[0] = leftChildren[left.size];
+            right.size++;
+            System.arraycopy(leftKeys, left.size - 1, parentKeys, separatorIndex, 1);
+            left.clearKeys(left.size - 1, left.size);
+            leftChildren[left.size] = null;
+            left.size--;
+        } else {
+            System.arraycopy(parentKeys, separatorIndex, leftKeys, left.size, 1);
+            leftChildren[left.size + 1] = rightChildren[0];
+            left.size++;
+            System.arraycopy(rightKeys, 0, parentKeys, separatorIndex, 1);
+            System.arraycopy(rightKeys, 1, rightKeys, 0, right.size - 1);
+            System.arraycopy(rightChildren, 1, rightChildren, 0, right.size);
+            right.clearKeys(right.size - 1, right.size);
+            rightChildren[right.size] = null;
+            right.size--;
+        }
+    }
+}
@@ -1,551 +1,644 @@
 package tech.icey.ds;
 
-import tech.icey.basic.ListUtil;
+import jdk.jfr.EventType;
+import tech.icey.basic.Comparators;
+import tech.icey.basic.Monoid;
 import tech.icey.basic.Pair;
+import tech.icey.metrics.TreeMetrics;
+import tech.icey.metrics.TreeOperationEvent;
 import tech.icey.util.DirectedGraph;
-import tech.icey.util.GlobalIdAllocator;
 import tech.icey.util.Graphvizible;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-
-abstract class BPlusTreeNode {
-    BPlusTreeNode(int degree, BPlusTreeNode parent, BPlusTreeNode leftSibling, BPlusTreeNode rightSibling) {
-        this.degree = degree;
-        this.parent = parent;
-        this.leftSibling = leftSibling;
-        this.rightSibling = rightSibling;
-        this.globalId = GlobalIdAllocator.getInstance().nextId();
-    }
-
-    void setParent(BPlusTreeNode parent) {
-        this.parent = parent;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+class BPlusTreeRangeIterator<K, V> implements Iterator<Pair<K, V>> {
+    BPlusTreeRangeIterator(BPlusTreeNode<K, V> rootNode, K fromKey, K toKey, boolean descending) {
+        this.comparator = rootNode.pool.comparator;
+        this.fromKey = fromKey;
+        this.toKey = toKey;
+        this.descending = descending;
+        if (!descending) {
+            if (fromKey == null) {
+                this.leaf = rootNode.firstLeaf();
+                this.index = 0;
+            } else {
+                this.leaf = rootNode.findLeaf(fromKey);
+                var searchResult = leaf.search(fromKey);
+                this.index = searchResult >= 0 ? searchResult : -(searchResult + 1);
+            }
+        } else {
+            if (toKey == null) {
+                this.leaf = rootNode.lastLeaf();
+                this.index = leaf.size() - 1;
+            } else {
+                this.leaf = rootNode.findLeaf(toKey);
+                var searchResult = leaf.search(toKey);
+                this.index = (searchResult >= 0 ? searchResult : -(searchResult + 1)) - 1;
+            }
+        }
+        seek();
     }
 
-    void setLeftSibling(BPlusTreeNode leftSibling) {
-        this.leftSibling = leftSibling;
+    @Override
+    public boolean hasNext() {
+        return next != null;
     }
 
-    void setRightSibling(BPlusTreeNode rightSibling) {
-        this.rightSibling = rightSibling;
+    @Override
+    public Pair<K, V> next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        var ret = next;
+        if (descending) {
+            index--;
+        } else {
+            index++;
+        }
+        seek();
+        return ret;
     }
 
-    abstract void buildUpDirectedGraph(DirectedGraph d);
-
-    abstract BPlusTreeNode insert(String key, String value);
-    abstract protected BPlusTreeNode onChildExplode(BPlusTreeNode exploded, String powder,
-                                                    BPlusTreeNode leftChild, BPlusTreeNode rightChild);
-    abstract Pair<Boolean, BPlusTreeNode> delete(String key);
-    abstract protected BPlusTreeNode onChildrenShrink(BPlusTreeNode child1, BPlusTreeNode child2,
-                                                      int separatorIndex, BPlusTreeNode newChild);
-    abstract protected Pair<String, Integer> getSeparator(BPlusTreeNode child1, BPlusTreeNode child2);
-
-    abstract void traverse(List<Pair<String, String>> outputKV);
-
-    abstract String buildDescriptor();
+    private void seek() {
+        if (descending) {
+            while (leaf != null && index < 0) {
+                leaf = leaf.getLeftSibling();
+                index = leaf == null ? -1 : leaf.size() - 1;
+            }
+        } else {
+            while (leaf != null && index >= leaf.size()) {
+                leaf = leaf.getRightSibling();
+                index = 0;
+            }
+        }
 
-    protected int degree;
-    protected BPlusTreeNode parent, leftSibling, rightSibling;
+        if (leaf == null) {
+            next = null;
+            return;
+        }
+        var candidate = leaf.entryAt(index);
+        if (descending && fromKey != null && comparator.compare(candidate.getFirst(), fromKey) < 0) {
+            next = null;
+        } else if (!descending && toKey != null && comparator.compare(candidate.getFirst(), toKey) >= 0) {
+            next = null;
+        } else {
+            next = candidate;
+        }
+    }
 
-    protected int globalId;
+    private final Comparator<? super K> comparator;
+    private final K fromKey, toKey;
+    private final boolean descending;
+    private BPlusTreeLeafNode<K, V> leaf;
+    private int index;
+    private Pair<K, V> next;
+}
 
-    protected abstract void onChildrenReBalance(int separatorIndex, String newSeparator);
 
-    protected enum WhichSibling { LeftSibling, RightSibling }
-}
+// hands out disjoint child ranges of an internal node (or entry ranges of a leaf) on trySplit, descending through
+// single-child ranges, and walks the leaf chain once traversal has started. Exact sizes need the per-child counts
+// kept by order statistics, otherwise the estimate is halved on every split
+class BPlusTreeSpliterator<K, V> implements Spliterator<Pair<K, V>> {
+    BPlusTreeSpliterator(BPlusTreeNode<K, V> rootNode) {
+        this.comparator = rootNode.pool.comparator;
+        this.sized = rootNode.pool.orderStatistics;
+        this.node = rootNode;
+        this.from = 0;
+        this.to = positionCount(rootNode);
+        this.estimate = sized || rootNode instanceof BPlusTreeLeafNode ? countRange(from, to) : Long.MAX_VALUE;
+    }
 
-class BPlusTreeIntNode extends BPlusTreeNode {
-    BPlusTreeIntNode(int degree, BPlusTreeNode parent, BPlusTreeNode leftSibling, BPlusTreeNode rightSibling,
-                     List<String> keys, List<BPlusTreeNode> children) {
-        super(degree, parent, leftSibling, rightSibling);
-        this.keys = keys;
-        this.children = children;
+    private BPlusTreeSpliterator(BPlusTreeSpliterator<K, V> parent, int from, int to, long estimate) {
+        this.comparator = parent.comparator;
+        this.sized = parent.sized;
+        this.node = parent.node;
+        this.from = from;
+        this.to = to;
+        this.estimate = estimate;
     }
 
     @Override
-    void buildUpDirectedGraph(DirectedGraph d) {
-        var selfDescriptor = buildDescriptor();
-        if (parent != null) {
-            d.addEdge(selfDescriptor, parent.buildDescriptor());
+    public boolean tryAdvance(Consumer<? super Pair<K, V>> action) {
+        if (leaf == null) {
+            start();
         }
-        for (var child : children) {
-            d.addEdge(selfDescriptor, child.buildDescriptor());
+        while (leaf != end && index >= leaf.size()) {
+            leaf = leaf.getRightSibling();
+            index = 0;
         }
-        for (var child : children) {
-            child.buildUpDirectedGraph(d);
+        if (leaf == end && index >= endIndex) {
+            return false;
         }
-        if (leftSibling != null) {
-            d.addEdge(selfDescriptor, leftSibling.buildDescriptor());
+        action.accept(leaf.entryAt(index++));
+        estimate--;
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Pair<K, V>> action) {
+        if (leaf == null) {
+            start();
         }
-        if (rightSibling != null) {
-            d.addEdge(selfDescriptor, rightSibling.buildDescriptor());
-            d.addSameRankNodes(selfDescriptor, rightSibling.buildDescriptor());
+        while (true) {
+            var limit = leaf == end ? endIndex : leaf.size();
+            while (index < limit) {
+                action.accept(leaf.entryAt(index++));
+            }
+            if (leaf == end) {
+                break;
+            }
+            leaf = leaf.getRightSibling();
+            index = 0;
         }
+        estimate = 0;
     }
 
     @Override
-    BPlusTreeNode insert(String key, String value) {
-        for (var i = 0; i < keys.size(); i++) {
-            if (keys.get(i).compareTo(key) > 0) {
-                return children.get(i).insert(key, value);
+    public Spliterator<Pair<K, V>> trySplit() {
+        if (leaf != null) {
+            return null;
+        }
+        while (to - from == 1 && node instanceof BPlusTreeIntNode) {
+            node = ((BPlusTreeIntNode<K, V>)node).childAt(from);
+            from = 0;
+            to = positionCount(node);
+            if (node instanceof BPlusTreeLeafNode) {
+                // the halved guesses end here, a leaf knows its size
+                estimate = countRange(from, to);
             }
         }
-        return children.get(children.size() - 1).insert(key, value);
+        if (to - from < 2) {
+            return null;
+        }
+
+        var mid = (from + to) >>> 1;
+        BPlusTreeSpliterator<K, V> prefix;
+        if (sized || node instanceof BPlusTreeLeafNode) {
+            prefix = new BPlusTreeSpliterator<>(this, from, mid, countRange(from, mid));
+            estimate = countRange(mid, to);
+        } else {
+            estimate >>>= 1;
+            prefix = new BPlusTreeSpliterator<>(this, from, mid, estimate);
+        }
+        from = mid;
+        return prefix;
     }
 
     @Override
-    protected BPlusTreeNode onChildExplode(BPlusTreeNode exploded, String powder,
-                                           BPlusTreeNode leftChild, BPlusTreeNode rightChild) {
-        var explodedIndex = children.indexOf(exploded);
-        children.remove(explodedIndex);
-        children.add(explodedIndex, rightChild);
-        children.add(explodedIndex, leftChild);
-        keys.add(explodedIndex, powder);
-        return maybeExplode();
+    public long estimateSize() {
+        return estimate;
     }
 
     @Override
-    Pair<Boolean, BPlusTreeNode> delete(String key) {
-        for (var i = 0; i < this.keys.size(); i++) {
-            if (keys.get(i).compareTo(key) > 0) {
-                return children.get(i).delete(key);
-            }
+    public int characteristics() {
+        var ret = Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL;
+        if (sized || node instanceof BPlusTreeLeafNode) {
+            ret |= Spliterator.SIZED | Spliterator.SUBSIZED;
         }
-        return children.get(children.size() - 1).delete(key);
+        return ret;
     }
 
     @Override
-    protected BPlusTreeNode onChildrenShrink(BPlusTreeNode child1, BPlusTreeNode child2,
-                                             int separatorIndex, BPlusTreeNode newChild) {
-        this.children.remove(child1);
-        this.children.remove(child2);
-        this.children.add(separatorIndex, newChild);
-        this.keys.remove(separatorIndex);
-
-        if (this.parent == null && this.keys.size() == 0) {
-            this.children.get(0).setParent(null);
-            return this.children.get(0);
-        } else {
-            return maybeShrink();
-        }
-    }
-
-    private BPlusTreeNode maybeShrink() {
-        if (this.keys.size() == 0) {
-            var siblingP = chooseSibling();
-            var sibling = siblingP.getFirst();
-            var whichSibling = siblingP.getSecond();
-            var separatorP = parent.getSeparator(this, sibling);
-            var separator = separatorP.getFirst();
-            var separatorIndex = separatorP.getSecond();
-            var allKeys = new ArrayList<String>();
-            var allChildren = new ArrayList<BPlusTreeNode>();
-
-            if (whichSibling == WhichSibling.LeftSibling) {
-                allKeys.addAll(sibling.keys);
-                allKeys.add(separator);
-                allKeys.addAll(keys);
-                allChildren.addAll(sibling.children);
-                allChildren.addAll(this.children);
-            } else {
-                allKeys.addAll(keys);
-                allKeys.add(separator);
-                allKeys.addAll(sibling.keys);
-                allChildren.addAll(this.children);
-                allChildren.addAll(sibling.children);
-            }
-
-            if (allKeys.size() < degree) {
-                BPlusTreeNode newNodeLeftSibling, newNodeRightSibling;
-                if (whichSibling == WhichSibling.LeftSibling) {
-                    newNodeLeftSibling = sibling.leftSibling;
-                    newNodeRightSibling = this.rightSibling;
-                } else {
-                    newNodeLeftSibling = this.leftSibling;
-                    newNodeRightSibling = sibling.rightSibling;
-                }
-                var newNode = new BPlusTreeIntNode(degree, this.parent, newNodeLeftSibling,
-                                                   newNodeRightSibling, allKeys, allChildren);
-                for (var child : allChildren) {
-                    child.setParent(newNode);
-                }
-                if (newNodeLeftSibling != null) {
-                    newNodeLeftSibling.setRightSibling(newNode);
-                }
-                if (newNodeRightSibling != null) {
-                    newNodeRightSibling.setLeftSibling(newNode);
-                }
-                return parent.onChildrenShrink(this, sibling, separatorIndex, newNode);
-            } else {
-                var leftKeys = ListUtil.copy(allKeys.subList(0, allKeys.size() / 2));
-                var rightKeys = ListUtil.copy(allKeys.subList(allKeys.size() / 2 + 1, allKeys.size()));
-                var newSeparator = allKeys.get(allKeys.size() / 2);
-                var leftChildren = ListUtil.copy(allChildren.subList(0, (allChildren.size() + 1) / 2));
-                var rightChildren = ListUtil.copy(allChildren.subList((allChildren.size() + 1) / 2, allChildren.size()));
-
-                if (whichSibling == WhichSibling.LeftSibling) {
-                    sibling.keys = leftKeys;
-                    sibling.children = leftChildren;
-                    this.keys = rightKeys;
-                    this.children = rightChildren;
-                } else {
-                    this.keys = leftKeys;
-                    this.children = leftChildren;
-                    sibling.keys = rightKeys;
-                    sibling.children = rightChildren;
-                }
-
-                for (var child : this.children) {
-                    child.setParent(this);
-                }
-                for (var child : sibling.children) {
-                    child.setParent(sibling);
-                }
+    public Comparator<? super Pair<K, V>> getComparator() {
+        return (lhs, rhs) -> comparator.compare(lhs.getFirst(), rhs.getFirst());
+    }
 
-                var parent = (BPlusTreeIntNode)this.parent;
-                parent.keys.set(separatorIndex, newSeparator);
-                return null;
-            }
+    private void start() {
+        if (node instanceof BPlusTreeIntNode) {
+            var intNode = (BPlusTreeIntNode<K, V>)node;
+            leaf = intNode.childAt(from).firstLeaf();
+            index = 0;
+            end = intNode.childAt(to - 1).lastLeaf();
+            endIndex = end.size();
         } else {
-            return null;
+            leaf = end = (BPlusTreeLeafNode<K, V>)node;
+            index = from;
+            endIndex = to;
         }
     }
 
-    private Pair<BPlusTreeIntNode, WhichSibling> chooseSibling() {
-        var leftSibling = (BPlusTreeIntNode) this.leftSibling;
-        var rightSibling = (BPlusTreeIntNode) this.rightSibling;
-        if (leftSibling == null || leftSibling.parent != this.parent) {
-            return new Pair<>(rightSibling, WhichSibling.RightSibling);
-        } else if (rightSibling == null || rightSibling.parent != this.parent) {
-            return new Pair<>(leftSibling, WhichSibling.LeftSibling);
-        } else {
-            return leftSibling.keys.size() > rightSibling.keys.size()
-                    ? new Pair<>(leftSibling, WhichSibling.LeftSibling)
-                    : new Pair<>(rightSibling, WhichSibling.RightSibling);
+    private long countRange(int from, int to) {
+        if (node instanceof BPlusTreeLeafNode) {
+            return to - from;
         }
+        var intNode = (BPlusTreeIntNode<K, V>)node;
+        var ret = 0L;
+        for (var i = from; i < to; i++) {
+            ret += intNode.countAt(i);
+        }
+        return ret;
     }
 
-    @Override
-    protected Pair<String, Integer> getSeparator(BPlusTreeNode child1, BPlusTreeNode child2) {
-        var ret = this.children.indexOf(child1);
-        if (child1.leftSibling == child2) {
-            ret -= 1;
-        }
-        return new Pair<>(keys.get(ret), ret);
+    // children of an internal node, entries of a leaf
+    private static int positionCount(BPlusTreeNode<?, ?> node) {
+        return node instanceof BPlusTreeIntNode ? node.size + 1 : node.size;
     }
 
-    @Override
-    void traverse(List<Pair<String, String>> outputKV) {
-        this.children.get(0).traverse(outputKV);
+    private final Comparator<? super K> comparator;
+    private final boolean sized;
+    private BPlusTreeNode<K, V> node;
+    private int from, to;
+    private long estimate;
+    private BPlusTreeLeafNode<K, V> leaf, end;
+    private int index, endIndex;
+}
+
+
+public class BPlusTree<K, V> implements Graphvizible  {
+    // comparisons go through rootNode.pool.comparator, which enableMetrics swaps for a counting one
+    private BPlusTreeNode<K, V> rootNode;
+
+    private static final EventType OPERATION_EVENT_TYPE = EventType.getEventType(TreeOperationEvent.class);
+
+    public BPlusTree(int degree) {
+        this(degree, Comparators.naturalOrder());
     }
 
-    @Override
-    String buildDescriptor() {
-        var builder = new StringBuilder("(");
-        builder.append(globalId);
-        builder.append(") ");
-        if (this.keys.isEmpty()) {
-            return builder.toString();
+    public BPlusTree(int degree, Comparator<? super K> comparator) {
+        this(degree, comparator, 0);
+    }
+
+    // nodes released by merges are kept, up to nodePoolCapacity of each kind, and reused by later splits; with a
+    // pool, iterators must not be used across a delete
+    public BPlusTree(int degree, Comparator<? super K> comparator, int nodePoolCapacity) {
+        this.rootNode = new BPlusTreeNodePool<K, V>(degree, comparator, nodePoolCapacity).newLeaf(null, null, null);
+    }
+
+    BPlusTree(BPlusTreeNode<K, V> rootNode) {
+        this.rootNode = rootNode;
+    }
+
+    public void insert(K key, V value) {
+        var event = beginOperation();
+        if (rootNode.pool.metrics != null) {
+            rootNode.pool.metrics.recordInsert();
+        }
+        var newRoot = rootNode.insert(key, value);
+        if (newRoot != null) {
+            rootNode = newRoot;
         }
-        for (var i = 0; i < this.keys.size() - 1; i++) {
-            builder.append(this.keys.get(i));
-            builder.append(", ");
+        endOperation(event, "insert", key);
+    }
+
+    // routes each run of batch keys that falls into the same leaf with a single descent, duplicate keys keep the
+    // value that comes last in the batch
+    @SuppressWarnings("unchecked")
+    public void insertAll(Collection<Pair<K, V>> batch) {
+        var event = beginOperation();
+        var comparator = rootNode.pool.comparator;
+        var entries = new ArrayList<>(batch);
+        for (var i = 1; i < entries.size(); i++) {
+            if (comparator.compare(entries.get(i - 1).getFirst(), entries.get(i).getFirst()) > 0) {
+                entries.sort((lhs, rhs) -> comparator.compare(lhs.getFirst(), rhs.getFirst()));
+                break;
+            }
         }
-        builder.append(this.keys.get(this.keys.size() - 1));
-        return builder.toString();
-    }
 
-    @Override
-    protected void onChildrenReBalance(int separatorIndex, String newSeparator) {
-        this.keys.set(separatorIndex, newSeparator);
-    }
-
-    private BPlusTreeNode maybeExplode() {
-        if (this.children.size() > degree) {
-            var powder = keys.get(keys.size() / 2);
-            var leftKeys = ListUtil.copy(keys.subList(0, keys.size() / 2));
-            var rightKeys = ListUtil.copy(keys.subList(keys.size() / 2 + 1, keys.size()));
-            var leftChildren = ListUtil.copy(children.subList(0, keys.size() / 2 + 1));
-            var rightChildren = ListUtil.copy(children.subList(keys.size() / 2 + 1, keys.size() + 1));
-
-            var leftNode = new BPlusTreeIntNode(degree, this.parent, this.leftSibling,
-                                     null, leftKeys, leftChildren);
-            var rightNode = new BPlusTreeIntNode(degree, this.parent, null,
-                                                 this.rightSibling, rightKeys, rightChildren);
-            leftNode.setRightSibling(rightNode);
-            rightNode.setLeftSibling(leftNode);
-
-            if (leftSibling != null) {
-                leftSibling.rightSibling = leftNode;
+        if (rootNode.pool.metrics != null) {
+            for (var i = 0; i < entries.size(); i++) {
+                rootNode.pool.metrics.recordInsert();
             }
-            if (rightSibling != null) {
-                rightSibling.leftSibling = rightNode;
+        }
+
+        var keys = new Object[entries.size()];
+        var values = new Object[entries.size()];
+        var count = 0;
+        for (var entry : entries) {
+            if (count > 0 && comparator.compare((K)keys[count - 1], entry.getFirst()) == 0) {
+                count--;
             }
+            keys[count] = entry.getFirst();
+            values[count] = entry.getSecond();
+            count++;
+        }
 
-            for (var child : leftChildren) {
-                child.setParent(leftNode);
+        var from = 0;
+        while (from < count) {
+            var leaf = rootNode.findLeaf((K)keys[from]);
+            var bound = leaf.upperBound();
+            var to = from + 1;
+            while (to < count && (bound == null || comparator.compare((K)keys[to], bound) < 0)) {
+                to++;
             }
-            for (var child : rightChildren) {
-                child.setParent(rightNode);
+            var newRoot = leaf.insertRun(keys, values, from, to);
+            if (newRoot != null) {
+                rootNode = newRoot;
             }
+            from = to;
+        }
+        endOperation(event, "insertAll", null);
+    }
 
-            if (this.parent == null) {
-                var newRoot = new BPlusTreeIntNode(degree, null, null, null,
-                                                   ListUtil.copy(List.of(powder)),
-                                                   ListUtil.copy(List.of(leftNode, rightNode)));
-                leftNode.setParent(newRoot);
-                rightNode.setParent(newRoot);
-                return newRoot;
-            } else {
-                return parent.onChildExplode(this, powder, leftNode, rightNode);
-            }
-        } else {
-            return null;
+    public boolean delete(K key) {
+        var event = beginOperation();
+        if (rootNode.pool.metrics != null) {
+            rootNode.pool.metrics.recordDelete();
+        }
+        var deleteResult = rootNode.delete(key);
+        if (deleteResult.getSecond() != null) {
+            rootNode = deleteResult.getSecond();
         }
+        endOperation(event, "delete", key);
+        return deleteResult.getFirst();
     }
 
-    private List<String> keys;
-    private List<BPlusTreeNode> children;
-}
+    public V get(K key) {
+        var event = beginOperation();
+        var leaf = findLeaf(key);
+        var index = leaf.mightContain(key) ? leaf.search(key) : -1;
+        var ret = index >= 0 ? leaf.valueAt(index) : null;
+        endOperation(event, "get", key);
+        return ret;
+    }
 
-class BPlusTreeLeafNode extends BPlusTreeNode {
-    BPlusTreeLeafNode(int degree, BPlusTreeNode parent,
-                      BPlusTreeNode leftSibling, BPlusTreeNode rightSibling,
-                      List<Pair<String, String>> kvPairs) {
-        super(degree, parent, leftSibling, rightSibling);
-        this.kvPairs = kvPairs;
+    public boolean containsKey(K key) {
+        var event = beginOperation();
+        var leaf = findLeaf(key);
+        var ret = leaf.mightContain(key) && leaf.search(key) >= 0;
+        endOperation(event, "containsKey", key);
+        return ret;
     }
 
-    @Override
-    void buildUpDirectedGraph(DirectedGraph d) {
-        var selfDescriptor = buildDescriptor();
-        if (parent != null) {
-            d.addEdge(selfDescriptor, parent.buildDescriptor());
-        }
-        if (this.leftSibling != null) {
-            d.addEdge(selfDescriptor, leftSibling.buildDescriptor());
-        }
-        if (this.rightSibling != null) {
-            d.addEdge(selfDescriptor, rightSibling.buildDescriptor());
-            d.addSameRankNodes(selfDescriptor, rightSibling.buildDescriptor());
+    public Pair<K, V> floorEntry(K key) {
+        var leaf = findLeaf(key);
+        var index = leaf.search(key);
+        if (index >= 0) {
+            return leaf.entryAt(index);
         }
+        return lastEntryBefore(leaf, -(index + 1));
     }
 
-    @Override
-    BPlusTreeNode insert(String key, String value) {
-        for (var i = 0; i < kvPairs.size(); i++) {
-            var compareResult = kvPairs.get(i).getFirst().compareTo(key);
-            if (compareResult > 0) {
-                kvPairs.add(i, new Pair<>(key, value));
-                return maybeExplode();
-            } else if (compareResult == 0) {
-                kvPairs.set(i, new Pair<>(key, value));
-                return null;
-            }
+    public Pair<K, V> ceilingEntry(K key) {
+        var leaf = findLeaf(key);
+        var index = leaf.search(key);
+        if (index >= 0) {
+            return leaf.entryAt(index);
         }
-        kvPairs.add(new Pair<>(key, value));
-        return maybeExplode();
+        return firstEntryFrom(leaf, -(index + 1));
     }
 
-    private BPlusTreeNode maybeExplode() {
-        if (this.kvPairs.size() >= degree) {
-            var powder = this.kvPairs.get(this.kvPairs.size() / 2);
-            var leftKVPairs = ListUtil.copy(this.kvPairs.subList(0, this.kvPairs.size() / 2));
-            var rightKVPairs = ListUtil.copy(this.kvPairs.subList(this.kvPairs.size() / 2, this.kvPairs.size()));
-
-            var leftNode = new BPlusTreeLeafNode(degree, this.parent, this.leftSibling, null, leftKVPairs);
-            var rightNode = new BPlusTreeLeafNode(degree, this.parent, null, this.rightSibling, rightKVPairs);
-            leftNode.setRightSibling(rightNode);
-            rightNode.setLeftSibling(leftNode);
+    public Pair<K, V> firstEntry() {
+        return firstEntryFrom(rootNode.firstLeaf(), 0);
+    }
 
-            if (leftSibling != null) {
-                leftSibling.rightSibling = leftNode;
-            }
-            if (rightSibling != null) {
-                rightSibling.leftSibling = rightNode;
-            }
+    public Pair<K, V> lastEntry() {
+        var leaf = rootNode.lastLeaf();
+        return lastEntryBefore(leaf, leaf.size());
+    }
 
-            if (parent == null) {
-                var newRoot = new BPlusTreeIntNode(degree, null, null, null,
-                                                ListUtil.copy(List.of(powder.getFirst())),
-                                                ListUtil.copy(List.of(leftNode, rightNode)));
-                leftNode.parent = newRoot;
-                rightNode.parent = newRoot;
-                return newRoot;
-            } else {
-                return parent.onChildExplode(this, powder.getFirst(), leftNode, rightNode);
-            }
-        } else {
+    // null unless a recording has TreeOperationEvent enabled, so outside of one an operation neither allocates nor
+    // writes anything. The event holds the pool counters as of the start, endOperation turns them into the deltas;
+    // nothing is reset, so lookups only read shared state
+    private TreeOperationEvent beginOperation() {
+        if (!OPERATION_EVENT_TYPE.isEnabled()) {
             return null;
         }
+        var pool = rootNode.pool;
+        var event = new TreeOperationEvent();
+        event.levelsSplit = pool.levelsSplit;
+        event.levelsMerged = pool.levelsMerged;
+        event.nodesAllocated = pool.nodesAllocated;
+        event.begin();
+        return event;
+    }
+
+    private void endOperation(TreeOperationEvent event, String operation, K key) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            var pool = rootNode.pool;
+            event.tree = "BPlusTree";
+            event.operation = operation;
+            event.keySize = TreeOperationEvent.keySize(key);
+            event.levelsSplit = pool.levelsSplit - event.levelsSplit;
+            event.levelsMerged = pool.levelsMerged - event.levelsMerged;
+            event.nodesAllocated = pool.nodesAllocated - event.nodesAllocated;
+            event.commit();
+        }
     }
 
-    @Override
-    protected BPlusTreeNode onChildExplode(BPlusTreeNode exploded, String powder,
-                                           BPlusTreeNode leftChild, BPlusTreeNode rightChild) {
-        assert false;
-        return null;
+    private BPlusTreeLeafNode<K, V> findLeaf(K key) {
+        if (rootNode.pool.metrics != null) {
+            rootNode.pool.metrics.recordLookup();
+        }
+        return rootNode.findLeaf(key);
     }
 
-    @Override
-    Pair<Boolean, BPlusTreeNode> delete(String key) {
-        var index = getDeletionIndex(key);
-        if (index == -1) {
-            return new Pair<>(false, null);
-        }
-        kvPairs.remove(index);
-        return new Pair<>(true, maybeShrink());
+    // by default a node is only merged away once a delete empties it; with a minimum fill f in [0, 0.5], leaves
+    // holding fewer than f * (degree - 1) entries, and internal nodes with fewer keys, are merged with or refilled
+    // from a sibling as soon as a delete leaves them there
+    public void setMinimumFill(double minimumFill) {
+        rootNode.pool.setMinimumFill(minimumFill);
     }
 
-    private BPlusTreeNode maybeShrink() {
-        if (parent == null) {
-            return null;
+    // gives every leaf a small Bloom filter over its keys, so most lookups and deletes of absent keys are turned
+    // away by a hash probe instead of a binary search; keys the comparator considers equal must have equal hashCodes
+    public void enableLeafFilters() {
+        var pool = rootNode.pool;
+        if (pool.filterWords == 0) {
+            pool.enableLeafFilters();
+            for (var leaf = rootNode.firstLeaf(); leaf != null; leaf = leaf.getRightSibling()) {
+                leaf.rebuildFilter();
+            }
         }
+    }
 
-        if (this.kvPairs.size() == 0) {
-            var siblingP = chooseSibling();
-            var sibling = siblingP.getFirst();
-            var whichSibling = siblingP.getSecond();
-            var separatorP = parent.getSeparator(this, sibling);
-            var separatorIndex = separatorP.getSecond();
-            var allKVPairs = new ArrayList<Pair<String, String>>();
-            if (whichSibling == WhichSibling.LeftSibling) {
-                allKVPairs.addAll(sibling.kvPairs);
-                allKVPairs.addAll(this.kvPairs);
-            } else {
-                allKVPairs.addAll(this.kvPairs);
-                allKVPairs.addAll(sibling.kvPairs);
-            }
-
-            if (allKVPairs.size() < degree) {
-                BPlusTreeNode newNodeLeftSibling, newNodeRightSibling;
-                if (whichSibling == WhichSibling.LeftSibling) {
-                    newNodeLeftSibling = sibling.leftSibling;
-                    newNodeRightSibling = this.rightSibling;
-                } else {
-                    newNodeLeftSibling = this.leftSibling;
-                    newNodeRightSibling = sibling.rightSibling;
-                }
-                var newNode = new BPlusTreeLeafNode(degree, this.parent, newNodeLeftSibling,
-                                                    newNodeRightSibling, allKVPairs);
-                if (newNodeLeftSibling != null) {
-                    newNodeLeftSibling.setRightSibling(newNode);
-                }
-                if (newNodeRightSibling != null) {
-                    newNodeRightSibling.setLeftSibling(newNode);
-                }
-                return parent.onChildrenShrink(this, sibling, separatorIndex, newNode);
-            } else {
-                var leftKVPairs = ListUtil.copy(allKVPairs.subList(0, allKVPairs.size() / 2));
-                var rightKVPairs = ListUtil.copy(allKVPairs.subList(allKVPairs.size() / 2, allKVPairs.size()));
-                var newSeparator = allKVPairs.get(allKVPairs.size() / 2).getFirst();
-                if (whichSibling == WhichSibling.LeftSibling) {
-                    sibling.kvPairs = leftKVPairs;
-                    this.kvPairs = rightKVPairs;
-                } else {
-                    this.kvPairs = leftKVPairs;
-                    sibling.kvPairs = rightKVPairs;
-                }
-                parent.onChildrenReBalance(separatorIndex, newSeparator);
-                return null;
+    // makes internal nodes keep the entry count under each child, which rank, select and countRange need; inserts
+    // and deletes then also update the counts on their path
+    public void enableOrderStatistics() {
+        var pool = rootNode.pool;
+        if (!pool.orderStatistics) {
+            pool.orderStatistics = true;
+            if (rootNode instanceof BPlusTreeIntNode) {
+                ((BPlusTreeIntNode<K, V>)rootNode).refreshSubtree();
             }
         }
-        return null;
     }
 
-    private Pair<BPlusTreeLeafNode, WhichSibling> chooseSibling() {
-        var leftSibling = (BPlusTreeLeafNode)this.leftSibling;
-        var rightSibling = (BPlusTreeLeafNode)this.rightSibling;
-        if (leftSibling == null || leftSibling.parent != this.parent) {
-            return new Pair<>(rightSibling, WhichSibling.RightSibling);
-        } else if (rightSibling == null || rightSibling.parent != this.parent){
-            return new Pair<>(leftSibling, WhichSibling.LeftSibling);
-        } else {
-            return leftSibling.kvPairs.size() > rightSibling.kvPairs.size()
-                    ? new Pair<>(leftSibling, WhichSibling.LeftSibling)
-                    : new Pair<>(rightSibling, WhichSibling.RightSibling);
+    // number of keys less than key
+    public int rank(K key) {
+        checkOrderStatistics();
+        var ret = 0;
+        var node = rootNode;
+        while (node instanceof BPlusTreeIntNode) {
+            var intNode = (BPlusTreeIntNode<K, V>)node;
+            var index = intNode.route(key);
+            ret += intNode.countBefore(index);
+            node = intNode.childAt(index);
         }
+        return ret + ((BPlusTreeLeafNode<K, V>)node).lowerBound(key);
     }
 
-    private int getDeletionIndex(String key) {
-        for (var i = 0; i < kvPairs.size(); i++) {
-            if (kvPairs.get(i).getFirst().equals(key)) {
-                return i;
+    // the entry with the given zero-based position in key order
+    public Pair<K, V> select(int index) {
+        checkOrderStatistics();
+        if (index < 0 || index >= BPlusTreeIntNode.entryCount(rootNode)) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        var node = rootNode;
+        while (node instanceof BPlusTreeIntNode) {
+            var intNode = (BPlusTreeIntNode<K, V>)node;
+            var child = 0;
+            while (index >= intNode.countAt(child)) {
+                index -= intNode.countAt(child);
+                child++;
             }
+            node = intNode.childAt(child);
         }
-        return -1;
+        return ((BPlusTreeLeafNode<K, V>)node).entryAt(index);
     }
 
-    @Override
-    protected BPlusTreeNode onChildrenShrink(BPlusTreeNode child1, BPlusTreeNode child2,
-                                             int separatorIndex, BPlusTreeNode newChild) {
-        assert false;
-        return null;
+    // number of keys in [fromKey, toKey), a null bound means unbounded on that side
+    public int countRange(K fromKey, K toKey) {
+        checkOrderStatistics();
+        var from = fromKey == null ? 0 : rank(fromKey);
+        var to = toKey == null ? BPlusTreeIntNode.entryCount(rootNode) : rank(toKey);
+        return Math.max(0, to - from);
     }
 
-    @Override
-    protected Pair<String, Integer> getSeparator(BPlusTreeNode child1, BPlusTreeNode child2) {
-        assert false;
-        return new Pair<>(null, -1);
+    // makes internal nodes cache the values under each child combined by monoid, in key order, so aggregate only
+    // combines O(log n) cached partials and the entries of the two boundary leaves
+    public void enableAggregate(Monoid<V> monoid) {
+        rootNode.pool.aggregate = monoid;
+        if (rootNode instanceof BPlusTreeIntNode) {
+            ((BPlusTreeIntNode<K, V>)rootNode).refreshSubtree();
+        }
     }
 
-    @Override
-    void traverse(List<Pair<String, String>> outputKV) {
-        var it = this;
-        while (it != null) {
-            outputKV.addAll(it.kvPairs);
-            it = (BPlusTreeLeafNode)it.rightSibling;
+    // values with keys in [fromKey, toKey) combined in key order, a null bound means unbounded on that side
+    public V aggregate(K fromKey, K toKey) {
+        var monoid = rootNode.pool.aggregate;
+        if (monoid == null) {
+            throw new IllegalStateException("no aggregate is enabled");
+        }
+        if (fromKey != null && toKey != null && rootNode.pool.comparator.compare(fromKey, toKey) >= 0) {
+            return monoid.identity();
         }
+        return aggregate(rootNode, fromKey, toKey);
     }
 
-    @Override
-    String buildDescriptor() {
-        var builder = new StringBuilder("(");
-        builder.append(globalId);
-        builder.append(") ");
-        if (this.kvPairs.isEmpty()) {
-            return builder.toString();
+    private V aggregate(BPlusTreeNode<K, V> node, K fromKey, K toKey) {
+        if (fromKey == null && toKey == null) {
+            return BPlusTreeIntNode.aggregateOf(node);
+        }
+        if (node instanceof BPlusTreeLeafNode) {
+            var leaf = (BPlusTreeLeafNode<K, V>)node;
+            return leaf.aggregate(fromKey == null ? 0 : leaf.lowerBound(fromKey),
+                                  toKey == null ? leaf.size() : leaf.lowerBound(toKey));
         }
-        for (var i = 0; i < this.kvPairs.size() - 1; i++) {
-            builder.append(this.kvPairs.get(i).getFirst());
-            builder.append(", ");
+
+        var intNode = (BPlusTreeIntNode<K, V>)node;
+        var from = fromKey == null ? 0 : intNode.route(fromKey);
+        var to = toKey == null ? intNode.size : intNode.route(toKey);
+        if (from == to) {
+            return aggregate(intNode.childAt(from), fromKey, toKey);
         }
-        builder.append(this.kvPairs.get(this.kvPairs.size() - 1).getFirst());
-        return builder.toString();
+        var monoid = node.pool.aggregate;
+        var ret = aggregate(intNode.childAt(from), fromKey, null);
+        ret = monoid.combine(ret, intNode.combineAggregates(from + 1, to));
+        return monoid.combine(ret, aggregate(intNode.childAt(to), null, toKey));
     }
 
-    @Override
-    protected void onChildrenReBalance(int separatorIndex, String newSeparator) {
-        assert false;
+    private void checkOrderStatistics() {
+        if (!rootNode.pool.orderStatistics) {
+            throw new IllegalStateException("order statistics are not enabled");
+        }
     }
 
-    private List<Pair<String, String>> kvPairs;
-}
+    BPlusTreeNode<K, V> rootNode() {
+        return rootNode;
+    }
 
-public class BPlusTree implements Graphvizible  {
-    private BPlusTreeNode rootNode;
+    void replaceRoot(BPlusTreeNode<K, V> newRoot) {
+        rootNode = newRoot;
+    }
 
-    public BPlusTree(int degree) {
-        this.rootNode = new BPlusTreeLeafNode(degree, null, null, null, new ArrayList<>());
+    // counts operations, structural changes and comparisons from now on, the shape gauges start from a walk of the
+    // tree as it is now
+    public TreeMetrics enableMetrics() {
+        var pool = rootNode.pool;
+        if (pool.metrics == null) {
+            var metrics = new TreeMetrics("BPlusTree", pool.degree - 1, true);
+            var height = 1;
+            var nodeCount = 0L;
+            for (var levelStart = rootNode; ; levelStart = ((BPlusTreeIntNode<K, V>)levelStart).childAt(0)) {
+                for (var node = levelStart; node != null; node = node.rightSibling) {
+                    nodeCount++;
+                }
+                if (levelStart instanceof BPlusTreeLeafNode) {
+                    break;
+                }
+                height++;
+            }
+            var leafCount = 0L;
+            var entryCount = 0L;
+            for (var leaf = rootNode.firstLeaf(); leaf != null; leaf = leaf.getRightSibling()) {
+                leafCount++;
+                entryCount += leaf.size();
+            }
+            metrics.initShape(height, nodeCount, leafCount, entryCount);
+            pool.comparator = metrics.countingComparator(pool.comparator);
+            pool.metrics = metrics;
+        }
+        return pool.metrics;
     }
 
-    public void insert(String key, String value) {
-        var newRoot = rootNode.insert(key, value);
-        if (newRoot != null) {
-            rootNode = newRoot;
+    private Pair<K, V> firstEntryFrom(BPlusTreeLeafNode<K, V> leaf, int index) {
+        while (leaf != null && index >= leaf.size()) {
+            leaf = leaf.getRightSibling();
+            index = 0;
         }
+        return leaf == null ? null : leaf.entryAt(index);
     }
 
-    public boolean delete(String key) {
-        var deleteResult = rootNode.delete(key);
-        if (deleteResult.getSecond() != null) {
-            rootNode = deleteResult.getSecond();
+    private Pair<K, V> lastEntryBefore(BPlusTreeLeafNode<K, V> leaf, int index) {
+        while (leaf != null && index <= 0) {
+            leaf = leaf.getLeftSibling();
+            index = leaf == null ? 0 : leaf.size();
         }
-        return deleteResult.getFirst();
+        return leaf == null ? null : leaf.entryAt(index - 1);
+    }
+
+    // [fromKey, toKey), a null bound means unbounded on that side
+    public Iterator<Pair<K, V>> range(K fromKey, K toKey) {
+        return new BPlusTreeRangeIterator<>(rootNode, fromKey, toKey, false);
+    }
+
+    public Iterator<Pair<K, V>> descendingRange(K fromKey, K toKey) {
+        return new BPlusTreeRangeIterator<>(rootNode, fromKey, toKey, true);
+    }
+
+    public Stream<Pair<K, V>> rangeStream(K fromKey, K toKey) {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(range(fromKey, toKey),
+                                                    Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL),
+                false);
+    }
+
+    // splits by handing out child ranges of internal nodes, so stream().parallel() fans out without copying; SIZED
+    // only when order statistics are enabled. The tree must not be modified while the spliterator is in use
+    public Spliterator<Pair<K, V>> spliterator() {
+        return new BPlusTreeSpliterator<>(rootNode);
+    }
+
+    public Stream<Pair<K, V>> stream() {
+        return StreamSupport.stream(spliterator(), false);
     }
 
-    public List<Pair<String, String>> traverse() {
-        var ret = new ArrayList<Pair<String, String>>();
+    public List<Pair<K, V>> traverse() {
+        var ret = new ArrayList<Pair<K, V>>();
         rootNode.traverse(ret);
         return ret;
     }
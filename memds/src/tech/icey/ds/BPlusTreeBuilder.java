@@ -0,0 +1,247 @@
+package tech.icey.ds;
+
+import tech.icey.basic.Comparators;
+import tech.icey.basic.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class BPlusTreeBuilder<K, V> {
+    public BPlusTreeBuilder(int degree, double fillFactor) {
+        this(degree, Comparators.naturalOrder(), fillFactor);
+    }
+
+    public BPlusTreeBuilder(int degree, Comparator<? super K> comparator, double fillFactor) {
+        if (degree < 3) {
+            throw new IllegalArgumentException("degree must be at least 3");
+        }
+        if (fillFactor <= 0.0 || fillFactor > 1.0) {
+            throw new IllegalArgumentException("fill factor must be in (0, 1]");
+        }
+        this.comparator = comparator;
+        this.leafCapacity = Math.max(1, Math.min(degree - 1, (int)Math.round((degree - 1) * fillFactor)));
+        this.fanout = Math.max(2, Math.min(degree, (int)Math.round(degree * fillFactor)));
+        this.pool = new BPlusTreeNodePool<>(degree, comparator, 0);
+        this.currentLeaf = pool.newLeaf(null, null, null);
+    }
+
+    public static<K, V> BPlusTree<K, V> bulkLoad(int degree, double fillFactor, Iterator<Pair<K, V>> sortedKV) {
+        return bulkLoad(degree, Comparators.naturalOrder(), fillFactor, sortedKV);
+    }
+
+    public static<K, V> BPlusTree<K, V> bulkLoad(int degree, Comparator<? super K> comparator, double fillFactor,
+                                                 Iterator<Pair<K, V>> sortedKV) {
+        var builder = new BPlusTreeBuilder<K, V>(degree, comparator, fillFactor);
+        while (sortedKV.hasNext()) {
+            var kv = sortedKV.next();
+            builder.add(kv.getFirst(), kv.getSecond());
+        }
+        return builder.build();
+    }
+
+    public static<K, V> BPlusTree<K, V> bulkLoad(int degree, double fillFactor, Stream<Pair<K, V>> sortedKV) {
+        return bulkLoad(degree, fillFactor, sortedKV.iterator());
+    }
+
+    public static<K, V> BPlusTree<K, V> parallelBulkLoad(int degree, double fillFactor,
+                                                         Collection<Pair<K, V>> unsortedKV) {
+        return parallelBulkLoad(degree, Comparators.naturalOrder(), fillFactor, unsortedKV);
+    }
+
+    // builds from entries in any order, a key given more than once keeps its last value as if inserted one by one.
+    // The sort, the de-duplication and the leaf filling all split the array into slices for the common fork-join
+    // pool; only the upper levels, about 1/fanout of the nodes, are built on the calling thread
+    public static<K, V> BPlusTree<K, V> parallelBulkLoad(int degree, Comparator<? super K> comparator,
+                                                         double fillFactor, Collection<Pair<K, V>> unsortedKV) {
+        var builder = new BPlusTreeBuilder<K, V>(degree, comparator, fillFactor);
+        @SuppressWarnings("unchecked")
+        var sorted = (Pair<K, V>[])unsortedKV.toArray(new Pair<?, ?>[0]);
+        // stable, so the last of a run of equal keys is the one given last
+        Arrays.parallelSort(sorted, (lhs, rhs) -> comparator.compare(lhs.getFirst(), rhs.getFirst()));
+
+        var entries = builder.distinctLast(sorted);
+        if (entries.length == 0) {
+            return builder.build();
+        }
+
+        var leafCapacity = builder.leafCapacity;
+        var leafCount = (entries.length + leafCapacity - 1) / leafCapacity;
+        @SuppressWarnings("unchecked")
+        var leaves = (BPlusTreeLeafNode<K, V>[])new BPlusTreeLeafNode<?, ?>[leafCount];
+        sliced(leaves.length, (from, to) -> {
+            for (var i = from; i < to; i++) {
+                // the pool is not thread safe, but a fresh one has nothing to hand out anyway
+                var leaf = new BPlusTreeLeafNode<K, V>(builder.pool, null, null, null);
+                var end = Math.min(entries.length, (i + 1) * leafCapacity);
+                for (var j = i * leafCapacity; j < end; j++) {
+                    leaf.append(entries[j].getFirst(), entries[j].getSecond());
+                }
+                leaves[i] = leaf;
+            }
+        });
+        sliced(leaves.length - 1, (from, to) -> {
+            for (var i = from; i < to; i++) {
+                leaves[i].setRightSibling(leaves[i + 1]);
+                leaves[i + 1].setLeftSibling(leaves[i]);
+            }
+        });
+
+        builder.level = new ArrayList<>(Arrays.asList(leaves));
+        builder.levelMinKeys = new ArrayList<>(leaves.length);
+        for (var leaf : leaves) {
+            builder.levelMinKeys.add(leaf.keyAt(0));
+        }
+        while (builder.level.size() > 1) {
+            builder.buildUpperLevel();
+        }
+        return new BPlusTree<>(builder.level.get(0));
+    }
+
+    public BPlusTreeBuilder<K, V> add(K key, V value) {
+        if (lastKey != null && comparator.compare(lastKey, key) >= 0) {
+            throw new IllegalArgumentException("keys must be strictly increasing, got " + key + " after " + lastKey);
+        }
+        lastKey = key;
+
+        if (currentLeaf.size() == leafCapacity) {
+            flushLeaf();
+        }
+        if (currentLeaf.size() == 0) {
+            levelMinKeys.add(key);
+        }
+        currentLeaf.append(key, value);
+        return this;
+    }
+
+    public BPlusTree<K, V> build() {
+        if (currentLeaf.size() != 0 || level.isEmpty()) {
+            if (currentLeaf.size() == 0) {
+                levelMinKeys.add(null);
+            }
+            flushLeaf();
+        }
+
+        while (level.size() > 1) {
+            buildUpperLevel();
+        }
+        return new BPlusTree<>(level.get(0));
+    }
+
+    // keeps the last entry of every run of equal keys: each slice counts its survivors, a prefix sum turns the
+    // counts into output offsets and then each slice copies its survivors in place
+    private Pair<K, V>[] distinctLast(Pair<K, V>[] sorted) {
+        var sliceCount = sliceCount(sorted.length);
+        var survivors = new int[sliceCount + 1];
+        sliced(sorted.length, sliceCount, (slice, from, to) -> {
+            for (var i = from; i < to; i++) {
+                if (isLastOfRun(sorted, i)) {
+                    survivors[slice + 1]++;
+                }
+            }
+        });
+        for (var slice = 0; slice < sliceCount; slice++) {
+            survivors[slice + 1] += survivors[slice];
+        }
+
+        @SuppressWarnings("unchecked")
+        var ret = (Pair<K, V>[])new Pair<?, ?>[survivors[sliceCount]];
+        sliced(sorted.length, sliceCount, (slice, from, to) -> {
+            var next = survivors[slice];
+            for (var i = from; i < to; i++) {
+                if (isLastOfRun(sorted, i)) {
+                    ret[next++] = sorted[i];
+                }
+            }
+        });
+        return ret;
+    }
+
+    private boolean isLastOfRun(Pair<K, V>[] sorted, int index) {
+        return index == sorted.length - 1 || comparator.compare(sorted[index].getFirst(),
+                                                                sorted[index + 1].getFirst()) != 0;
+    }
+
+    private static int sliceCount(int length) {
+        var slices = ForkJoinPool.getCommonPoolParallelism() * 4;
+        return Math.max(1, Math.min(slices, length / MIN_SLICE));
+    }
+
+    private static void sliced(int length, SliceTask task) {
+        sliced(length, sliceCount(length), (slice, from, to) -> task.run(from, to));
+    }
+
+    // runs task over [0, length) cut into sliceCount contiguous slices on the common fork-join pool
+    private static void sliced(int length, int sliceCount, IndexedSliceTask task) {
+        IntStream.range(0, sliceCount).parallel().forEach(slice -> task.run(
+                slice, (int)((long)length * slice / sliceCount), (int)((long)length * (slice + 1) / sliceCount)));
+    }
+
+    private interface SliceTask {
+        void run(int from, int to);
+    }
+
+    private interface IndexedSliceTask {
+        void run(int slice, int from, int to);
+    }
+
+    private void flushLeaf() {
+        var leftSibling = level.isEmpty() ? null : level.get(level.size() - 1);
+        if (leftSibling != null) {
+            leftSibling.setRightSibling(currentLeaf);
+            currentLeaf.setLeftSibling(leftSibling);
+        }
+        level.add(currentLeaf);
+        currentLeaf = pool.newLeaf(null, null, null);
+    }
+
+    private void buildUpperLevel() {
+        var nodeCount = level.size();
+        var groupCount = (nodeCount + fanout - 1) / fanout;
+        if (nodeCount / groupCount < 2) {
+            groupCount = nodeCount / 2;
+        }
+
+        var upperLevel = new ArrayList<BPlusTreeNode<K, V>>();
+        var upperMinKeys = new ArrayList<K>();
+        var start = 0;
+        for (var group = 0; group < groupCount; group++) {
+            var groupSize = nodeCount / groupCount + (group < nodeCount % groupCount ? 1 : 0);
+            var leftSibling = upperLevel.isEmpty() ? null : upperLevel.get(upperLevel.size() - 1);
+            var node = pool.newIntNode(null, leftSibling, null);
+            if (leftSibling != null) {
+                leftSibling.setRightSibling(node);
+            }
+            for (var i = start; i < start + groupSize; i++) {
+                var child = level.get(i);
+                node.appendChild(levelMinKeys.get(i), child);
+                child.setParent(node);
+            }
+            upperLevel.add(node);
+            upperMinKeys.add(levelMinKeys.get(start));
+            start += groupSize;
+        }
+
+        level = upperLevel;
+        levelMinKeys = upperMinKeys;
+    }
+
+    // below this a slice is not worth a fork-join task
+    private static final int MIN_SLICE = 4096;
+
+    private final Comparator<? super K> comparator;
+    private final BPlusTreeNodePool<K, V> pool;
+    private final int leafCapacity;
+    private final int fanout;
+
+    private K lastKey;
+    private BPlusTreeLeafNode<K, V> currentLeaf;
+    private List<BPlusTreeNode<K, V>> level = new ArrayList<>();
+    private List<K> levelMinKeys = new ArrayList<>();
+}
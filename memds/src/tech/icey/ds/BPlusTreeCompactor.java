@@ -0,0 +1,86 @@
+package tech.icey.ds;
+
+import java.time.Duration;
+
+/*
+ * Walks the leaf chain of a BPlusTree a slice at a time, merging each under-full leaf into its right sibling when
+ * both fit in one leaf and evening the two out otherwise, so a tree thinned out by deletes becomes dense again
+ * without being rebuilt. Only siblings under the same parent are paired, so the last child of a parent goes to its
+ * left sibling instead. Merges go through the same path as deletes, so separators are fixed up and internal nodes
+ * that underflow in turn are handled the usual way.
+ *
+ * Between slices the tree may change freely: the next slice finds its way back by the first key of the leaf it stopped
+ * at. run() holds the tree's monitor for one slice, so it can be handed to a ScheduledExecutorService as long as every
+ * other user of the tree synchronizes on the tree too.
+ */
+public class BPlusTreeCompactor<K, V> implements Runnable {
+    public BPlusTreeCompactor(BPlusTree<K, V> tree, double targetFill, Duration sliceBudget) {
+        if (targetFill <= 0.0 || targetFill > 0.5) {
+            throw new IllegalArgumentException("target fill must be in (0, 0.5]");
+        }
+        this.tree = tree;
+        this.targetSize = Math.max(1, (int)Math.ceil(targetFill * (tree.rootNode().degree - 1)));
+        this.sliceNanos = sliceBudget.toNanos();
+    }
+
+    @Override
+    public void run() {
+        synchronized (tree) {
+            runSlice();
+        }
+    }
+
+    // works until the budget is spent or the end of the leaf chain is reached, returns true in the latter case
+    public boolean runSlice() {
+        var deadline = System.nanoTime() + sliceNanos;
+        var root = tree.rootNode();
+        var leaf = resumeKey == null ? root.firstLeaf() : root.findLeaf(resumeKey);
+        while (leaf != null) {
+            var right = leaf.getRightSibling();
+            var left = leaf.getLeftSibling();
+            if (right != null && right.parent == leaf.parent
+                && (leaf.size() < targetSize || right.size() < targetSize)) {
+                var mergedAway = leaf.size() + right.size() < leaf.degree;
+                mergeOrRedistribute(leaf, right);
+                // a leaf that absorbed its sibling may still be short, so it gets paired with the next one too
+                if (!mergedAway) {
+                    leaf = right;
+                }
+            } else if (leaf.size() < targetSize && left != null && left.parent == leaf.parent) {
+                // the last child of its parent, which internal merges may have handed over after the walk passed
+                // its left sibling
+                mergeOrRedistribute(left, leaf);
+                leaf = left;
+            } else {
+                leaf = right;
+            }
+
+            if (leaf != null && System.nanoTime() - deadline > 0) {
+                resumeKey = leaf.keyAt(0);
+                return false;
+            }
+        }
+        resumeKey = null;
+        passes++;
+        return true;
+    }
+
+    private void mergeOrRedistribute(BPlusTreeLeafNode<K, V> left, BPlusTreeLeafNode<K, V> right) {
+        var newRoot = BPlusTreeLeafNode.mergeOrRedistribute(left, right);
+        if (newRoot != null) {
+            tree.replaceRoot(newRoot);
+        }
+    }
+
+    // number of times the walk has reached the end of the leaf chain
+    public long passes() {
+        return passes;
+    }
+
+    private final BPlusTree<K, V> tree;
+    private final int targetSize;
+    private final long sliceNanos;
+
+    private K resumeKey;
+    private long passes;
+}
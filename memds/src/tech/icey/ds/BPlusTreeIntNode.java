@@ -0,0 +1,482 @@
+package tech.icey.ds;
+
+import tech.icey.basic.Pair;
+import tech.icey.util.DirectedGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class BPlusTreeIntNode<K, V> extends BPlusTreeNode<K, V> {
+    @SuppressWarnings("unchecked")
+    BPlusTreeIntNode(BPlusTreeNodePool<K, V> pool,
+                     BPlusTreeNode<K, V> parent, BPlusTreeNode<K, V> leftSibling, BPlusTreeNode<K, V> rightSibling) {
+        super(pool, parent, leftSibling, rightSibling);
+        this.keys = new Object[degree];
+        this.children = (BPlusTreeNode<K, V>[])new BPlusTreeNode<?, ?>[degree + 1];
+    }
+
+    @Override
+    void clear() {
+        Arrays.fill(children, 0, size + 1, null);
+        super.clear();
+    }
+
+    void appendChild(K separator, BPlusTreeNode<K, V> child) {
+        if (children[0] == null) {
+            children[0] = child;
+        } else {
+            keys[size] = separator;
+            children[size + 1] = child;
+            size++;
+        }
+    }
+
+    @Override
+    void buildUpDirectedGraph(DirectedGraph d) {
+        var selfDescriptor = buildDescriptor();
+        if (parent != null) {
+            d.addEdge(selfDescriptor, parent.buildDescriptor());
+        }
+        for (var i = 0; i <= size; i++) {
+            d.addEdge(selfDescriptor, children[i].buildDescriptor());
+        }
+        for (var i = 0; i <= size; i++) {
+            children[i].buildUpDirectedGraph(d);
+        }
+        if (leftSibling != null) {
+            d.addEdge(selfDescriptor, leftSibling.buildDescriptor());
+        }
+        if (rightSibling != null) {
+            d.addEdge(selfDescriptor, rightSibling.buildDescriptor());
+            d.addSameRankNodes(selfDescriptor, rightSibling.buildDescriptor());
+        }
+    }
+
+    @Override
+    BPlusTreeNode<K, V> insert(K key, V value) {
+        return children[route(key)].insert(key, value);
+    }
+
+    @Override
+    protected BPlusTreeNode<K, V> onChildExplode(BPlusTreeNode<K, V> exploded, K powder,
+                                                 BPlusTreeNode<K, V> rightChild) {
+        var explodedIndex = indexOfChild(exploded);
+        System.arraycopy(children, explodedIndex + 1, children, explodedIndex + 2, size - explodedIndex);
+        System.arraycopy(keys, explodedIndex, keys, explodedIndex + 1, size - explodedIndex);
+        children[explodedIndex + 1] = rightChild;
+        keys[explodedIndex] = powder;
+        size++;
+        refresh();
+        return maybeExplode();
+    }
+
+    @Override
+    Pair<Boolean, BPlusTreeNode<K, V>> delete(K key) {
+        return children[route(key)].delete(key);
+    }
+
+    int route(K key) {
+        var low = 0;
+        var high = size;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (pool.comparator.compare(keyAt(mid), key) > 0) /* keys[mid] > key */ {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    BPlusTreeNode<K, V> childAt(int index) {
+        return children[index];
+    }
+
+    int countAt(int index) {
+        return counts[index];
+    }
+
+    // entries under the children left of index
+    int countBefore(int index) {
+        var ret = 0;
+        for (var i = 0; i < index; i++) {
+            ret += counts[i];
+        }
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    V aggregateAt(int index) {
+        return (V)aggregates[index];
+    }
+
+    // recomputes the entry count and the aggregate of every child, whose own summaries must already be right
+    void refresh() {
+        if (pool.orderStatistics) {
+            if (counts == null) {
+                counts = new int[degree + 1];
+            }
+            total = 0;
+            for (var i = 0; i <= size; i++) {
+                counts[i] = entryCount(children[i]);
+                total += counts[i];
+            }
+        }
+        if (pool.aggregate != null) {
+            if (aggregates == null) {
+                aggregates = new Object[degree + 1];
+            }
+            for (var i = 0; i <= size; i++) {
+                aggregates[i] = aggregateOf(children[i]);
+            }
+            aggregate = combineAggregates(0, size + 1);
+        }
+    }
+
+    void refreshSubtree() {
+        for (var i = 0; i <= size; i++) {
+            if (children[i] instanceof BPlusTreeIntNode) {
+                ((BPlusTreeIntNode<K, V>)children[i]).refreshSubtree();
+            }
+        }
+        refresh();
+    }
+
+    static<K, V> int entryCount(BPlusTreeNode<K, V> node) {
+        return node instanceof BPlusTreeIntNode ? ((BPlusTreeIntNode<K, V>)node).total : node.size;
+    }
+
+    static<K, V> V aggregateOf(BPlusTreeNode<K, V> node) {
+        if (node instanceof BPlusTreeIntNode) {
+            return ((BPlusTreeIntNode<K, V>)node).aggregate;
+        }
+        return ((BPlusTreeLeafNode<K, V>)node).aggregate(0, node.size);
+    }
+
+    // combines the cached aggregates of children[from, to)
+    V combineAggregates(int from, int to) {
+        var ret = pool.aggregate.identity();
+        for (var i = from; i < to; i++) {
+            ret = pool.aggregate.combine(ret, aggregateAt(i));
+        }
+        return ret;
+    }
+
+    // the entries under node changed in more than one place, every summary from its parent up is recomputed
+    static<K, V> void refreshPath(BPlusTreeNode<K, V> node) {
+        if (node.pool.orderStatistics || node.pool.aggregate != null) {
+            for (var parent = node.parent; parent != null; parent = parent.parent) {
+                ((BPlusTreeIntNode<K, V>)parent).refresh();
+            }
+        }
+    }
+
+    // a leaf gained delta entries, or lost -delta, or had values replaced, without changing shape, so only the
+    // summaries on its path move; aggregates need not be invertible, so they are recomputed rather than adjusted
+    static<K, V> void propagateChange(BPlusTreeNode<K, V> node, int delta) {
+        var pool = node.pool;
+        if (pool.aggregate == null && (!pool.orderStatistics || delta == 0)) {
+            return;
+        }
+        for (var parent = (BPlusTreeIntNode<K, V>)node.parent; parent != null;
+             node = parent, parent = (BPlusTreeIntNode<K, V>)parent.parent) {
+            var index = parent.indexOfChild(node);
+            if (pool.orderStatistics) {
+                parent.counts[index] += delta;
+                parent.total += delta;
+            }
+            if (pool.aggregate != null) {
+                parent.aggregates[index] = aggregateOf(node);
+                parent.aggregate = parent.combineAggregates(0, parent.size + 1);
+            }
+        }
+    }
+
+    K separatorAfter(BPlusTreeNode<K, V> child) {
+        var index = indexOfChild(child);
+        return index < size ? keyAt(index) : null;
+    }
+
+    // inserts the nodes split off from child right after it, splitting this node as many ways as needed at once
+    @SuppressWarnings("unchecked")
+    BPlusTreeNode<K, V> onChildSplit(BPlusTreeNode<K, V> child, List<K> separators,
+                                     List<BPlusTreeNode<K, V>> newChildren) {
+        var childIndex = indexOfChild(child);
+        var insertCount = separators.size();
+        var keyCount = size + insertCount;
+        var allKeys = new Object[keyCount];
+        var allChildren = new Object[keyCount + 1];
+        System.arraycopy(keys, 0, allKeys, 0, childIndex);
+        System.arraycopy(children, 0, allChildren, 0, childIndex + 1);
+        for (var i = 0; i < insertCount; i++) {
+            allKeys[childIndex + i] = separators.get(i);
+            allChildren[childIndex + 1 + i] = newChildren.get(i);
+        }
+        System.arraycopy(keys, childIndex, allKeys, childIndex + insertCount, size - childIndex);
+        System.arraycopy(children, childIndex + 1, allChildren, childIndex + 1 + insertCount, size - childIndex);
+
+        if (keyCount < degree) {
+            fill(allKeys, allChildren, 0, keyCount);
+            return null;
+        }
+
+        var childCount = keyCount + 1;
+        var pieceCount = (childCount + degree - 1) / degree;
+        var pieceSeparators = new ArrayList<K>();
+        var pieces = new ArrayList<BPlusTreeNode<K, V>>();
+        var oldRightSibling = this.rightSibling;
+        BPlusTreeNode<K, V> previous = null;
+        var from = 0;
+        for (var piece = 0; piece < pieceCount; piece++) {
+            var pieceChildCount = childCount / pieceCount + (piece < childCount % pieceCount ? 1 : 0);
+            BPlusTreeIntNode<K, V> target;
+            if (previous == null) {
+                target = this;
+            } else {
+                target = pool.newIntNode(this.parent, previous, null);
+                previous.setRightSibling(target);
+                pieceSeparators.add((K)allKeys[from - 1]);
+                pieces.add(target);
+            }
+            target.fill(allKeys, allChildren, from, pieceChildCount - 1);
+            previous = target;
+            from += pieceChildCount;
+        }
+        previous.setRightSibling(oldRightSibling);
+        if (oldRightSibling != null) {
+            oldRightSibling.setLeftSibling(previous);
+        }
+        pool.onSplit(false, pieces.size());
+        return propagateSplit(this, pieceSeparators, pieces);
+    }
+
+    static<K, V> BPlusTreeNode<K, V> propagateSplit(BPlusTreeNode<K, V> node, List<K> separators,
+                                                    List<BPlusTreeNode<K, V>> newSiblings) {
+        if (node.parent != null) {
+            return ((BPlusTreeIntNode<K, V>)node.parent).onChildSplit(node, separators, newSiblings);
+        }
+        var newRoot = node.pool.newIntNode(null, null, null);
+        newRoot.appendChild(null, node);
+        node.setParent(newRoot);
+        node.pool.onRootChange(newRoot, true);
+        var newerRoot = newRoot.onChildSplit(node, separators, newSiblings);
+        return newerRoot != null ? newerRoot : newRoot;
+    }
+
+    private int indexOfChild(BPlusTreeNode<K, V> child) {
+        for (var i = 0; i <= size; i++) {
+            if (children[i] == child) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // the children on both sides of keys[separatorIndex] have been merged into the left one
+    @Override
+    protected BPlusTreeNode<K, V> onChildrenShrink(int separatorIndex) {
+        System.arraycopy(children, separatorIndex + 2, children, separatorIndex + 1, size - separatorIndex - 1);
+        System.arraycopy(keys, separatorIndex + 1, keys, separatorIndex, size - separatorIndex - 1);
+        children[size] = null;
+        keys[size - 1] = null;
+        size--;
+        refresh();
+
+        if (this.parent == null && this.size == 0) {
+            var newRoot = this.children[0];
+            newRoot.setParent(null);
+            pool.onRootChange(newRoot, false);
+            pool.recycle(this);
+            return newRoot;
+        } else {
+            return maybeShrink();
+        }
+    }
+
+    private BPlusTreeNode<K, V> maybeShrink() {
+        if (this.parent != null && this.size < pool.minIntNodeSize) {
+            var sibling = chooseSibling();
+            var left = sibling == this.leftSibling ? sibling : this;
+            var right = sibling == this.leftSibling ? this : sibling;
+            var parent = this.parent;
+            var separatorIndex = parent.getSeparatorIndex(left, right);
+            var separator = parent.keyAt(separatorIndex);
+            var keyCount = left.size + 1 + right.size;
+
+            if (keyCount < degree) {
+                left.keys[left.size] = separator;
+                System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+                System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+                left.adopt(left.size + 1, keyCount + 1);
+                left.size = keyCount;
+                left.refresh();
+                left.rightSibling = right.rightSibling;
+                if (right.rightSibling != null) {
+                    right.rightSibling.setLeftSibling(left);
+                }
+                pool.onMerge(false);
+                var newRoot = parent.onChildrenShrink(separatorIndex);
+                pool.recycle(right);
+                return newRoot;
+            } else {
+                pool.onRebalance();
+                parent.onChildrenReBalance(separatorIndex, rotate(left, right, separator, keyCount / 2));
+                return null;
+            }
+        } else {
+            return null;
+        }
+    }
+
+    // moves children through the separator until left holds leftKeyCount keys, returns the new separator
+    @SuppressWarnings("unchecked")
+    private static<K, V> K rotate(BPlusTreeIntNode<K, V> left, BPlusTreeIntNode<K, V> right, K separator,
+                                  int leftKeyCount) {
+        K newSeparator;
+        if (left.size > leftKeyCount) {
+            var moved = left.size - leftKeyCount;
+            System.arraycopy(right.keys, 0, right.keys, moved, right.size);
+            System.arraycopy(right.children, 0, right.children, moved, right.size + 1);
+            System.arraycopy(left.keys, leftKeyCount + 1, right.keys, 0, moved - 1);
+            right.keys[moved - 1] = separator;
+            System.arraycopy(left.children, leftKeyCount + 1, right.children, 0, moved);
+            newSeparator = left.keyAt(leftKeyCount);
+            Arrays.fill(left.keys, leftKeyCount, left.size, null);
+            Arrays.fill(left.children, leftKeyCount + 1, left.size + 1, null);
+            right.size += moved;
+            left.size = leftKeyCount;
+            right.adopt(0, moved);
+        } else {
+            var moved = leftKeyCount - left.size;
+            left.keys[left.size] = separator;
+            System.arraycopy(right.keys, 0, left.keys, left.size + 1, moved - 1);
+            System.arraycopy(right.children, 0, left.children, left.size + 1, moved);
+            newSeparator = (K)right.keys[moved - 1];
+            System.arraycopy(right.keys, moved, right.keys, 0, right.size - moved);
+            System.arraycopy(right.children, moved, right.children, 0, right.size + 1 - moved);
+            Arrays.fill(right.keys, right.size - moved, right.size, null);
+            Arrays.fill(right.children, right.size + 1 - moved, right.size + 1, null);
+            left.adopt(left.size + 1, leftKeyCount + 1);
+            left.size = leftKeyCount;
+            right.size -= moved;
+        }
+        left.refresh();
+        right.refresh();
+        return newSeparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fill(Object[] srcKeys, Object[] srcChildren, int from, int keyCount) {
+        Arrays.fill(keys, null);
+        Arrays.fill(children, null);
+        System.arraycopy(srcKeys, from, keys, 0, keyCount);
+        System.arraycopy(srcChildren, from, children, 0, keyCount + 1);
+        size = keyCount;
+        adopt(0, keyCount + 1);
+        refresh();
+    }
+
+    // makes this the parent of children[from, to)
+    private void adopt(int from, int to) {
+        for (var i = from; i < to; i++) {
+            children[i].setParent(this);
+        }
+    }
+
+    private BPlusTreeIntNode<K, V> chooseSibling() {
+        var leftSibling = (BPlusTreeIntNode<K, V>) this.leftSibling;
+        var rightSibling = (BPlusTreeIntNode<K, V>) this.rightSibling;
+        if (leftSibling == null || leftSibling.parent != this.parent) {
+            return rightSibling;
+        } else if (rightSibling == null || rightSibling.parent != this.parent) {
+            return leftSibling;
+        } else {
+            return leftSibling.size > rightSibling.size ? leftSibling : rightSibling;
+        }
+    }
+
+    // index of the key between two adjacent children
+    @Override
+    protected int getSeparatorIndex(BPlusTreeNode<K, V> child1, BPlusTreeNode<K, V> child2) {
+        var ret = indexOfChild(child1);
+        if (child1.leftSibling == child2) {
+            ret -= 1;
+        }
+        return ret;
+    }
+
+    @Override
+    void traverse(List<Pair<K, V>> outputKV) {
+        this.children[0].traverse(outputKV);
+    }
+
+    @Override
+    BPlusTreeLeafNode<K, V> findLeaf(K key) {
+        return children[route(key)].findLeaf(key);
+    }
+
+    @Override
+    BPlusTreeLeafNode<K, V> firstLeaf() {
+        return children[0].firstLeaf();
+    }
+
+    @Override
+    BPlusTreeLeafNode<K, V> lastLeaf() {
+        return children[size].lastLeaf();
+    }
+
+    @Override
+    protected void onChildrenReBalance(int separatorIndex, K newSeparator) {
+        this.keys[separatorIndex] = newSeparator;
+        refresh();
+    }
+
+    // keeps the left half here and moves the right half into a new sibling
+    private BPlusTreeNode<K, V> maybeExplode() {
+        if (this.size + 1 > degree) {
+            var leftKeyCount = size / 2;
+            var rightKeyCount = size - leftKeyCount - 1;
+            var powder = keyAt(leftKeyCount);
+
+            var rightNode = pool.newIntNode(this.parent, this, this.rightSibling);
+            System.arraycopy(keys, leftKeyCount + 1, rightNode.keys, 0, rightKeyCount);
+            System.arraycopy(children, leftKeyCount + 1, rightNode.children, 0, rightKeyCount + 1);
+            Arrays.fill(keys, leftKeyCount, size, null);
+            Arrays.fill(children, leftKeyCount + 1, size + 1, null);
+            rightNode.size = rightKeyCount;
+            rightNode.adopt(0, rightKeyCount + 1);
+            size = leftKeyCount;
+            refresh();
+            rightNode.refresh();
+
+            if (rightSibling != null) {
+                rightSibling.leftSibling = rightNode;
+            }
+            rightSibling = rightNode;
+            pool.onSplit(false, 1);
+
+            if (this.parent == null) {
+                var newRoot = pool.newIntNode(null, null, null);
+                newRoot.appendChild(null, this);
+                newRoot.appendChild(powder, rightNode);
+                newRoot.refresh();
+                this.setParent(newRoot);
+                rightNode.setParent(newRoot);
+                pool.onRootChange(newRoot, true);
+                return newRoot;
+            } else {
+                return parent.onChildExplode(this, powder, rightNode);
+            }
+        } else {
+            return null;
+        }
+    }
+
+    private BPlusTreeNode<K, V>[] children;
+    private int[] counts;
+    private int total;
+    private Object[] aggregates;
+    private V aggregate;
+}
@@ -0,0 +1,464 @@
+package tech.icey.ds;
+
+import tech.icey.basic.Pair;
+import tech.icey.util.DirectedGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class BPlusTreeLeafNode<K, V> extends BPlusTreeNode<K, V> {
+    BPlusTreeLeafNode(BPlusTreeNodePool<K, V> pool,
+                      BPlusTreeNode<K, V> parent, BPlusTreeNode<K, V> leftSibling, BPlusTreeNode<K, V> rightSibling) {
+        super(pool, parent, leftSibling, rightSibling);
+        this.keys = new Object[degree];
+        this.values = new Object[degree];
+    }
+
+    @Override
+    void clear() {
+        Arrays.fill(values, 0, size, null);
+        super.clear();
+        if (filter != null) {
+            Arrays.fill(filter, 0L);
+            removedSinceRebuild = 0;
+        }
+    }
+
+    void append(K key, V value) {
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        addToFilter(key);
+    }
+
+    // false only if key is certainly not here; the filter is a blocked Bloom filter where each key sets three bits
+    // of a single word, so a probe costs one hash and one load
+    boolean mightContain(K key) {
+        if (filter == null) {
+            return true;
+        }
+        var hash = filterHash(key);
+        var mask = filterMask(hash);
+        return (filter[filterWord(hash)] & mask) == mask;
+    }
+
+    void rebuildFilter() {
+        if (pool.filterWords == 0) {
+            return;
+        }
+        if (filter == null) {
+            filter = new long[pool.filterWords];
+        } else {
+            Arrays.fill(filter, 0L);
+        }
+        for (var i = 0; i < size; i++) {
+            var hash = filterHash(keys[i]);
+            filter[filterWord(hash)] |= filterMask(hash);
+        }
+        removedSinceRebuild = 0;
+    }
+
+    private void addToFilter(K key) {
+        if (filter == null) {
+            // a leaf created before filters were enabled gets its filter on first use
+            rebuildFilter();
+            return;
+        }
+        var hash = filterHash(key);
+        filter[filterWord(hash)] |= filterMask(hash);
+    }
+
+    private int filterWord(int hash) {
+        return (hash >>> 18) & (filter.length - 1);
+    }
+
+    private static long filterMask(int hash) {
+        return (1L << hash) | (1L << (hash >>> 6)) | (1L << (hash >>> 12));
+    }
+
+    private static int filterHash(Object key) {
+        var hash = key.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    void buildUpDirectedGraph(DirectedGraph d) {
+        var selfDescriptor = buildDescriptor();
+        if (parent != null) {
+            d.addEdge(selfDescriptor, parent.buildDescriptor());
+        }
+        if (this.leftSibling != null) {
+            d.addEdge(selfDescriptor, leftSibling.buildDescriptor());
+        }
+        if (this.rightSibling != null) {
+            d.addEdge(selfDescriptor, rightSibling.buildDescriptor());
+            d.addSameRankNodes(selfDescriptor, rightSibling.buildDescriptor());
+        }
+    }
+
+    @Override
+    BPlusTreeNode<K, V> insert(K key, V value) {
+        var index = search(key);
+        if (index >= 0) {
+            values[index] = value;
+            BPlusTreeIntNode.propagateChange(this, 0);
+            return null;
+        }
+        index = -(index + 1);
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        keys[index] = key;
+        values[index] = value;
+        size++;
+        addToFilter(key);
+        BPlusTreeIntNode.propagateChange(this, 1);
+        if (pool.metrics != null) {
+            pool.metrics.recordEntries(1);
+        }
+        return maybeExplode();
+    }
+
+    // merges a sorted, duplicate-free run of entries that all route to this leaf, then splits the result into as
+    // many leaves as it needs in one go
+    @SuppressWarnings("unchecked")
+    BPlusTreeNode<K, V> insertRun(Object[] runKeys, Object[] runValues, int from, int to) {
+        var allKeys = new Object[size + to - from];
+        var allValues = new Object[allKeys.length];
+        var count = 0;
+        var i = 0;
+        var j = from;
+        while (i < size || j < to) {
+            var compareResult = i == size ? 1 : j == to ? -1 : pool.comparator.compare(keyAt(i), (K)runKeys[j]);
+            if (compareResult < 0) {
+                allKeys[count] = keys[i];
+                allValues[count] = values[i];
+                i++;
+            } else {
+                allKeys[count] = runKeys[j];
+                allValues[count] = runValues[j];
+                j++;
+                if (compareResult == 0) {
+                    i++;
+                }
+            }
+            count++;
+        }
+        if (pool.metrics != null) {
+            pool.metrics.recordEntries(count - size);
+        }
+
+        if (count < degree) {
+            fill(allKeys, allValues, 0, count);
+            BPlusTreeIntNode.refreshPath(this);
+            return null;
+        }
+
+        var pieceCount = (count + degree - 2) / (degree - 1);
+        var separators = new ArrayList<K>();
+        var pieces = new ArrayList<BPlusTreeNode<K, V>>();
+        var oldRightSibling = this.rightSibling;
+        BPlusTreeLeafNode<K, V> previous = null;
+        var start = 0;
+        for (var piece = 0; piece < pieceCount; piece++) {
+            var pieceSize = count / pieceCount + (piece < count % pieceCount ? 1 : 0);
+            BPlusTreeLeafNode<K, V> target;
+            if (previous == null) {
+                target = this;
+            } else {
+                target = pool.newLeaf(this.parent, previous, null);
+                previous.setRightSibling(target);
+                separators.add((K)allKeys[start]);
+                pieces.add(target);
+            }
+            target.fill(allKeys, allValues, start, pieceSize);
+            previous = target;
+            start += pieceSize;
+        }
+        previous.setRightSibling(oldRightSibling);
+        if (oldRightSibling != null) {
+            oldRightSibling.setLeftSibling(previous);
+        }
+        pool.onSplit(true, pieces.size());
+        var newRoot = BPlusTreeIntNode.propagateSplit(this, separators, pieces);
+        BPlusTreeIntNode.refreshPath(this);
+        return newRoot;
+    }
+
+    int search(K key) {
+        var low = 0;
+        var high = size - 1;
+        while (low <= high) {
+            var mid = (low + high) >>> 1;
+            var compareResult = pool.comparator.compare(keyAt(mid), key);
+            if (compareResult < 0) {
+                low = mid + 1;
+            } else if (compareResult > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    // index of the first entry whose key is >= key
+    int lowerBound(K key) {
+        var index = search(key);
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    // combines the values of entries [from, to)
+    V aggregate(int from, int to) {
+        var monoid = pool.aggregate;
+        var ret = monoid.identity();
+        for (var i = from; i < to; i++) {
+            ret = monoid.combine(ret, valueAt(i));
+        }
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int index) {
+        return (V)values[index];
+    }
+
+    Pair<K, V> entryAt(int index) {
+        return new Pair<>(keyAt(index), valueAt(index));
+    }
+
+    BPlusTreeLeafNode<K, V> getLeftSibling() {
+        return (BPlusTreeLeafNode<K, V>)leftSibling;
+    }
+
+    BPlusTreeLeafNode<K, V> getRightSibling() {
+        return (BPlusTreeLeafNode<K, V>)rightSibling;
+    }
+
+    // keeps the left half here and moves the right half into a new sibling
+    private BPlusTreeNode<K, V> maybeExplode() {
+        if (this.size >= degree) {
+            var leftSize = size / 2;
+            var rightSize = size - leftSize;
+
+            var rightNode = pool.newLeaf(this.parent, this, this.rightSibling);
+            System.arraycopy(keys, leftSize, rightNode.keys, 0, rightSize);
+            System.arraycopy(values, leftSize, rightNode.values, 0, rightSize);
+            Arrays.fill(keys, leftSize, size, null);
+            Arrays.fill(values, leftSize, size, null);
+            rightNode.size = rightSize;
+            size = leftSize;
+            rebuildFilter();
+            rightNode.rebuildFilter();
+            var powder = rightNode.keyAt(0);
+
+            if (rightSibling != null) {
+                rightSibling.leftSibling = rightNode;
+            }
+            rightSibling = rightNode;
+            pool.onSplit(true, 1);
+
+            if (parent == null) {
+                var newRoot = pool.newIntNode(null, null, null);
+                newRoot.appendChild(null, this);
+                newRoot.appendChild(powder, rightNode);
+                newRoot.refresh();
+                this.parent = newRoot;
+                rightNode.parent = newRoot;
+                pool.onRootChange(newRoot, true);
+                return newRoot;
+            } else {
+                return parent.onChildExplode(this, powder, rightNode);
+            }
+        } else {
+            return null;
+        }
+    }
+
+    private void fill(Object[] srcKeys, Object[] srcValues, int from, int count) {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        System.arraycopy(srcKeys, from, keys, 0, count);
+        System.arraycopy(srcValues, from, values, 0, count);
+        size = count;
+        rebuildFilter();
+    }
+
+    @Override
+    protected BPlusTreeNode<K, V> onChildExplode(BPlusTreeNode<K, V> exploded, K powder,
+                                                 BPlusTreeNode<K, V> rightChild) {
+        assert false;
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    Pair<Boolean, BPlusTreeNode<K, V>> delete(K key) {
+        var index = getDeletionIndex(key);
+        if (index == -1) {
+            return (Pair<Boolean, BPlusTreeNode<K, V>>)NOT_DELETED;
+        }
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        keys[size - 1] = null;
+        values[size - 1] = null;
+        size--;
+        // bits of removed keys stay set until a rebuild, which only costs false positives
+        if (filter != null && ++removedSinceRebuild > degree / 2) {
+            rebuildFilter();
+        }
+        BPlusTreeIntNode.propagateChange(this, -1);
+        if (pool.metrics != null) {
+            pool.metrics.recordEntries(-1);
+        }
+
+        var newRoot = maybeShrink();
+        return newRoot == null ? (Pair<Boolean, BPlusTreeNode<K, V>>)DELETED : new Pair<>(true, newRoot);
+    }
+
+    private BPlusTreeNode<K, V> maybeShrink() {
+        if (parent == null) {
+            return null;
+        }
+
+        if (this.size < pool.minLeafSize) {
+            var sibling = chooseSibling();
+            if (sibling == this.leftSibling) {
+                return mergeOrRedistribute(sibling, this);
+            }
+            return mergeOrRedistribute(this, sibling);
+        }
+        return null;
+    }
+
+    // merges right into left if everything fits in one leaf, otherwise evens the two out; they must share a parent
+    static<K, V> BPlusTreeNode<K, V> mergeOrRedistribute(BPlusTreeLeafNode<K, V> left,
+                                                         BPlusTreeLeafNode<K, V> right) {
+        var pool = left.pool;
+        var parent = left.parent;
+        var separatorIndex = parent.getSeparatorIndex(left, right);
+        var count = left.size + right.size;
+
+        if (count < left.degree) {
+            System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+            System.arraycopy(right.values, 0, left.values, left.size, right.size);
+            left.size = count;
+            left.rebuildFilter();
+            left.rightSibling = right.rightSibling;
+            if (right.rightSibling != null) {
+                right.rightSibling.setLeftSibling(left);
+            }
+            pool.onMerge(true);
+            var newRoot = parent.onChildrenShrink(separatorIndex);
+            pool.recycle(right);
+            return newRoot;
+        } else {
+            pool.onRebalance();
+            redistribute(left, right, count / 2);
+            parent.onChildrenReBalance(separatorIndex, right.keyAt(0));
+            return null;
+        }
+    }
+
+    // shifts entries across the boundary until left holds leftSize of them
+    private static<K, V> void redistribute(BPlusTreeLeafNode<K, V> left, BPlusTreeLeafNode<K, V> right,
+                                           int leftSize) {
+        if (left.size > leftSize) {
+            var moved = left.size - leftSize;
+            System.arraycopy(right.keys, 0, right.keys, moved, right.size);
+            System.arraycopy(right.values, 0, right.values, moved, right.size);
+            System.arraycopy(left.keys, leftSize, right.keys, 0, moved);
+            System.arraycopy(left.values, leftSize, right.values, 0, moved);
+            Arrays.fill(left.keys, leftSize, left.size, null);
+            Arrays.fill(left.values, leftSize, left.size, null);
+            right.size += moved;
+        } else {
+            var moved = leftSize - left.size;
+            System.arraycopy(right.keys, 0, left.keys, left.size, moved);
+            System.arraycopy(right.values, 0, left.values, left.size, moved);
+            System.arraycopy(right.keys, moved, right.keys, 0, right.size - moved);
+            System.arraycopy(right.values, moved, right.values, 0, right.size - moved);
+            Arrays.fill(right.keys, right.size - moved, right.size, null);
+            Arrays.fill(right.values, right.size - moved, right.size, null);
+            right.size -= moved;
+        }
+        left.size = leftSize;
+        left.rebuildFilter();
+        right.rebuildFilter();
+    }
+
+    private BPlusTreeLeafNode<K, V> chooseSibling() {
+        var leftSibling = (BPlusTreeLeafNode<K, V>)this.leftSibling;
+        var rightSibling = (BPlusTreeLeafNode<K, V>)this.rightSibling;
+        if (leftSibling == null || leftSibling.parent != this.parent) {
+            return rightSibling;
+        } else if (rightSibling == null || rightSibling.parent != this.parent){
+            return leftSibling;
+        } else {
+            return leftSibling.size > rightSibling.size ? leftSibling : rightSibling;
+        }
+    }
+
+    private int getDeletionIndex(K key) {
+        if (!mightContain(key)) {
+            return -1;
+        }
+        var index = search(key);
+        return index >= 0 ? index : -1;
+    }
+
+    @Override
+    protected BPlusTreeNode<K, V> onChildrenShrink(int separatorIndex) {
+        assert false;
+        return null;
+    }
+
+    @Override
+    protected int getSeparatorIndex(BPlusTreeNode<K, V> child1, BPlusTreeNode<K, V> child2) {
+        assert false;
+        return -1;
+    }
+
+    @Override
+    void traverse(List<Pair<K, V>> outputKV) {
+        var it = this;
+        while (it != null) {
+            for (var i = 0; i < it.size; i++) {
+                outputKV.add(it.entryAt(i));
+            }
+            it = (BPlusTreeLeafNode<K, V>)it.rightSibling;
+        }
+    }
+
+    @Override
+    BPlusTreeLeafNode<K, V> findLeaf(K key) {
+        return this;
+    }
+
+    @Override
+    BPlusTreeLeafNode<K, V> firstLeaf() {
+        return this;
+    }
+
+    @Override
+    BPlusTreeLeafNode<K, V> lastLeaf() {
+        return this;
+    }
+
+    @Override
+    protected void onChildrenReBalance(int separatorIndex, K newSeparator) {
+        assert false;
+    }
+
+    private Object[] values;
+    private long[] filter;
+    private int removedSinceRebuild;
+}
@@ -0,0 +1,109 @@
+package tech.icey.ds;
+
+import tech.icey.basic.Pair;
+import tech.icey.util.DirectedGraph;
+import tech.icey.util.GlobalIdAllocator;
+
+import java.util.Arrays;
+import java.util.List;
+
+abstract class BPlusTreeNode<K, V> {
+    BPlusTreeNode(BPlusTreeNodePool<K, V> pool,
+                  BPlusTreeNode<K, V> parent, BPlusTreeNode<K, V> leftSibling, BPlusTreeNode<K, V> rightSibling) {
+        this.pool = pool;
+        this.degree = pool.degree;
+        link(parent, leftSibling, rightSibling);
+    }
+
+    void link(BPlusTreeNode<K, V> parent, BPlusTreeNode<K, V> leftSibling, BPlusTreeNode<K, V> rightSibling) {
+        this.parent = parent;
+        this.leftSibling = leftSibling;
+        this.rightSibling = rightSibling;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0, size, null);
+        size = 0;
+        link(null, null, null);
+    }
+
+    // ids are only needed to tell nodes apart in the Graphviz output, so they are handed out on first use there
+    int globalId() {
+        if (globalId == 0) {
+            globalId = GlobalIdAllocator.getInstance().nextId();
+        }
+        return globalId;
+    }
+
+    void setParent(BPlusTreeNode<K, V> parent) {
+        this.parent = parent;
+    }
+
+    void setLeftSibling(BPlusTreeNode<K, V> leftSibling) {
+        this.leftSibling = leftSibling;
+    }
+
+    void setRightSibling(BPlusTreeNode<K, V> rightSibling) {
+        this.rightSibling = rightSibling;
+    }
+
+    @SuppressWarnings("unchecked")
+    K keyAt(int index) {
+        return (K)keys[index];
+    }
+
+    // the smallest separator above this node that bounds its key range from the right, null if unbounded
+    K upperBound() {
+        for (BPlusTreeNode<K, V> node = this; node.parent != null; node = node.parent) {
+            var bound = ((BPlusTreeIntNode<K, V>)node.parent).separatorAfter(node);
+            if (bound != null) {
+                return bound;
+            }
+        }
+        return null;
+    }
+
+    abstract void buildUpDirectedGraph(DirectedGraph d);
+
+    abstract BPlusTreeNode<K, V> insert(K key, V value);
+    abstract protected BPlusTreeNode<K, V> onChildExplode(BPlusTreeNode<K, V> exploded, K powder,
+                                                          BPlusTreeNode<K, V> rightChild);
+    abstract Pair<Boolean, BPlusTreeNode<K, V>> delete(K key);
+    abstract protected BPlusTreeNode<K, V> onChildrenShrink(int separatorIndex);
+    abstract protected int getSeparatorIndex(BPlusTreeNode<K, V> child1, BPlusTreeNode<K, V> child2);
+
+    abstract void traverse(List<Pair<K, V>> outputKV);
+
+    abstract BPlusTreeLeafNode<K, V> findLeaf(K key);
+    abstract BPlusTreeLeafNode<K, V> firstLeaf();
+    abstract BPlusTreeLeafNode<K, V> lastLeaf();
+
+    String buildDescriptor() {
+        var builder = new StringBuilder("(");
+        builder.append(globalId());
+        builder.append(") ");
+        if (size == 0) {
+            return builder.toString();
+        }
+        for (var i = 0; i < size - 1; i++) {
+            builder.append(keys[i]);
+            builder.append(", ");
+        }
+        builder.append(keys[size - 1]);
+        return builder.toString();
+    }
+
+    protected final BPlusTreeNodePool<K, V> pool;
+    protected final int degree;
+    protected BPlusTreeNode<K, V> parent, leftSibling, rightSibling;
+
+    protected int globalId;
+
+    protected Object[] keys;
+    protected int size;
+
+    protected abstract void onChildrenReBalance(int separatorIndex, K newSeparator);
+
+    protected static final Pair<Boolean, ?> NOT_DELETED = new Pair<>(false, null);
+    protected static final Pair<Boolean, ?> DELETED = new Pair<>(true, null);
+}
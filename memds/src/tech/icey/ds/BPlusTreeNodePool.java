@@ -0,0 +1,133 @@
+package tech.icey.ds;
+
+import tech.icey.basic.Monoid;
+import tech.icey.metrics.TreeMetrics;
+import tech.icey.metrics.TreeRootChangeEvent;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+
+// hands out the nodes of one tree, keeping up to capacity nodes released by merges for later splits to reuse
+class BPlusTreeNodePool<K, V> {
+    BPlusTreeNodePool(int degree, Comparator<? super K> comparator, int capacity) {
+        this.degree = degree;
+        this.comparator = comparator;
+        this.capacity = capacity;
+    }
+
+    BPlusTreeLeafNode<K, V> newLeaf(BPlusTreeNode<K, V> parent, BPlusTreeNode<K, V> leftSibling,
+                                    BPlusTreeNode<K, V> rightSibling) {
+        var node = freeLeaves.poll();
+        if (node == null) {
+            nodesAllocated++;
+            return new BPlusTreeLeafNode<K, V>(this, parent, leftSibling, rightSibling);
+        }
+        node.link(parent, leftSibling, rightSibling);
+        return node;
+    }
+
+    BPlusTreeIntNode<K, V> newIntNode(BPlusTreeNode<K, V> parent, BPlusTreeNode<K, V> leftSibling,
+                                      BPlusTreeNode<K, V> rightSibling) {
+        var node = freeIntNodes.poll();
+        if (node == null) {
+            nodesAllocated++;
+            return new BPlusTreeIntNode<K, V>(this, parent, leftSibling, rightSibling);
+        }
+        node.link(parent, leftSibling, rightSibling);
+        return node;
+    }
+
+    // node must already be unlinked from the tree
+    void recycle(BPlusTreeNode<K, V> node) {
+        if (node instanceof BPlusTreeLeafNode) {
+            if (freeLeaves.size() < capacity) {
+                node.clear();
+                freeLeaves.push((BPlusTreeLeafNode<K, V>)node);
+            }
+        } else if (freeIntNodes.size() < capacity) {
+            node.clear();
+            freeIntNodes.push((BPlusTreeIntNode<K, V>)node);
+        }
+    }
+
+    // structural changes report here, feeding the metrics when they are enabled and the running counters that the
+    // JFR event of the operation in progress takes its deltas from
+    void onSplit(boolean leaf, int newNodes) {
+        levelsSplit++;
+        if (metrics != null) {
+            metrics.recordSplit(leaf, newNodes);
+        }
+    }
+
+    void onMerge(boolean leaf) {
+        levelsMerged++;
+        if (metrics != null) {
+            metrics.recordMerge(leaf);
+        }
+    }
+
+    void onRebalance() {
+        if (metrics != null) {
+            metrics.recordRebalance();
+        }
+    }
+
+    void onRootChange(BPlusTreeNode<K, V> newRoot, boolean grew) {
+        if (metrics != null) {
+            if (grew) {
+                metrics.recordRootSplit();
+            } else {
+                metrics.recordRootCollapse();
+            }
+        }
+        var event = new TreeRootChangeEvent();
+        if (event.shouldCommit()) {
+            var height = 1;
+            for (var node = newRoot; node instanceof BPlusTreeIntNode; ) {
+                node = ((BPlusTreeIntNode<K, V>)node).childAt(0);
+                height++;
+            }
+            event.tree = "BPlusTree";
+            event.grew = grew;
+            event.height = height;
+            event.commit();
+        }
+    }
+
+    // nodes with fewer entries, or internal nodes with fewer keys, than these are merged or rebalanced on delete
+    void setMinimumFill(double minimumFill) {
+        if (minimumFill < 0.0 || minimumFill > 0.5) {
+            throw new IllegalArgumentException("minimum fill must be in [0, 0.5]");
+        }
+        minLeafSize = Math.max(1, (int)(minimumFill * (degree - 1)));
+        minIntNodeSize = minLeafSize;
+    }
+
+    // from now on every leaf carries a Bloom filter of about FILTER_BITS_PER_KEY bits per entry
+    void enableLeafFilters() {
+        filterWords = Integer.highestOneBit(Math.max(1, degree * FILTER_BITS_PER_KEY / 64));
+    }
+
+    final int degree;
+    int minLeafSize = 1;
+    int minIntNodeSize = 1;
+    // swapped for a counting one, and metrics set, once metrics are enabled
+    Comparator<? super K> comparator;
+    TreeMetrics metrics;
+    // running totals, only ever written by mutations; they may wrap, the deltas stay right
+    int levelsSplit;
+    int levelsMerged;
+    int nodesAllocated;
+    // words in each leaf filter, 0 while leaf filters are off
+    int filterWords;
+    // internal nodes keep per-child entry counts
+    boolean orderStatistics;
+    // internal nodes cache the aggregate of the values under each child, null if off
+    Monoid<V> aggregate;
+
+    private static final int FILTER_BITS_PER_KEY = 8;
+
+    private final int capacity;
+    private final ArrayDeque<BPlusTreeLeafNode<K, V>> freeLeaves = new ArrayDeque<>();
+    private final ArrayDeque<BPlusTreeIntNode<K, V>> freeIntNodes = new ArrayDeque<>();
+}
@@ -1,15 +1,26 @@
 package tech.icey.ds;
 
+import tech.icey.basic.Comparators;
 import tech.icey.basic.ListUtil;
 import tech.icey.basic.Pair;
+import tech.icey.metrics.TreeMetrics;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-
-class BTreeNode {
-    BTreeNode(int degree, BTreeNode parent, List<String> keys, List<BTreeNode> children) {
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+class BTreeNode<K> {
+    BTreeNode(int degree, Comparator<? super K> comparator, TreeMetrics metrics, BTreeNode<K> parent, List<K> keys,
+              List<BTreeNode<K>> children) {
         this.parent = parent;
         this.degree = degree;
+        this.comparator = comparator;
+        this.metrics = metrics;
         this.keys = keys;
         this.children = children;
 
@@ -17,7 +28,7 @@ class BTreeNode {
         this.rightSibling = null;
     }
 
-    BTreeNode insert(String key) {
+    BTreeNode<K> insert(K key) {
         if (this.isLeaf()) {
             return leafInsert(key);
         } else {
@@ -25,9 +36,9 @@ class BTreeNode {
         }
     }
 
-    Pair<BTreeNode, Boolean> delete(String key) {
+    Pair<BTreeNode<K>, Boolean> delete(K key) {
         for (int i = 0; i < keys.size(); i++) {
-            if (keys.get(i).equals(key)) {
+            if (comparator.compare(keys.get(i), key) == 0) {
                 return new Pair<>(localDelete(key, i), true);
             }
         }
@@ -35,7 +46,7 @@ class BTreeNode {
             return new Pair<>(null, false);
         } else {
             for (int i = 0; i < keys.size(); i++) {
-                if (keys.get(i).compareTo(key) > 0) {
+                if (comparator.compare(keys.get(i), key) > 0) {
                     return this.children.get(i).delete(key);
                 }
             }
@@ -43,7 +54,19 @@ class BTreeNode {
         }
     }
 
-    void traverse(List<String> outputKeys) {
+    boolean contains(K key) {
+        for (int i = 0; i < keys.size(); i++) {
+            var compareResult = comparator.compare(keys.get(i), key);
+            if (compareResult == 0) {
+                return true;
+            } else if (compareResult > 0) {
+                return !this.isLeaf() && this.children.get(i).contains(key);
+            }
+        }
+        return !this.isLeaf() && this.children.get(this.keys.size()).contains(key);
+    }
+
+    void traverse(List<K> outputKeys) {
         if (isLeaf()) {
             outputKeys.addAll(ListUtil.copy(keys));
         } else {
@@ -55,7 +78,7 @@ class BTreeNode {
         }
     }
 
-    private Pair<String, Integer> getSeparator(BTreeNode child1, BTreeNode child2) {
+    private Pair<K, Integer> getSeparator(BTreeNode<K> child1, BTreeNode<K> child2) {
         for (int i = 0; i < children.size() - 1; i++) {
             if (children.get(i) == child1 && children.get(i + 1) == child2
                 || children.get(i) == child2 && children.get(i + 1) == child1) {
@@ -66,7 +89,7 @@ class BTreeNode {
         return null;
     }
 
-    private BTreeNode maybeShrink() {
+    private BTreeNode<K> maybeShrink() {
         if (this.parent == null) {
             return null;
         }
@@ -81,8 +104,8 @@ class BTreeNode {
             var separator = separatorP.getFirst();
             var separatorIndex = separatorP.getSecond();
 
-            var allKeys = new ArrayList<String>();
-            var allChildren = isLeaf() ? null : new ArrayList<BTreeNode>();
+            var allKeys = new ArrayList<K>();
+            var allChildren = isLeaf() ? null : new ArrayList<BTreeNode<K>>();
 
             if (whichSibling == WhichSibling.LeftSibling) {
                 allKeys.addAll(sibling.keys);
@@ -103,7 +126,10 @@ class BTreeNode {
             }
 
             if (allKeys.size() < degree) {
-                var newNode = new BTreeNode(degree, parent, allKeys, allChildren);
+                if (metrics != null) {
+                    metrics.recordMerge(isLeaf());
+                }
+                var newNode = new BTreeNode<>(degree, comparator, metrics, parent, allKeys, allChildren);
                 if (allChildren != null) {
                     for (var child : allChildren) {
                         child.setParent(newNode);
@@ -129,6 +155,9 @@ class BTreeNode {
                     return parent.onChildrenShrink(this, sibling, newNode, separatorIndex);
                 }
             } else {
+                if (metrics != null) {
+                    metrics.recordRebalance();
+                }
                 var leftKeys = ListUtil.copy(allKeys.subList(0, allKeys.size() / 2));
                 var rightKeys = ListUtil.copy(allKeys.subList(allKeys.size() / 2 + 1, allKeys.size()));
                 var newSpearator = allKeys.get(allKeys.size() / 2);
@@ -172,9 +201,12 @@ class BTreeNode {
         }
     }
 
-    private BTreeNode localDelete(String key, int keyIndex) {
+    private BTreeNode<K> localDelete(K key, int keyIndex) {
         if (this.isLeaf()) {
             this.keys.remove(keyIndex);
+            if (metrics != null) {
+                metrics.recordEntries(-1);
+            }
             return maybeShrink();
         } else {
             var adjacent = this.findAdjacentKey(key, keyIndex);
@@ -183,7 +215,8 @@ class BTreeNode {
         }
     }
 
-    private BTreeNode onChildrenShrink(BTreeNode left, BTreeNode right, BTreeNode newNode, int separatorIndex) {
+    private BTreeNode<K> onChildrenShrink(BTreeNode<K> left, BTreeNode<K> right, BTreeNode<K> newNode,
+                                          int separatorIndex) {
         keys.remove(separatorIndex);
         children.remove(left);
         children.remove(right);
@@ -191,6 +224,9 @@ class BTreeNode {
 
         if (this.parent == null && this.keys.size() == 0) {
             newNode.parent = null;
+            if (metrics != null) {
+                metrics.recordRootCollapse();
+            }
             return newNode;
         }
 
@@ -201,7 +237,7 @@ class BTreeNode {
         LeftSibling, RightSibling
     }
 
-    private Pair<BTreeNode, WhichSibling> chooseSibling() {
+    private Pair<BTreeNode<K>, WhichSibling> chooseSibling() {
         if (this.leftSibling == null || this.leftSibling.parent != this.parent) {
             return new Pair<>(this.rightSibling, WhichSibling.RightSibling);
         } else if (this.rightSibling == null || this.rightSibling.parent != this.parent) {
@@ -213,7 +249,7 @@ class BTreeNode {
         }
     }
 
-    private Pair<String, BTreeNode> findAdjacentKey(String key, int keyIndex) {
+    private Pair<K, BTreeNode<K>> findAdjacentKey(K key, int keyIndex) {
         var it = this.children.get(keyIndex + 1);
         while (!it.isLeaf()) {
             it = it.children.get(0);
@@ -221,34 +257,37 @@ class BTreeNode {
         return new Pair<>(it.keys.get(0), it);
     }
 
-    private BTreeNode leafInsert(String key) {
+    private BTreeNode<K> leafInsert(K key) {
         var insertionPoint = findInsertPoint(key);
         if (insertionPoint == keys.size()) {
             keys.add(key);
         } else {
-            if (keys.get(insertionPoint).equals(key)) {
+            if (comparator.compare(keys.get(insertionPoint), key) == 0) {
                 return null;
             }
             keys.add(insertionPoint, key);
         }
+        if (metrics != null) {
+            metrics.recordEntries(1);
+        }
         return maybeExplode();
     }
 
-    private BTreeNode nonLeafInsert(String key) {
+    private BTreeNode<K> nonLeafInsert(K key) {
         var insertionPoint = findInsertPoint(key);
-        if (insertionPoint < keys.size() && keys.get(insertionPoint).equals(key)) {
+        if (insertionPoint < keys.size() && comparator.compare(keys.get(insertionPoint), key) == 0) {
             return null;
         }
         return children.get(insertionPoint).insert(key);
     }
 
-    private BTreeNode maybeExplode() {
+    private BTreeNode<K> maybeExplode() {
         if (keys.size() >= degree) {
             var powder = keys.get(keys.size() / 2);
             var leftKeys = ListUtil.copy(keys.subList(0, keys.size() / 2));
             var rightKeys = ListUtil.copy(keys.subList(keys.size() / 2 + 1, keys.size()));
-            var leftNode = new BTreeNode(degree, null, leftKeys, null);
-            var rightNode = new BTreeNode(degree, null, rightKeys, null);
+            var leftNode = new BTreeNode<>(degree, comparator, metrics, null, leftKeys, null);
+            var rightNode = new BTreeNode<>(degree, comparator, metrics, null, rightKeys, null);
             if (!isLeaf()) {
                 var leftChildren = ListUtil.copy(children.subList(0, keys.size() / 2 + 1));
                 var rightChildren = ListUtil.copy(children.subList(keys.size() / 2 + 1, keys.size() + 1));
@@ -270,9 +309,15 @@ class BTreeNode {
             }
             leftNode.setSiblings(this.leftSibling, rightNode);
             rightNode.setSiblings(leftNode, this.rightSibling);
+            if (metrics != null) {
+                metrics.recordSplit(isLeaf(), 1);
+            }
 
             if (parent == null) {
-                var newRoot = new BTreeNode(degree, null,
+                if (metrics != null) {
+                    metrics.recordRootSplit();
+                }
+                var newRoot = new BTreeNode<>(degree, comparator, metrics, null,
                                             ListUtil.copy(List.of(powder)),
                                             ListUtil.copy(List.of(leftNode, rightNode)));
                 leftNode.setParent(newRoot);
@@ -286,7 +331,8 @@ class BTreeNode {
         }
     }
 
-    private BTreeNode onChildExplode(BTreeNode exploded, String powder, BTreeNode leftChild, BTreeNode rightChild) {
+    private BTreeNode<K> onChildExplode(BTreeNode<K> exploded, K powder, BTreeNode<K> leftChild,
+                                        BTreeNode<K> rightChild) {
         var explodedIndex = children.indexOf(exploded);
         children.remove(explodedIndex);
         children.add(explodedIndex, rightChild);
@@ -297,64 +343,225 @@ class BTreeNode {
         return maybeExplode();
     }
 
-    private void setChildren(ArrayList<BTreeNode> children) {
+    private void setChildren(ArrayList<BTreeNode<K>> children) {
         this.children = children;
     }
 
-    private void setParent(BTreeNode parent) {
+    private void setParent(BTreeNode<K> parent) {
         this.parent = parent;
     }
 
-    private void setSiblings(BTreeNode leftSibling, BTreeNode rightSibling) {
+    private void setSiblings(BTreeNode<K> leftSibling, BTreeNode<K> rightSibling) {
         this.leftSibling = leftSibling;
         this.rightSibling = rightSibling;
     }
 
-    private void setLeftSibling(BTreeNode leftSibling) {
+    private void setLeftSibling(BTreeNode<K> leftSibling) {
         this.leftSibling = leftSibling;
     }
 
-    private void setRightSibling(BTreeNode rightSibling) {
+    private void setRightSibling(BTreeNode<K> rightSibling) {
         this.rightSibling = rightSibling;
     }
 
-    private int findInsertPoint(String key) {
+    private int findInsertPoint(K key) {
         for (int i = 0; i < keys.size(); i++) {
-            if (keys.get(i).compareTo(key) >= 0) /*  keys[i] >= key */ {
+            if (comparator.compare(keys.get(i), key) >= 0) /*  keys[i] >= key */ {
                 return i;
             }
         }
         return keys.size();
     }
 
-    private boolean isLeaf() {
+    boolean isLeaf() {
         return this.children == null;
     }
 
-    private BTreeNode parent;
+    int keyCount() {
+        return keys.size();
+    }
+
+    K keyAt(int index) {
+        return keys.get(index);
+    }
+
+    BTreeNode<K> childAt(int index) {
+        return children.get(index);
+    }
+
+    // points this subtree at the given comparator and metrics, adds up its node, leaf and key counts and returns
+    // its height
+    int enableMetrics(Comparator<? super K> comparator, TreeMetrics metrics, long[] counts) {
+        this.comparator = comparator;
+        this.metrics = metrics;
+        counts[0]++;
+        counts[2] += keys.size();
+        if (isLeaf()) {
+            counts[1]++;
+            return 1;
+        }
+        var height = 0;
+        for (var child : children) {
+            height = child.enableMetrics(comparator, metrics, counts);
+        }
+        return height + 1;
+    }
+
+    private BTreeNode<K> parent;
 
-    private BTreeNode leftSibling, rightSibling;
+    private BTreeNode<K> leftSibling, rightSibling;
 
     private int degree;
 
-    private List<String> keys;
+    private Comparator<? super K> comparator;
+
+    private TreeMetrics metrics;
+
+    private List<K> keys;
+
+    private List<BTreeNode<K>> children;
+}
+
+// a leaf has one position per key, an internal node interleaves its children and keys: child i sits at position 2i
+// and key i at 2i + 1. trySplit hands out the first half of the position range, descending when only one child is
+// left, and traversal keeps a stack of the position ranges still to visit
+class BTreeSpliterator<K> implements Spliterator<K> {
+    BTreeSpliterator(BTreeNode<K> rootNode, Comparator<? super K> comparator) {
+        this(rootNode, 0, positionCount(rootNode), Long.MAX_VALUE, comparator);
+    }
+
+    private BTreeSpliterator(BTreeNode<K> node, int from, int to, long estimate, Comparator<? super K> comparator) {
+        this.node = node;
+        this.from = from;
+        this.to = to;
+        this.estimate = node.isLeaf() ? to - from : estimate;
+        this.comparator = comparator;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super K> action) {
+        if (stack == null) {
+            stack = new ArrayDeque<>();
+            stack.push(new Frame<>(node, from, to));
+        }
+        while (!stack.isEmpty()) {
+            var top = stack.peek();
+            if (top.position >= top.end) {
+                stack.pop();
+                continue;
+            }
+            var position = top.position++;
+            if (top.node.isLeaf() || position % 2 == 1) {
+                action.accept(top.node.keyAt(top.node.isLeaf() ? position : position / 2));
+                if (estimate > 0) {
+                    estimate--;
+                }
+                return true;
+            }
+            var child = top.node.childAt(position / 2);
+            stack.push(new Frame<>(child, 0, positionCount(child)));
+        }
+        return false;
+    }
+
+    @Override
+    public Spliterator<K> trySplit() {
+        if (stack != null) {
+            return null;
+        }
+        while (to - from == 1 && !node.isLeaf() && from % 2 == 0) {
+            node = node.childAt(from / 2);
+            from = 0;
+            to = positionCount(node);
+            if (node.isLeaf()) {
+                // the halved guesses end here, a leaf knows its size
+                estimate = to - from;
+            }
+        }
+        if (to - from < 2) {
+            return null;
+        }
+
+        var mid = (from + to) >>> 1;
+        if (!node.isLeaf()) {
+            estimate >>>= 1;
+        }
+        var prefix = new BTreeSpliterator<>(node, from, mid, estimate, comparator);
+        from = mid;
+        if (node.isLeaf()) {
+            estimate = to - from;
+        }
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        var ret = Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL;
+        if (node.isLeaf()) {
+            ret |= Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+        return ret;
+    }
+
+    @Override
+    public Comparator<? super K> getComparator() {
+        // the Spliterator contract reports natural ordering as null
+        return comparator == Comparators.naturalOrder() ? null : comparator;
+    }
+
+    private static int positionCount(BTreeNode<?> node) {
+        return node.isLeaf() ? node.keyCount() : 2 * node.keyCount() + 1;
+    }
+
+    private static final class Frame<K> {
+        Frame(BTreeNode<K> node, int position, int end) {
+            this.node = node;
+            this.position = position;
+            this.end = end;
+        }
+
+        final BTreeNode<K> node;
+        int position;
+        final int end;
+    }
 
-    private List<BTreeNode> children;
+    private final Comparator<? super K> comparator;
+    private BTreeNode<K> node;
+    private int from, to;
+    private long estimate;
+    private ArrayDeque<Frame<K>> stack;
 }
 
-public class BTree {
+public class BTree<K> {
     public BTree(int degree) {
-        this.rootNode = new BTreeNode(degree, null, new ArrayList<>(), null);
+        this(degree, Comparators.naturalOrder());
     }
 
-    public void insert(String key) {
+    public BTree(int degree, Comparator<? super K> comparator) {
+        this.degree = degree;
+        this.comparator = comparator;
+        this.rootNode = new BTreeNode<>(degree, comparator, null, null, new ArrayList<>(), null);
+    }
+
+    public void insert(K key) {
+        if (metrics != null) {
+            metrics.recordInsert();
+        }
         var newRoot = rootNode.insert(key);
         if (newRoot != null) {
             rootNode = newRoot;
         }
     }
 
-    public boolean delete(String key) {
+    public boolean delete(K key) {
+        if (metrics != null) {
+            metrics.recordDelete();
+        }
         var result = rootNode.delete(key);
         if (result.getFirst() != null) {
             rootNode = result.getFirst();
@@ -362,11 +569,43 @@ public class BTree {
         return result.getSecond();
     }
 
-    public List<String> traverse() {
-        var ret = new ArrayList<String>();
+    public boolean contains(K key) {
+        if (metrics != null) {
+            metrics.recordLookup();
+        }
+        return rootNode.contains(key);
+    }
+
+    // counts operations, structural changes and comparisons from now on, the shape gauges start from a walk of the
+    // tree as it is now
+    public TreeMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new TreeMetrics("BTree", degree - 1, false);
+            var counts = new long[3];
+            var height = rootNode.enableMetrics(metrics.countingComparator(comparator), metrics, counts);
+            metrics.initShape(height, counts[0], counts[1], counts[2]);
+        }
+        return metrics;
+    }
+
+    // splits by handing out halves of a node's children and keys, so stream().parallel() fans out without copying.
+    // The tree must not be modified while the spliterator is in use
+    public Spliterator<K> spliterator() {
+        return new BTreeSpliterator<>(rootNode, comparator);
+    }
+
+    public Stream<K> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public List<K> traverse() {
+        var ret = new ArrayList<K>();
         rootNode.traverse(ret);
         return ret;
     }
 
-    private BTreeNode rootNode;
+    private final int degree;
+    private final Comparator<? super K> comparator;
+    private BTreeNode<K> rootNode;
+    private TreeMetrics metrics;
 }
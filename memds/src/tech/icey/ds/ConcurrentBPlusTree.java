@@ -0,0 +1,509 @@
+package tech.icey.ds;
+
+import tech.icey.basic.Comparators;
+import tech.icey.basic.Pair;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+abstract class ConcurrentBPlusTreeNode<K, V> extends ArrayBPlusTreeNode {
+    ConcurrentBPlusTreeNode(int keyCapacity) {
+        this.keys = new Object[keyCapacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    K keyAt(int index) {
+        return (K)keys[index];
+    }
+
+    @Override
+    Object keyArray() {
+        return keys;
+    }
+
+    final StampedLock latch = new StampedLock();
+    Object[] keys;
+}
+
+class ConcurrentBPlusTreeIntNode<K, V> extends ConcurrentBPlusTreeNode<K, V> {
+    @SuppressWarnings("unchecked")
+    ConcurrentBPlusTreeIntNode(int degree) {
+        super(degree);
+        this.children = (ConcurrentBPlusTreeNode<K, V>[])new ConcurrentBPlusTreeNode<?, ?>[degree + 1];
+    }
+
+    @Override
+    Object[] slots() {
+        return children;
+    }
+
+    @Override
+    boolean isLeaf() {
+        return false;
+    }
+
+    int route(K key, Comparator<? super K> comparator) {
+        var low = 0;
+        var high = size;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (comparator.compare(keyAt(mid), key) > 0) /* keys[mid] > key */ {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    void insertChild(int index, Object separator, ConcurrentBPlusTreeNode<K, V> rightChild) {
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(children, index + 1, children, index + 2, size - index);
+        keys[index] = separator;
+        children[index + 1] = rightChild;
+        size++;
+    }
+
+    ConcurrentBPlusTreeNode<K, V>[] children;
+}
+
+class ConcurrentBPlusTreeLeafNode<K, V> extends ConcurrentBPlusTreeNode<K, V> {
+    ConcurrentBPlusTreeLeafNode(int degree) {
+        super(degree);
+        this.values = new Object[degree];
+    }
+
+    @Override
+    Object[] slots() {
+        return values;
+    }
+
+    @Override
+    boolean isLeaf() {
+        return true;
+    }
+
+    int search(K key, Comparator<? super K> comparator) {
+        var low = 0;
+        var high = size - 1;
+        while (low <= high) {
+            var mid = (low + high) >>> 1;
+            var compareResult = comparator.compare(keyAt(mid), key);
+            if (compareResult < 0) {
+                low = mid + 1;
+            } else if (compareResult > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    void insertAt(int index, Object key, Object value) {
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        keys[index] = key;
+        values[index] = value;
+        size++;
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int index) {
+        return (V)values[index];
+    }
+
+    Object[] values;
+}
+
+// Writers descend with exclusive latches and release every latched ancestor as soon as they reach a node that
+// cannot split (insert) or underflow (delete), so only the part of the path that may change stays latched.
+// Readers hold at most two shared latches at a time. rootLatch guards the root pointer itself.
+//
+// In OPTIMISTIC mode the latch stamps double as node versions: readers descend without acquiring anything and
+// restart if a node they passed through was modified, and writers do the same down to the leaf, latch only the
+// leaf, and fall back to crabbing when the leaf might split or underflow.
+public class ConcurrentBPlusTree<K, V> {
+    public enum LatchMode {
+        CRABBING,
+        OPTIMISTIC
+    }
+
+    public ConcurrentBPlusTree(int degree) {
+        this(degree, Comparators.naturalOrder());
+    }
+
+    public ConcurrentBPlusTree(int degree, Comparator<? super K> comparator) {
+        this(degree, comparator, LatchMode.CRABBING);
+    }
+
+    public ConcurrentBPlusTree(int degree, Comparator<? super K> comparator, LatchMode latchMode) {
+        if (degree < 3) {
+            throw new IllegalArgumentException("degree must be at least 3");
+        }
+        this.degree = degree;
+        this.comparator = comparator;
+        this.latchMode = latchMode;
+        this.rootNode = new ConcurrentBPlusTreeLeafNode<>(degree);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        var value = lookup(key);
+        return value == ABSENT ? null : (V)value;
+    }
+
+    public boolean containsKey(K key) {
+        return lookup(key) != ABSENT;
+    }
+
+    public int size() {
+        return size.intValue();
+    }
+
+    // the value stored under key, which may be null, or ABSENT if there is none
+    private Object lookup(K key) {
+        if (latchMode == LatchMode.OPTIMISTIC) {
+            return optimisticLookup(key);
+        }
+
+        var rootStamp = rootLatch.readLock();
+        var node = rootNode;
+        var stamp = node.latch.readLock();
+        rootLatch.unlockRead(rootStamp);
+        while (node instanceof ConcurrentBPlusTreeIntNode) {
+            var intNode = (ConcurrentBPlusTreeIntNode<K, V>)node;
+            var child = intNode.children[intNode.route(key, comparator)];
+            var childStamp = child.latch.readLock();
+            node.latch.unlockRead(stamp);
+            node = child;
+            stamp = childStamp;
+        }
+
+        try {
+            var leaf = (ConcurrentBPlusTreeLeafNode<K, V>)node;
+            var index = leaf.search(key, comparator);
+            return index >= 0 ? leaf.values[index] : ABSENT;
+        } finally {
+            node.latch.unlockRead(stamp);
+        }
+    }
+
+    public void insert(K key, V value) {
+        if (latchMode == LatchMode.OPTIMISTIC && optimisticInsert(key, value)) {
+            return;
+        }
+
+        var path = new WritePath();
+        path.descend(key, true);
+        try {
+            var leaf = (ConcurrentBPlusTreeLeafNode<K, V>)path.nodes[path.depth];
+            var index = leaf.search(key, comparator);
+            if (index >= 0) {
+                leaf.values[index] = value;
+                return;
+            }
+            leaf.insertAt(-(index + 1), key, value);
+            size.increment();
+
+            var newSibling = leaf.size >= degree ? splitLeaf(leaf, path) : null;
+            for (var level = path.depth - 1; newSibling != null; level--) {
+                if (level < path.top) {
+                    var newRoot = new ConcurrentBPlusTreeIntNode<K, V>(degree);
+                    newRoot.children[0] = rootNode;
+                    newRoot.insertChild(0, path.splitKey, newSibling);
+                    rootNode = newRoot;
+                    break;
+                }
+                var parent = (ConcurrentBPlusTreeIntNode<K, V>)path.nodes[level];
+                parent.insertChild(path.childIndexes[level], path.splitKey, newSibling);
+                newSibling = parent.size >= degree ? splitIntNode(parent, path) : null;
+            }
+        } finally {
+            path.release();
+        }
+    }
+
+    public boolean delete(K key) {
+        if (latchMode == LatchMode.OPTIMISTIC) {
+            var leaf = lockLeafOptimistically(key);
+            try {
+                var index = leaf.search(key, comparator);
+                if (index < 0) {
+                    return false;
+                }
+                if (isSafe(leaf, leaf == rootNode, false)) {
+                    leaf.removeEntry(index);
+                    size.decrement();
+                    return true;
+                }
+            } finally {
+                leaf.latch.tryUnlockWrite();
+            }
+        }
+
+        var path = new WritePath();
+        path.descend(key, false);
+        try {
+            var leaf = (ConcurrentBPlusTreeLeafNode<K, V>)path.nodes[path.depth];
+            var index = leaf.search(key, comparator);
+            if (index < 0) {
+                return false;
+            }
+            leaf.removeEntry(index);
+            size.decrement();
+
+            for (var level = path.depth; level > path.top; level--) {
+                var child = path.nodes[level];
+                if (child.size >= ArrayBPlusTreeNode.minimumSize(child, degree)) {
+                    break;
+                }
+                fixUnderflow((ConcurrentBPlusTreeIntNode<K, V>)path.nodes[level - 1], path.childIndexes[level - 1]);
+            }
+
+            if (path.rootLatched && rootNode instanceof ConcurrentBPlusTreeIntNode && rootNode.size == 0) {
+                rootNode = ((ConcurrentBPlusTreeIntNode<K, V>)rootNode).children[0];
+            }
+            return true;
+        } finally {
+            path.release();
+        }
+    }
+
+    public List<Pair<K, V>> traverse() {
+        var ret = new ArrayList<Pair<K, V>>();
+        var rootStamp = rootLatch.readLock();
+        var node = rootNode;
+        var stamp = node.latch.readLock();
+        rootLatch.unlockRead(rootStamp);
+        try {
+            traverse(node, ret);
+        } finally {
+            node.latch.unlockRead(stamp);
+        }
+        return ret;
+    }
+
+    private void traverse(ConcurrentBPlusTreeNode<K, V> node, List<Pair<K, V>> outputKV) {
+        if (node instanceof ConcurrentBPlusTreeLeafNode) {
+            var leaf = (ConcurrentBPlusTreeLeafNode<K, V>)node;
+            for (var i = 0; i < leaf.size; i++) {
+                outputKV.add(new Pair<>(leaf.keyAt(i), leaf.valueAt(i)));
+            }
+            return;
+        }
+        var intNode = (ConcurrentBPlusTreeIntNode<K, V>)node;
+        for (var i = 0; i <= intNode.size; i++) {
+            var child = intNode.children[i];
+            var stamp = child.latch.readLock();
+            try {
+                traverse(child, outputKV);
+            } finally {
+                child.latch.unlockRead(stamp);
+            }
+        }
+    }
+
+    private Object optimisticLookup(K key) {
+        while (true) {
+            var rootStamp = rootLatch.tryOptimisticRead();
+            ConcurrentBPlusTreeNode<K, V> node = rootNode;
+            var stamp = node.latch.tryOptimisticRead();
+            if (!rootLatch.validate(rootStamp)) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            try {
+                while (node instanceof ConcurrentBPlusTreeIntNode && stamp != 0) {
+                    var intNode = (ConcurrentBPlusTreeIntNode<K, V>)node;
+                    var child = intNode.children[intNode.route(key, comparator)];
+                    var childStamp = child.latch.tryOptimisticRead();
+                    if (!node.latch.validate(stamp)) {
+                        stamp = 0;
+                        break;
+                    }
+                    node = child;
+                    stamp = childStamp;
+                }
+                if (stamp != 0) {
+                    var leaf = (ConcurrentBPlusTreeLeafNode<K, V>)node;
+                    var index = leaf.search(key, comparator);
+                    var value = index >= 0 ? leaf.values[index] : ABSENT;
+                    if (leaf.latch.validate(stamp)) {
+                        return value;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // a torn read may index past the live entries or meet a cleared slot; only a node that is still
+                // unchanged proves the failure is real
+                if (node.latch.validate(stamp)) {
+                    throw e;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private boolean optimisticInsert(K key, V value) {
+        var leaf = lockLeafOptimistically(key);
+        try {
+            var index = leaf.search(key, comparator);
+            if (index >= 0) {
+                leaf.values[index] = value;
+                return true;
+            }
+            if (!isSafe(leaf, leaf == rootNode, true)) {
+                return false;
+            }
+            leaf.insertAt(-(index + 1), key, value);
+            size.increment();
+            return true;
+        } finally {
+            leaf.latch.tryUnlockWrite();
+        }
+    }
+
+    // descends like optimisticGet and converts the version of the target leaf into its exclusive latch, which only
+    // succeeds if the leaf has not changed since the parent that led to it was validated
+    private ConcurrentBPlusTreeLeafNode<K, V> lockLeafOptimistically(K key) {
+        while (true) {
+            var rootStamp = rootLatch.tryOptimisticRead();
+            ConcurrentBPlusTreeNode<K, V> node = rootNode;
+            var stamp = node.latch.tryOptimisticRead();
+            if (!rootLatch.validate(rootStamp)) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            try {
+                while (node instanceof ConcurrentBPlusTreeIntNode && stamp != 0) {
+                    var intNode = (ConcurrentBPlusTreeIntNode<K, V>)node;
+                    var child = intNode.children[intNode.route(key, comparator)];
+                    var childStamp = child.latch.tryOptimisticRead();
+                    if (!node.latch.validate(stamp)) {
+                        stamp = 0;
+                        break;
+                    }
+                    node = child;
+                    stamp = childStamp;
+                }
+                if (stamp != 0 && node.latch.tryConvertToWriteLock(stamp) != 0) {
+                    return (ConcurrentBPlusTreeLeafNode<K, V>)node;
+                }
+            } catch (RuntimeException e) {
+                if (node.latch.validate(stamp)) {
+                    throw e;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private boolean isSafe(ConcurrentBPlusTreeNode<K, V> node, boolean isRoot, boolean forInsert) {
+        if (forInsert) {
+            return node.size + 1 < degree;
+        }
+        if (isRoot) {
+            return node instanceof ConcurrentBPlusTreeLeafNode || node.size > 1;
+        }
+        return node.size > ArrayBPlusTreeNode.minimumSize(node, degree);
+    }
+
+    private ConcurrentBPlusTreeNode<K, V> splitLeaf(ConcurrentBPlusTreeLeafNode<K, V> leaf, WritePath path) {
+        var right = new ConcurrentBPlusTreeLeafNode<K, V>(degree);
+        ArrayBPlusTreeNode.splitLeaf(leaf, right);
+        path.splitKey = right.keys[0];
+        return right;
+    }
+
+    private ConcurrentBPlusTreeNode<K, V> splitIntNode(ConcurrentBPlusTreeIntNode<K, V> intNode, WritePath path) {
+        var right = new ConcurrentBPlusTreeIntNode<K, V>(degree);
+        path.splitKey = intNode.keys[intNode.size / 2];
+        ArrayBPlusTreeNode.splitIntNode(intNode, right);
+        return right;
+    }
+
+    // the parent is latched exclusively, so nobody else can be on the way down to the sibling we latch here
+    private void fixUnderflow(ConcurrentBPlusTreeIntNode<K, V> parent, int childIndex) {
+        var sibling = parent.children[childIndex > 0 ? childIndex - 1 : childIndex + 1];
+        var stamp = sibling.latch.writeLock();
+        try {
+            ArrayBPlusTreeNode.fixUnderflow(parent, childIndex, degree);
+        } finally {
+            sibling.latch.unlockWrite(stamp);
+        }
+    }
+
+    private class WritePath {
+        void descend(K key, boolean forInsert) {
+            rootStamp = rootLatch.writeLock();
+            rootLatched = true;
+            var node = rootNode;
+            stamps[0] = node.latch.writeLock();
+            nodes[0] = node;
+            if (isSafe(node, true, forInsert)) {
+                releaseAbove(0);
+            }
+
+            while (node instanceof ConcurrentBPlusTreeIntNode) {
+                var intNode = (ConcurrentBPlusTreeIntNode<K, V>)node;
+                var childIndex = intNode.route(key, comparator);
+                var child = intNode.children[childIndex];
+                childIndexes[depth] = childIndex;
+                depth++;
+                nodes[depth] = child;
+                stamps[depth] = child.latch.writeLock();
+                if (isSafe(child, false, forInsert)) {
+                    releaseAbove(depth);
+                }
+                node = child;
+            }
+        }
+
+        void release() {
+            for (var i = top; i <= depth; i++) {
+                nodes[i].latch.unlockWrite(stamps[i]);
+            }
+            if (rootLatched) {
+                rootLatch.unlockWrite(rootStamp);
+                rootLatched = false;
+            }
+        }
+
+        private void releaseAbove(int level) {
+            for (var i = top; i < level; i++) {
+                nodes[i].latch.unlockWrite(stamps[i]);
+            }
+            top = level;
+            if (rootLatched) {
+                rootLatch.unlockWrite(rootStamp);
+                rootLatched = false;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        final ConcurrentBPlusTreeNode<K, V>[] nodes =
+                (ConcurrentBPlusTreeNode<K, V>[])new ConcurrentBPlusTreeNode<?, ?>[MAX_HEIGHT];
+        final long[] stamps = new long[MAX_HEIGHT];
+        final int[] childIndexes = new int[MAX_HEIGHT];
+        int top, depth;
+        long rootStamp;
+        boolean rootLatched;
+        Object splitKey;
+    }
+
+    private static final int MAX_HEIGHT = 64;
+    private static final Object ABSENT = new Object();
+
+    private final int degree;
+    private final Comparator<? super K> comparator;
+    private final LatchMode latchMode;
+    private final StampedLock rootLatch = new StampedLock();
+    // striped, so writers in disjoint subtrees do not all bump the same cache line
+    private final LongAdder size = new LongAdder();
+    private volatile ConcurrentBPlusTreeNode<K, V> rootNode;
+}
@@ -0,0 +1,422 @@
+package tech.icey.ds;
+
+import tech.icey.basic.Comparators;
+import tech.icey.basic.Pair;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+abstract class CopyOnWriteBPlusTreeNode<K, V> extends ArrayBPlusTreeNode {
+    CopyOnWriteBPlusTreeNode(Object[] keys, int size) {
+        this.keys = keys;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    K keyAt(int index) {
+        return (K)keys[index];
+    }
+
+    @Override
+    Object keyArray() {
+        return keys;
+    }
+
+    final Object[] keys;
+}
+
+class CopyOnWriteBPlusTreeIntNode<K, V> extends CopyOnWriteBPlusTreeNode<K, V> {
+    @SuppressWarnings("unchecked")
+    CopyOnWriteBPlusTreeIntNode(int degree) {
+        super(new Object[degree], 0);
+        this.children = (CopyOnWriteBPlusTreeNode<K, V>[])new CopyOnWriteBPlusTreeNode<?, ?>[degree + 1];
+    }
+
+    private CopyOnWriteBPlusTreeIntNode(CopyOnWriteBPlusTreeIntNode<K, V> that) {
+        super(that.keys.clone(), that.size);
+        this.children = that.children.clone();
+    }
+
+    CopyOnWriteBPlusTreeIntNode<K, V> copy() {
+        return new CopyOnWriteBPlusTreeIntNode<>(this);
+    }
+
+    @Override
+    Object[] slots() {
+        return children;
+    }
+
+    @Override
+    boolean isLeaf() {
+        return false;
+    }
+
+    int route(K key, Comparator<? super K> comparator) {
+        var low = 0;
+        var high = size;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (comparator.compare(keyAt(mid), key) > 0) /* keys[mid] > key */ {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    void insertChild(int index, Object separator, CopyOnWriteBPlusTreeNode<K, V> rightChild) {
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(children, index + 1, children, index + 2, size - index);
+        keys[index] = separator;
+        children[index + 1] = rightChild;
+        size++;
+    }
+
+    final CopyOnWriteBPlusTreeNode<K, V>[] children;
+}
+
+class CopyOnWriteBPlusTreeLeafNode<K, V> extends CopyOnWriteBPlusTreeNode<K, V> {
+    CopyOnWriteBPlusTreeLeafNode(int degree) {
+        super(new Object[degree], 0);
+        this.values = new Object[degree];
+    }
+
+    private CopyOnWriteBPlusTreeLeafNode(CopyOnWriteBPlusTreeLeafNode<K, V> that) {
+        super(that.keys.clone(), that.size);
+        this.values = that.values.clone();
+    }
+
+    CopyOnWriteBPlusTreeLeafNode<K, V> copy() {
+        return new CopyOnWriteBPlusTreeLeafNode<>(this);
+    }
+
+    @Override
+    Object[] slots() {
+        return values;
+    }
+
+    @Override
+    boolean isLeaf() {
+        return true;
+    }
+
+    int search(K key, Comparator<? super K> comparator) {
+        var low = 0;
+        var high = size - 1;
+        while (low <= high) {
+            var mid = (low + high) >>> 1;
+            var compareResult = comparator.compare(keyAt(mid), key);
+            if (compareResult < 0) {
+                low = mid + 1;
+            } else if (compareResult > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    void insertAt(int index, Object key, Object value) {
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        keys[index] = key;
+        values[index] = value;
+        size++;
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int index) {
+        return (V)values[index];
+    }
+
+    final Object[] values;
+}
+
+class CopyOnWriteBPlusTreeRangeIterator<K, V> implements Iterator<Pair<K, V>> {
+    @SuppressWarnings("unchecked")
+    CopyOnWriteBPlusTreeRangeIterator(CopyOnWriteBPlusTreeNode<K, V> rootNode, Comparator<? super K> comparator,
+                                      K fromKey, K toKey) {
+        this.comparator = comparator;
+        this.toKey = toKey;
+        this.path = (CopyOnWriteBPlusTreeIntNode<K, V>[])new CopyOnWriteBPlusTreeIntNode<?, ?>[MAX_HEIGHT];
+        this.childIndexes = new int[MAX_HEIGHT];
+
+        var node = rootNode;
+        while (node instanceof CopyOnWriteBPlusTreeIntNode) {
+            var intNode = (CopyOnWriteBPlusTreeIntNode<K, V>)node;
+            var childIndex = fromKey == null ? 0 : intNode.route(fromKey, comparator);
+            path[depth] = intNode;
+            childIndexes[depth] = childIndex;
+            depth++;
+            node = intNode.children[childIndex];
+        }
+        leaf = (CopyOnWriteBPlusTreeLeafNode<K, V>)node;
+        if (fromKey != null) {
+            var searchResult = leaf.search(fromKey, comparator);
+            index = searchResult >= 0 ? searchResult : -(searchResult + 1);
+        }
+        seek();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public Pair<K, V> next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        var ret = next;
+        index++;
+        seek();
+        return ret;
+    }
+
+    // without sibling links the next leaf is found by backing up to the closest ancestor with a child to the right
+    private void seek() {
+        while (leaf != null && index >= leaf.size) {
+            var level = depth - 1;
+            while (level >= 0 && childIndexes[level] == path[level].size) {
+                level--;
+            }
+            if (level < 0) {
+                leaf = null;
+                break;
+            }
+            childIndexes[level]++;
+            CopyOnWriteBPlusTreeNode<K, V> node = path[level].children[childIndexes[level]];
+            for (level++; level < depth; level++) {
+                path[level] = (CopyOnWriteBPlusTreeIntNode<K, V>)node;
+                childIndexes[level] = 0;
+                node = path[level].children[0];
+            }
+            leaf = (CopyOnWriteBPlusTreeLeafNode<K, V>)node;
+            index = 0;
+        }
+
+        if (leaf == null || (toKey != null && comparator.compare(leaf.keyAt(index), toKey) >= 0)) {
+            next = null;
+        } else {
+            next = new Pair<>(leaf.keyAt(index), leaf.valueAt(index));
+        }
+    }
+
+    private static final int MAX_HEIGHT = 64;
+
+    private final Comparator<? super K> comparator;
+    private final K toKey;
+    private final CopyOnWriteBPlusTreeIntNode<K, V>[] path;
+    private final int[] childIndexes;
+    private int depth;
+    private CopyOnWriteBPlusTreeLeafNode<K, V> leaf;
+    private int index;
+    private Pair<K, V> next;
+}
+
+// Nodes are never modified once they are reachable from a published version: a write copies the nodes on its
+// root-to-leaf path (plus the sibling it merges with or borrows from) and publishes a new Snapshot with a single
+// volatile store. Readers keep whatever Snapshot they started with, and old nodes become garbage once the last
+// Snapshot referencing them is dropped. Writers are serialized among themselves but never wait for readers.
+public class CopyOnWriteBPlusTree<K, V> {
+    public static class Snapshot<K, V> {
+        private Snapshot(CopyOnWriteBPlusTreeNode<K, V> rootNode, Comparator<? super K> comparator, int size) {
+            this.rootNode = rootNode;
+            this.comparator = comparator;
+            this.size = size;
+        }
+
+        public V get(K key) {
+            var leaf = findLeaf(key);
+            var index = leaf.search(key, comparator);
+            return index >= 0 ? leaf.valueAt(index) : null;
+        }
+
+        public boolean containsKey(K key) {
+            return findLeaf(key).search(key, comparator) >= 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        // [fromKey, toKey), a null bound means unbounded on that side
+        public Iterator<Pair<K, V>> range(K fromKey, K toKey) {
+            return new CopyOnWriteBPlusTreeRangeIterator<>(rootNode, comparator, fromKey, toKey);
+        }
+
+        public List<Pair<K, V>> traverse() {
+            var ret = new ArrayList<Pair<K, V>>(size);
+            range(null, null).forEachRemaining(ret::add);
+            return ret;
+        }
+
+        private CopyOnWriteBPlusTreeLeafNode<K, V> findLeaf(K key) {
+            var node = rootNode;
+            while (node instanceof CopyOnWriteBPlusTreeIntNode) {
+                var intNode = (CopyOnWriteBPlusTreeIntNode<K, V>)node;
+                node = intNode.children[intNode.route(key, comparator)];
+            }
+            return (CopyOnWriteBPlusTreeLeafNode<K, V>)node;
+        }
+
+        private final CopyOnWriteBPlusTreeNode<K, V> rootNode;
+        private final Comparator<? super K> comparator;
+        private final int size;
+    }
+
+    public CopyOnWriteBPlusTree(int degree) {
+        this(degree, Comparators.naturalOrder());
+    }
+
+    public CopyOnWriteBPlusTree(int degree, Comparator<? super K> comparator) {
+        if (degree < 3) {
+            throw new IllegalArgumentException("degree must be at least 3");
+        }
+        this.degree = degree;
+        this.comparator = comparator;
+        this.current = new Snapshot<>(new CopyOnWriteBPlusTreeLeafNode<>(degree), comparator, 0);
+    }
+
+    // O(1), the returned view never changes no matter what is written afterwards
+    public Snapshot<K, V> snapshot() {
+        return current;
+    }
+
+    public V get(K key) {
+        return current.get(key);
+    }
+
+    public boolean containsKey(K key) {
+        return current.containsKey(key);
+    }
+
+    public int size() {
+        return current.size();
+    }
+
+    public List<Pair<K, V>> traverse() {
+        return current.traverse();
+    }
+
+    public synchronized void insert(K key, V value) {
+        var snapshot = current;
+        sizeDelta = 0;
+        var newRoot = insert(snapshot.rootNode, key, value);
+        if (splitSibling != null) {
+            var rootCopy = new CopyOnWriteBPlusTreeIntNode<K, V>(degree);
+            rootCopy.children[0] = newRoot;
+            rootCopy.insertChild(0, splitKey, splitSibling);
+            newRoot = rootCopy;
+            splitSibling = null;
+        }
+        current = new Snapshot<>(newRoot, comparator, snapshot.size + sizeDelta);
+    }
+
+    public synchronized boolean delete(K key) {
+        var snapshot = current;
+        var newRoot = delete(snapshot.rootNode, key);
+        if (newRoot == null) {
+            return false;
+        }
+        if (newRoot instanceof CopyOnWriteBPlusTreeIntNode && newRoot.size == 0) {
+            newRoot = ((CopyOnWriteBPlusTreeIntNode<K, V>)newRoot).children[0];
+        }
+        current = new Snapshot<>(newRoot, comparator, snapshot.size - 1);
+        return true;
+    }
+
+    private CopyOnWriteBPlusTreeNode<K, V> insert(CopyOnWriteBPlusTreeNode<K, V> node, K key, V value) {
+        if (node instanceof CopyOnWriteBPlusTreeLeafNode) {
+            var leaf = ((CopyOnWriteBPlusTreeLeafNode<K, V>)node).copy();
+            var index = leaf.search(key, comparator);
+            if (index >= 0) {
+                leaf.values[index] = value;
+                return leaf;
+            }
+            leaf.insertAt(-(index + 1), key, value);
+            sizeDelta = 1;
+            if (leaf.size >= degree) {
+                splitLeaf(leaf);
+            }
+            return leaf;
+        }
+
+        var intNode = ((CopyOnWriteBPlusTreeIntNode<K, V>)node).copy();
+        var childIndex = intNode.route(key, comparator);
+        intNode.children[childIndex] = insert(intNode.children[childIndex], key, value);
+        if (splitSibling != null) {
+            intNode.insertChild(childIndex, splitKey, splitSibling);
+            splitSibling = null;
+            if (intNode.size >= degree) {
+                splitIntNode(intNode);
+            }
+        }
+        return intNode;
+    }
+
+    private void splitLeaf(CopyOnWriteBPlusTreeLeafNode<K, V> leaf) {
+        var right = new CopyOnWriteBPlusTreeLeafNode<K, V>(degree);
+        ArrayBPlusTreeNode.splitLeaf(leaf, right);
+        splitKey = right.keys[0];
+        splitSibling = right;
+    }
+
+    private void splitIntNode(CopyOnWriteBPlusTreeIntNode<K, V> intNode) {
+        var right = new CopyOnWriteBPlusTreeIntNode<K, V>(degree);
+        splitKey = intNode.keys[intNode.size / 2];
+        ArrayBPlusTreeNode.splitIntNode(intNode, right);
+        splitSibling = right;
+    }
+
+    // returns the copied node, or null if the key was not found and nothing was copied
+    private CopyOnWriteBPlusTreeNode<K, V> delete(CopyOnWriteBPlusTreeNode<K, V> node, K key) {
+        if (node instanceof CopyOnWriteBPlusTreeLeafNode) {
+            var leaf = (CopyOnWriteBPlusTreeLeafNode<K, V>)node;
+            var index = leaf.search(key, comparator);
+            if (index < 0) {
+                return null;
+            }
+            var leafCopy = leaf.copy();
+            leafCopy.removeEntry(index);
+            return leafCopy;
+        }
+
+        var intNode = (CopyOnWriteBPlusTreeIntNode<K, V>)node;
+        var childIndex = intNode.route(key, comparator);
+        var newChild = delete(intNode.children[childIndex], key);
+        if (newChild == null) {
+            return null;
+        }
+        var intNodeCopy = intNode.copy();
+        intNodeCopy.children[childIndex] = newChild;
+        if (newChild.size < ArrayBPlusTreeNode.minimumSize(newChild, degree)) {
+            fixUnderflow(intNodeCopy, childIndex);
+        }
+        return intNodeCopy;
+    }
+
+    // parent and the underflowing child are already private copies, the sibling is copied before it is touched
+    private void fixUnderflow(CopyOnWriteBPlusTreeIntNode<K, V> parent, int childIndex) {
+        var siblingIndex = childIndex > 0 ? childIndex - 1 : childIndex + 1;
+        var sibling = parent.children[siblingIndex];
+        parent.children[siblingIndex] = sibling instanceof CopyOnWriteBPlusTreeLeafNode
+                ? ((CopyOnWriteBPlusTreeLeafNode<K, V>)sibling).copy()
+                : ((CopyOnWriteBPlusTreeIntNode<K, V>)sibling).copy();
+        ArrayBPlusTreeNode.fixUnderflow(parent, childIndex, degree);
+    }
+
+    private final int degree;
+    private final Comparator<? super K> comparator;
+    private volatile Snapshot<K, V> current;
+
+    private Object splitKey;
+    private CopyOnWriteBPlusTreeNode<K, V> splitSibling;
+    private int sizeDelta;
+}
@@ -0,0 +1,281 @@
+package tech.icey.ds;
+
+import tech.icey.basic.Codec;
+import tech.icey.basic.Comparators;
+import tech.icey.basic.Pair;
+import tech.icey.storage.StorageException;
+import tech.icey.storage.WriteAheadLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/*
+ * A BPlusTree whose mutations are durable once insert or delete returns. The directory holds
+ *
+ *   checkpoint  the full contents as of the last checkpoint
+ *   wal         every mutation since then, see WriteAheadLog
+ *
+ * Opening loads the checkpoint and replays the log on top of it. Log records are
+ *
+ *   0  byte  INSERT or DELETE
+ *   1  int   key length
+ *   5        key
+ *            value, INSERT only, up to the end of the record
+ *
+ * and the checkpoint file is
+ *
+ *   0  int   magic
+ *   4  int   format version
+ *   8  int   entry count
+ *  12        entries, [int key length][key][int value length][value]
+ *            int CRC32 of everything before it
+ *
+ * Records are applied under the tree lock but synced outside of it, so concurrent writers share one force. That
+ * means a mutation is visible to readers before it is durable: a concurrent get may see a write that a crash then
+ * loses. If a sync fails, the mutations it covered are in the tree but maybe not on disk, and there is no telling
+ * which, so from then on every operation throws the StorageException it failed with; reopening the directory
+ * recovers whatever did reach the log. Once the log grows past the checkpoint threshold the next writer writes a
+ * new checkpoint and truncates the log. Replaying a record twice has no effect, so a crash between the two steps is
+ * harmless.
+ */
+public class DurableBPlusTree<K, V> implements Closeable {
+    public DurableBPlusTree(Path directory, int degree, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        this(directory, degree, keyCodec, valueCodec, DEFAULT_CHECKPOINT_THRESHOLD);
+    }
+
+    public DurableBPlusTree(Path directory, int degree, Codec<K> keyCodec, Codec<V> valueCodec,
+                            long checkpointThreshold) throws IOException {
+        this(directory, degree, Comparators.naturalOrder(), keyCodec, valueCodec, checkpointThreshold);
+    }
+
+    // the comparator has to be the same every time the directory is opened, the checkpoint is stored in its order
+    public DurableBPlusTree(Path directory, int degree, Comparator<? super K> comparator, Codec<K> keyCodec,
+                            Codec<V> valueCodec, long checkpointThreshold) throws IOException {
+        this.directory = directory;
+        this.degree = degree;
+        this.comparator = comparator;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.checkpointThreshold = checkpointThreshold;
+
+        Files.createDirectories(directory);
+        this.tree = loadCheckpoint();
+        this.log = new WriteAheadLog(directory.resolve(LOG_FILE), this::applyRecord);
+    }
+
+    public void insert(K key, V value) {
+        var encodedKey = keyCodec.encode(key);
+        var encodedValue = valueCodec.encode(value);
+        var record = ByteBuffer.allocate(RECORD_HEADER_SIZE + encodedKey.length + encodedValue.length);
+        record.put(INSERT).putInt(encodedKey.length).put(encodedKey).put(encodedValue);
+
+        long lsn;
+        synchronized (tree) {
+            checkUsable();
+            lsn = log.append(record.array());
+            tree.insert(key, value);
+        }
+        sync(lsn);
+        maybeCheckpoint();
+    }
+
+    public boolean delete(K key) {
+        var encodedKey = keyCodec.encode(key);
+        var record = ByteBuffer.allocate(RECORD_HEADER_SIZE + encodedKey.length);
+        record.put(DELETE).putInt(encodedKey.length).put(encodedKey);
+
+        long lsn;
+        synchronized (tree) {
+            checkUsable();
+            if (!tree.containsKey(key)) {
+                return false;
+            }
+            lsn = log.append(record.array());
+            tree.delete(key);
+        }
+        sync(lsn);
+        maybeCheckpoint();
+        return true;
+    }
+
+    public V get(K key) {
+        synchronized (tree) {
+            checkUsable();
+            return tree.get(key);
+        }
+    }
+
+    public boolean containsKey(K key) {
+        synchronized (tree) {
+            checkUsable();
+            return tree.containsKey(key);
+        }
+    }
+
+    public List<Pair<K, V>> traverse() {
+        synchronized (tree) {
+            checkUsable();
+            return tree.traverse();
+        }
+    }
+
+    public long syncCount() {
+        return log.syncCount();
+    }
+
+    public void checkpoint() {
+        synchronized (tree) {
+            checkUsable();
+            sync(log.lastLsn());
+            try {
+                writeCheckpoint();
+            } catch (IOException e) {
+                throw new StorageException("failed to write checkpoint in " + directory, e);
+            }
+            log.truncate();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private void maybeCheckpoint() {
+        if (log.size() >= checkpointThreshold) {
+            synchronized (tree) {
+                if (log.size() >= checkpointThreshold) {
+                    checkpoint();
+                }
+            }
+        }
+    }
+
+    private void sync(long lsn) {
+        try {
+            log.sync(lsn);
+        } catch (StorageException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    private void checkUsable() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void applyRecord(ByteBuffer record) {
+        var type = record.get(0);
+        var keyLength = record.getInt(1);
+        var key = keyCodec.decode(record, RECORD_HEADER_SIZE, keyLength);
+        if (type == INSERT) {
+            var valueOffset = RECORD_HEADER_SIZE + keyLength;
+            tree.insert(key, valueCodec.decode(record, valueOffset, record.limit() - valueOffset));
+        } else {
+            tree.delete(key);
+        }
+    }
+
+    private BPlusTree<K, V> loadCheckpoint() throws IOException {
+        var path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return new BPlusTree<>(degree, comparator);
+        }
+
+        var buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        var crc = new CRC32();
+        crc.update(buffer.array(), 0, Math.max(0, buffer.limit() - 4));
+        if (buffer.limit() < CHECKPOINT_HEADER_SIZE + 4
+            || buffer.getInt(0) != CHECKPOINT_MAGIC
+            || buffer.getInt(buffer.limit() - 4) != (int)crc.getValue()) {
+            throw new IOException(path + " is not a valid checkpoint");
+        }
+        if (buffer.getInt(4) != CHECKPOINT_FORMAT_VERSION) {
+            throw new IOException(path + " has format version " + buffer.getInt(4)
+                                  + ", expected " + CHECKPOINT_FORMAT_VERSION);
+        }
+
+        var builder = new BPlusTreeBuilder<K, V>(degree, comparator, CHECKPOINT_FILL_FACTOR);
+        var count = buffer.getInt(8);
+        var position = CHECKPOINT_HEADER_SIZE;
+        for (var i = 0; i < count; i++) {
+            var keyLength = buffer.getInt(position);
+            var key = keyCodec.decode(buffer, position + 4, keyLength);
+            position += 4 + keyLength;
+            var valueLength = buffer.getInt(position);
+            var value = valueCodec.decode(buffer, position + 4, valueLength);
+            position += 4 + valueLength;
+            builder.add(key, value);
+        }
+        return builder.build();
+    }
+
+    private void writeCheckpoint() throws IOException {
+        var entries = tree.traverse();
+        var encoded = new byte[entries.size() * 2][];
+        var totalSize = CHECKPOINT_HEADER_SIZE + 4;
+        for (var i = 0; i < entries.size(); i++) {
+            encoded[2 * i] = keyCodec.encode(entries.get(i).getFirst());
+            encoded[2 * i + 1] = valueCodec.encode(entries.get(i).getSecond());
+            totalSize += 8 + encoded[2 * i].length + encoded[2 * i + 1].length;
+        }
+
+        var buffer = ByteBuffer.allocate(totalSize);
+        buffer.putInt(CHECKPOINT_MAGIC).putInt(CHECKPOINT_FORMAT_VERSION).putInt(entries.size());
+        for (var bytes : encoded) {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+        var crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int)crc.getValue());
+        buffer.flip();
+
+        var temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                            StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+        // the rename itself has to reach the disk before the log it replaces is truncated
+        try (var directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        }
+    }
+
+    public static final long DEFAULT_CHECKPOINT_THRESHOLD = 64L * 1024 * 1024;
+
+    private static final String LOG_FILE = "wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final byte INSERT = 1;
+    private static final byte DELETE = 2;
+    private static final int RECORD_HEADER_SIZE = 5;
+    private static final int CHECKPOINT_MAGIC = 0x5343434b;
+    private static final int CHECKPOINT_FORMAT_VERSION = 1;
+    private static final int CHECKPOINT_HEADER_SIZE = 12;
+    private static final double CHECKPOINT_FILL_FACTOR = 0.7;
+
+    private final Path directory;
+    private final int degree;
+    private final Comparator<? super K> comparator;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final long checkpointThreshold;
+    private final BPlusTree<K, V> tree;
+    private final WriteAheadLog log;
+    private volatile StorageException failure;
+}
@@ -0,0 +1,244 @@
+package tech.icey.ds;
+
+import tech.icey.basic.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+abstract class IntBPlusTreeNode<V> extends ArrayBPlusTreeNode {
+    IntBPlusTreeNode(int keyCapacity) {
+        this.keys = new int[keyCapacity];
+    }
+
+    int search(int key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    @Override
+    Object keyArray() {
+        return keys;
+    }
+
+    int[] keys;
+}
+
+class IntBPlusTreeIntNode<V> extends IntBPlusTreeNode<V> {
+    @SuppressWarnings("unchecked")
+    IntBPlusTreeIntNode(int degree) {
+        super(degree);
+        this.children = (IntBPlusTreeNode<V>[])new IntBPlusTreeNode<?>[degree + 1];
+    }
+
+    @Override
+    Object[] slots() {
+        return children;
+    }
+
+    @Override
+    boolean isLeaf() {
+        return false;
+    }
+
+    int route(int key) {
+        var low = 0;
+        var high = size;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (keys[mid] > key) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    void insertChild(int index, int separator, IntBPlusTreeNode<V> rightChild) {
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(children, index + 1, children, index + 2, size - index);
+        keys[index] = separator;
+        children[index + 1] = rightChild;
+        size++;
+    }
+
+    IntBPlusTreeNode<V>[] children;
+}
+
+class IntBPlusTreeLeafNode<V> extends IntBPlusTreeNode<V> {
+    IntBPlusTreeLeafNode(int degree) {
+        super(degree);
+        this.values = new Object[degree];
+    }
+
+    @Override
+    Object[] slots() {
+        return values;
+    }
+
+    @Override
+    boolean isLeaf() {
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void absorbed(ArrayBPlusTreeNode right) {
+        next = ((IntBPlusTreeLeafNode<V>)right).next;
+    }
+
+    void insertAt(int index, int key, V value) {
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        keys[index] = key;
+        values[index] = value;
+        size++;
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int index) {
+        return (V)values[index];
+    }
+
+    Object[] values;
+    IntBPlusTreeLeafNode<V> next;
+}
+
+public class IntBPlusTree<V> {
+    public IntBPlusTree(int degree) {
+        if (degree < 3) {
+            throw new IllegalArgumentException("degree must be at least 3");
+        }
+        this.degree = degree;
+        this.rootNode = new IntBPlusTreeLeafNode<>(degree);
+    }
+
+    public void insert(int key, V value) {
+        var newSibling = insert(rootNode, key, value);
+        if (newSibling != null) {
+            var newRoot = new IntBPlusTreeIntNode<V>(degree);
+            newRoot.keys[0] = splitKey;
+            newRoot.children[0] = rootNode;
+            newRoot.children[1] = newSibling;
+            newRoot.size = 1;
+            rootNode = newRoot;
+        }
+    }
+
+    public boolean delete(int key) {
+        var deleted = delete(rootNode, key);
+        if (rootNode instanceof IntBPlusTreeIntNode && rootNode.size == 0) {
+            rootNode = ((IntBPlusTreeIntNode<V>)rootNode).children[0];
+        }
+        return deleted;
+    }
+
+    public V get(int key) {
+        var leaf = findLeaf(key);
+        var index = leaf.search(key);
+        return index >= 0 ? leaf.valueAt(index) : null;
+    }
+
+    public boolean containsKey(int key) {
+        return findLeaf(key).search(key) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public List<Pair<Integer, V>> traverse() {
+        var ret = new ArrayList<Pair<Integer, V>>(size);
+        for (var leaf = firstLeaf(); leaf != null; leaf = leaf.next) {
+            for (var i = 0; i < leaf.size; i++) {
+                ret.add(new Pair<>(leaf.keys[i], leaf.valueAt(i)));
+            }
+        }
+        return ret;
+    }
+
+    private IntBPlusTreeLeafNode<V> findLeaf(int key) {
+        var node = rootNode;
+        while (node instanceof IntBPlusTreeIntNode) {
+            var intNode = (IntBPlusTreeIntNode<V>)node;
+            node = intNode.children[intNode.route(key)];
+        }
+        return (IntBPlusTreeLeafNode<V>)node;
+    }
+
+    private IntBPlusTreeLeafNode<V> firstLeaf() {
+        var node = rootNode;
+        while (node instanceof IntBPlusTreeIntNode) {
+            node = ((IntBPlusTreeIntNode<V>)node).children[0];
+        }
+        return (IntBPlusTreeLeafNode<V>)node;
+    }
+
+    private IntBPlusTreeNode<V> insert(IntBPlusTreeNode<V> node, int key, V value) {
+        if (node instanceof IntBPlusTreeLeafNode) {
+            var leaf = (IntBPlusTreeLeafNode<V>)node;
+            var index = leaf.search(key);
+            if (index >= 0) {
+                leaf.values[index] = value;
+                return null;
+            }
+            leaf.insertAt(-(index + 1), key, value);
+            size++;
+            return leaf.size >= degree ? splitLeaf(leaf) : null;
+        }
+
+        var intNode = (IntBPlusTreeIntNode<V>)node;
+        var childIndex = intNode.route(key);
+        var newChild = insert(intNode.children[childIndex], key, value);
+        if (newChild == null) {
+            return null;
+        }
+        intNode.insertChild(childIndex, splitKey, newChild);
+        return intNode.size >= degree ? splitIntNode(intNode) : null;
+    }
+
+    private IntBPlusTreeNode<V> splitLeaf(IntBPlusTreeLeafNode<V> leaf) {
+        var right = new IntBPlusTreeLeafNode<V>(degree);
+        ArrayBPlusTreeNode.splitLeaf(leaf, right);
+        right.next = leaf.next;
+        leaf.next = right;
+        splitKey = right.keys[0];
+        return right;
+    }
+
+    private IntBPlusTreeNode<V> splitIntNode(IntBPlusTreeIntNode<V> intNode) {
+        var right = new IntBPlusTreeIntNode<V>(degree);
+        splitKey = intNode.keys[intNode.size / 2];
+        ArrayBPlusTreeNode.splitIntNode(intNode, right);
+        return right;
+    }
+
+    private boolean delete(IntBPlusTreeNode<V> node, int key) {
+        if (node instanceof IntBPlusTreeLeafNode) {
+            var leaf = (IntBPlusTreeLeafNode<V>)node;
+            var index = leaf.search(key);
+            if (index < 0) {
+                return false;
+            }
+            leaf.removeEntry(index);
+            size--;
+            return true;
+        }
+
+        var intNode = (IntBPlusTreeIntNode<V>)node;
+        var childIndex = intNode.route(key);
+        var child = intNode.children[childIndex];
+        if (!delete(child, key)) {
+            return false;
+        }
+        if (child.size < ArrayBPlusTreeNode.minimumSize(child, degree)) {
+            ArrayBPlusTreeNode.fixUnderflow(intNode, childIndex, degree);
+        }
+        return true;
+    }
+
+    private final int degree;
+    private IntBPlusTreeNode<V> rootNode;
+    private int size;
+    private int splitKey;
+}
@@ -0,0 +1,245 @@
+// Generated from IntBPlusTree.java by tools/generate-long-bplustree.sh, do not edit.
+package tech.icey.ds;
+
+import tech.icey.basic.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+abstract class LongBPlusTreeNode<V> extends ArrayBPlusTreeNode {
+    LongBPlusTreeNode(int keyCapacity) {
+        this.keys = new long[keyCapacity];
+    }
+
+    int search(long key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    @Override
+    Object keyArray() {
+        return keys;
+    }
+
+    long[] keys;
+}
+
+class LongBPlusTreeIntNode<V> extends LongBPlusTreeNode<V> {
+    @SuppressWarnings("unchecked")
+    LongBPlusTreeIntNode(int degree) {
+        super(degree);
+        this.children = (LongBPlusTreeNode<V>[])new LongBPlusTreeNode<?>[degree + 1];
+    }
+
+    @Override
+    Object[] slots() {
+        return children;
+    }
+
+    @Override
+    boolean isLeaf() {
+        return false;
+    }
+
+    int route(long key) {
+        var low = 0;
+        var high = size;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (keys[mid] > key) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    void insertChild(int index, long separator, LongBPlusTreeNode<V> rightChild) {
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(children, index + 1, children, index + 2, size - index);
+        keys[index] = separator;
+        children[index + 1] = rightChild;
+        size++;
+    }
+
+    LongBPlusTreeNode<V>[] children;
+}
+
+class LongBPlusTreeLeafNode<V> extends LongBPlusTreeNode<V> {
+    LongBPlusTreeLeafNode(int degree) {
+        super(degree);
+        this.values = new Object[degree];
+    }
+
+    @Override
+    Object[] slots() {
+        return values;
+    }
+
+    @Override
+    boolean isLeaf() {
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void absorbed(ArrayBPlusTreeNode right) {
+        next = ((LongBPlusTreeLeafNode<V>)right).next;
+    }
+
+    void insertAt(int index, long key, V value) {
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        keys[index] = key;
+        values[index] = value;
+        size++;
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int index) {
+        return (V)values[index];
+    }
+
+    Object[] values;
+    LongBPlusTreeLeafNode<V> next;
+}
+
+public class LongBPlusTree<V> {
+    public LongBPlusTree(int degree) {
+        if (degree < 3) {
+            throw new IllegalArgumentException("degree must be at least 3");
+        }
+        this.degree = degree;
+        this.rootNode = new LongBPlusTreeLeafNode<>(degree);
+    }
+
+    public void insert(long key, V value) {
+        var newSibling = insert(rootNode, key, value);
+        if (newSibling != null) {
+            var newRoot = new LongBPlusTreeIntNode<V>(degree);
+            newRoot.keys[0] = splitKey;
+            newRoot.children[0] = rootNode;
+            newRoot.children[1] = newSibling;
+            newRoot.size = 1;
+            rootNode = newRoot;
+        }
+    }
+
+    public boolean delete(long key) {
+        var deleted = delete(rootNode, key);
+        if (rootNode instanceof LongBPlusTreeIntNode && rootNode.size == 0) {
+            rootNode = ((LongBPlusTreeIntNode<V>)rootNode).children[0];
+        }
+        return deleted;
+    }
+
+    public V get(long key) {
+        var leaf = findLeaf(key);
+        var index = leaf.search(key);
+        return index >= 0 ? leaf.valueAt(index) : null;
+    }
+
+    public boolean containsKey(long key) {
+        return findLeaf(key).search(key) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public List<Pair<Long, V>> traverse() {
+        var ret = new ArrayList<Pair<Long, V>>(size);
+        for (var leaf = firstLeaf(); leaf != null; leaf = leaf.next) {
+            for (var i = 0; i < leaf.size; i++) {
+                ret.add(new Pair<>(leaf.keys[i], leaf.valueAt(i)));
+            }
+        }
+        return ret;
+    }
+
+    private LongBPlusTreeLeafNode<V> findLeaf(long key) {
+        var node = rootNode;
+        while (node instanceof LongBPlusTreeIntNode) {
+            var intNode = (LongBPlusTreeIntNode<V>)node;
+            node = intNode.children[intNode.route(key)];
+        }
+        return (LongBPlusTreeLeafNode<V>)node;
+    }
+
+    private LongBPlusTreeLeafNode<V> firstLeaf() {
+        var node = rootNode;
+        while (node instanceof LongBPlusTreeIntNode) {
+            node = ((LongBPlusTreeIntNode<V>)node).children[0];
+        }
+        return (LongBPlusTreeLeafNode<V>)node;
+    }
+
+    private LongBPlusTreeNode<V> insert(LongBPlusTreeNode<V> node, long key, V value) {
+        if (node instanceof LongBPlusTreeLeafNode) {
+            var leaf = (LongBPlusTreeLeafNode<V>)node;
+            var index = leaf.search(key);
+            if (index >= 0) {
+                leaf.values[index] = value;
+                return null;
+            }
+            leaf.insertAt(-(index + 1), key, value);
+            size++;
+            return leaf.size >= degree ? splitLeaf(leaf) : null;
+        }
+
+        var intNode = (LongBPlusTreeIntNode<V>)node;
+        var childIndex = intNode.route(key);
+        var newChild = insert(intNode.children[childIndex], key, value);
+        if (newChild == null) {
+            return null;
+        }
+        intNode.insertChild(childIndex, splitKey, newChild);
+        return intNode.size >= degree ? splitIntNode(intNode) : null;
+    }
+
+    private LongBPlusTreeNode<V> splitLeaf(LongBPlusTreeLeafNode<V> leaf) {
+        var right = new LongBPlusTreeLeafNode<V>(degree);
+        ArrayBPlusTreeNode.splitLeaf(leaf, right);
+        right.next = leaf.next;
+        leaf.next = right;
+        splitKey = right.keys[0];
+        return right;
+    }
+
+    private LongBPlusTreeNode<V> splitIntNode(LongBPlusTreeIntNode<V> intNode) {
+        var right = new LongBPlusTreeIntNode<V>(degree);
+        splitKey = intNode.keys[intNode.size / 2];
+        ArrayBPlusTreeNode.splitIntNode(intNode, right);
+        return right;
+    }
+
+    private boolean delete(LongBPlusTreeNode<V> node, long key) {
+        if (node instanceof LongBPlusTreeLeafNode) {
+            var leaf = (LongBPlusTreeLeafNode<V>)node;
+            var index = leaf.search(key);
+            if (index < 0) {
+                return false;
+            }
+            leaf.removeEntry(index);
+            size--;
+            return true;
+        }
+
+        var intNode = (LongBPlusTreeIntNode<V>)node;
+        var childIndex = intNode.route(key);
+        var child = intNode.children[childIndex];
+        if (!delete(child, key)) {
+            return false;
+        }
+        if (child.size < ArrayBPlusTreeNode.minimumSize(child, degree)) {
+            ArrayBPlusTreeNode.fixUnderflow(intNode, childIndex, degree);
+        }
+        return true;
+    }
+
+    private final int degree;
+    private LongBPlusTreeNode<V> rootNode;
+    private int size;
+    private long splitKey;
+}
@@ -0,0 +1,29 @@
+package tech.icey.ds;
+
+import tech.icey.basic.Codec;
+import tech.icey.storage.MappedPageStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class MappedBPlusTree<K, V> extends PagedBPlusTree<K, V> {
+    public MappedBPlusTree(Path path, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        this(path, keyCodec, valueCodec, DEFAULT_PAGE_SIZE);
+    }
+
+    public MappedBPlusTree(Path path, Codec<K> keyCodec, Codec<V> valueCodec, int pageSize) throws IOException {
+        super(new MappedPageStore(path, pageSize, Math.max(1, CHUNK_SIZE / pageSize)), keyCodec, valueCodec);
+    }
+
+    public void flush() {
+        ((MappedPageStore)store).flush();
+    }
+
+    public int pageCount() {
+        return ((MappedPageStore)store).pageCount();
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+}
@@ -0,0 +1,18 @@
+package tech.icey.ds;
+
+import tech.icey.basic.Codec;
+import tech.icey.storage.OffHeapPageStore;
+
+public class OffHeapBPlusTree<K, V> extends PagedBPlusTree<K, V> {
+    public OffHeapBPlusTree(Codec<K> keyCodec, Codec<V> valueCodec) {
+        this(keyCodec, valueCodec, DEFAULT_PAGE_SIZE);
+    }
+
+    public OffHeapBPlusTree(Codec<K> keyCodec, Codec<V> valueCodec, int pageSize) {
+        super(new OffHeapPageStore(pageSize, Math.max(1, CHUNK_SIZE / pageSize)), keyCodec, valueCodec);
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+}
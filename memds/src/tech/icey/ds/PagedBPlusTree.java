@@ -0,0 +1,853 @@
+package tech.icey.ds;
+
+import tech.icey.basic.Codec;
+import tech.icey.basic.Pair;
+import tech.icey.storage.PageStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/*
+ * Page layout, all offsets relative to the start of the page:
+ *
+ *   0  byte   page type (LEAF or INTERNAL)
+ *   2  u16    entry count
+ *   4  int    start of the entry area, entries are packed towards the end of the page
+ *   8  int    bytes taken by removed entries that have not been compacted away yet
+ *  12  int    left sibling (leaves only)
+ *  16  int    right sibling for leaves, leftmost child for internal pages
+ *  20  u16    length of the prefix shared by every key in the page, always 0 for internal pages
+ *  24  u16[]  slot array, offsets of the entries in key order
+ *
+ * Leaf entry:     [u16 suffix length][key suffix][u16 value length][value]
+ * Internal entry: [u16 key length][key][int child], the child holds keys >= key
+ *
+ * A leaf keeps the shared key prefix in the last bytes of the page, below which the entries are packed, and each
+ * entry stores only what follows it. The prefix is recomputed when a leaf is split or merged and cut back when a key
+ * that does not share it arrives. Separators pushed up from leaf splits are cut down to the shortest prefix of the
+ * right leaf's first key that still sorts after the left leaf's last key.
+ */
+public abstract class PagedBPlusTree<K, V> implements Closeable {
+    protected PagedBPlusTree(PageStore store, Codec<K> keyCodec, Codec<V> valueCodec) {
+        if (store.pageSize() < MIN_PAGE_SIZE || store.pageSize() > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("page size must be in [" + MIN_PAGE_SIZE + ", "
+                                               + MAX_PAGE_SIZE + "], got " + store.pageSize());
+        }
+        this.store = store;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.pageSize = store.pageSize();
+        this.maxEntrySize = (pageSize - HEADER_SIZE) / 4 - SLOT_SIZE;
+        this.scratch = ByteBuffer.allocate(pageSize);
+        this.leafImage = ByteBuffer.allocate(pageSize);
+
+        if (store.rootPageId() == PageStore.NO_PAGE) {
+            store.beginWrite();
+            var root = store.allocatePage();
+            initPage(root, LEAF);
+            store.setRootPageId(root);
+        }
+    }
+
+    public void insert(K key, V value) {
+        var keyBytes = keyCodec.encode(key);
+        var valueBytes = valueCodec.encode(value);
+        if (LEAF_ENTRY_OVERHEAD + keyBytes.length + valueBytes.length > maxEntrySize) {
+            throw new IllegalArgumentException("entry of " + (keyBytes.length + valueBytes.length)
+                                               + " bytes does not fit in a page of " + pageSize + " bytes");
+        }
+
+        var entrySize = LEAF_ENTRY_OVERHEAD + keyBytes.length + valueBytes.length;
+        store.beginWrite();
+        while (true) {
+            var depth = descend(keyBytes);
+            var leaf = pathPages[depth];
+            var index = search(leaf, keyBytes);
+            if (index >= 0) {
+                removeEntry(leaf, index);
+            } else {
+                index = -(index + 1);
+            }
+
+            // a key outside the prefix makes every other entry in the page carry the bytes the prefix gives up
+            var prefixLength = prefixLength(leaf);
+            var sharedLength = sharedPrefixLength(leaf, keyBytes);
+            var growth = (count(leaf) - 1) * (prefixLength - sharedLength);
+            if (available(leaf) >= entrySize - sharedLength + SLOT_SIZE + growth) {
+                if (sharedLength < prefixLength) {
+                    shrinkPrefix(leaf, sharedLength);
+                }
+                insertLeafEntry(leaf, index, keyBytes, valueBytes);
+                return;
+            }
+
+            var newLeaf = splitLeaf(leaf);
+            insertSeparator(depth - 1, separatorFor(leaf, newLeaf), newLeaf);
+        }
+    }
+
+    public boolean delete(K key) {
+        var keyBytes = keyCodec.encode(key);
+        var depth = descend(keyBytes);
+        var leaf = pathPages[depth];
+        var index = search(leaf, keyBytes);
+        if (index < 0) {
+            return false;
+        }
+        store.beginWrite();
+        removeEntry(leaf, index);
+
+        for (var level = depth; level > 0 && isUnderflow(pathPages[level]); level--) {
+            if (!mergeWithSibling(level)) {
+                break;
+            }
+        }
+
+        var root = store.rootPageId();
+        while (type(root) == INTERNAL && count(root) == 0) {
+            store.setRootPageId(leftmostChild(root));
+            store.freePage(root);
+            root = store.rootPageId();
+        }
+        return true;
+    }
+
+    public V get(K key) {
+        var keyBytes = keyCodec.encode(key);
+        var leaf = findLeaf(keyBytes);
+        var index = search(leaf, keyBytes);
+        return index >= 0 ? decodeValue(leaf, index) : null;
+    }
+
+    public boolean containsKey(K key) {
+        var keyBytes = keyCodec.encode(key);
+        return search(findLeaf(keyBytes), keyBytes) >= 0;
+    }
+
+    public Pair<K, V> floorEntry(K key) {
+        var keyBytes = keyCodec.encode(key);
+        var leaf = findLeaf(keyBytes);
+        var index = search(leaf, keyBytes);
+        if (index >= 0) {
+            return decodeEntry(leaf, index);
+        }
+        return lastEntryBefore(leaf, -(index + 1));
+    }
+
+    public Pair<K, V> ceilingEntry(K key) {
+        var keyBytes = keyCodec.encode(key);
+        var leaf = findLeaf(keyBytes);
+        var index = search(leaf, keyBytes);
+        if (index >= 0) {
+            return decodeEntry(leaf, index);
+        }
+        return firstEntryFrom(leaf, -(index + 1));
+    }
+
+    public Pair<K, V> firstEntry() {
+        return firstEntryFrom(edgeLeaf(false), 0);
+    }
+
+    public Pair<K, V> lastEntry() {
+        var leaf = edgeLeaf(true);
+        return lastEntryBefore(leaf, count(leaf));
+    }
+
+    // [fromKey, toKey), a null bound means unbounded on that side
+    public Iterator<Pair<K, V>> range(K fromKey, K toKey) {
+        return new PageRangeIterator(fromKey == null ? null : keyCodec.encode(fromKey),
+                                     toKey == null ? null : keyCodec.encode(toKey), false);
+    }
+
+    public Iterator<Pair<K, V>> descendingRange(K fromKey, K toKey) {
+        return new PageRangeIterator(fromKey == null ? null : keyCodec.encode(fromKey),
+                                     toKey == null ? null : keyCodec.encode(toKey), true);
+    }
+
+    public List<Pair<K, V>> traverse() {
+        var ret = new ArrayList<Pair<K, V>>();
+        range(null, null).forEachRemaining(ret::add);
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+    private Pair<K, V> firstEntryFrom(int leaf, int index) {
+        while (leaf != PageStore.NO_PAGE && index >= count(leaf)) {
+            leaf = rightSibling(leaf);
+            index = 0;
+        }
+        return leaf == PageStore.NO_PAGE ? null : decodeEntry(leaf, index);
+    }
+
+    private Pair<K, V> lastEntryBefore(int leaf, int index) {
+        while (leaf != PageStore.NO_PAGE && index <= 0) {
+            leaf = leftSibling(leaf);
+            index = leaf == PageStore.NO_PAGE ? 0 : count(leaf);
+        }
+        return leaf == PageStore.NO_PAGE ? null : decodeEntry(leaf, index - 1);
+    }
+
+    private int descend(byte[] key) {
+        var depth = 0;
+        var page = store.rootPageId();
+        while (type(page) == INTERNAL) {
+            var childIndex = route(page, key);
+            pathPages[depth] = page;
+            pathChildIndexes[depth] = childIndex;
+            page = childAt(page, childIndex);
+            depth++;
+        }
+        pathPages[depth] = page;
+        return depth;
+    }
+
+    private int findLeaf(byte[] key) {
+        var page = store.rootPageId();
+        while (type(page) == INTERNAL) {
+            page = childAt(page, route(page, key));
+        }
+        return page;
+    }
+
+    private int edgeLeaf(boolean rightmost) {
+        var page = store.rootPageId();
+        while (type(page) == INTERNAL) {
+            page = childAt(page, rightmost ? count(page) : 0);
+        }
+        return page;
+    }
+
+    private void insertSeparator(int level, byte[] separator, int rightChild) {
+        while (level >= 0) {
+            var page = pathPages[level];
+            var index = pathChildIndexes[level];
+            if (available(page) >= INTERNAL_ENTRY_OVERHEAD + separator.length + SLOT_SIZE) {
+                insertInternalEntry(page, index, separator, rightChild);
+                return;
+            }
+
+            var newPage = store.allocatePage();
+            initPage(newPage, INTERNAL);
+            var middle = splitPoint(page);
+            var promoted = keyAt(page, middle);
+            setLeftmostChild(newPage, childOfEntry(page, middle));
+            moveEntries(page, middle + 1, newPage);
+            removeEntry(page, middle);
+
+            if (index <= middle) {
+                insertInternalEntry(page, index, separator, rightChild);
+            } else {
+                insertInternalEntry(newPage, index - middle - 1, separator, rightChild);
+            }
+            separator = promoted;
+            rightChild = newPage;
+            level--;
+        }
+
+        var newRoot = store.allocatePage();
+        initPage(newRoot, INTERNAL);
+        setLeftmostChild(newRoot, store.rootPageId());
+        insertInternalEntry(newRoot, 0, separator, rightChild);
+        store.setRootPageId(newRoot);
+    }
+
+    private int splitLeaf(int leaf) {
+        var newLeaf = store.allocatePage();
+        initPage(newLeaf, LEAF);
+        var count = count(leaf);
+        var middle = splitPoint(leaf);
+        leafImage.put(0, store.buffer(leaf), store.offset(leaf), pageSize);
+        resetLeaf(leaf, imageKeyPrefix(0, commonPrefixLength(leafImage, 0, middle - 1)));
+        appendLeafEntries(leaf, leafImage, 0, 0, middle);
+        resetLeaf(newLeaf, imageKeyPrefix(middle, commonPrefixLength(leafImage, middle, count - 1)));
+        appendLeafEntries(newLeaf, leafImage, 0, middle, count);
+
+        var oldRight = rightSibling(leaf);
+        setRightSibling(newLeaf, oldRight);
+        setLeftSibling(newLeaf, leaf);
+        setRightSibling(leaf, newLeaf);
+        if (oldRight != PageStore.NO_PAGE) {
+            setLeftSibling(oldRight, newLeaf);
+        }
+        return newLeaf;
+    }
+
+    // the shortest prefix of the right leaf's first key that sorts after the left leaf's last key
+    protected byte[] separatorFor(int leftLeaf, int rightLeaf) {
+        var lastLeft = keyAt(leftLeaf, count(leftLeaf) - 1);
+        var firstRight = keyAt(rightLeaf, 0);
+        var shared = 0;
+        while (shared < lastLeft.length && lastLeft[shared] == firstRight[shared]) {
+            shared++;
+        }
+        return Arrays.copyOf(firstRight, shared + 1);
+    }
+
+    private boolean isUnderflow(int page) {
+        return usedBytes(page) < (pageSize - HEADER_SIZE) / 4;
+    }
+
+    private boolean mergeWithSibling(int level) {
+        var parent = pathPages[level - 1];
+        var childIndex = pathChildIndexes[level - 1];
+        var page = pathPages[level];
+
+        if (childIndex > 0) {
+            var left = childAt(parent, childIndex - 1);
+            if (tryMerge(parent, childIndex - 1, left, page)) {
+                return true;
+            }
+        }
+        if (childIndex < count(parent)) {
+            var right = childAt(parent, childIndex + 1);
+            return tryMerge(parent, childIndex, page, right);
+        }
+        return false;
+    }
+
+    private boolean tryMerge(int parent, int separatorIndex, int left, int right) {
+        if (type(left) == LEAF) {
+            var leftCount = count(left);
+            var rightCount = count(right);
+            byte[] prefix = {};
+            if (leftCount + rightCount > 0) {
+                var first = leftCount > 0 ? keyAt(left, 0) : keyAt(right, 0);
+                var last = rightCount > 0 ? keyAt(right, rightCount - 1) : keyAt(left, leftCount - 1);
+                var shared = 0;
+                while (shared < first.length && shared < last.length && first[shared] == last[shared]) {
+                    shared++;
+                }
+                prefix = Arrays.copyOf(first, shared);
+            }
+            if (reencodedSize(left, prefix.length) + reencodedSize(right, prefix.length) + prefix.length
+                > pageSize - HEADER_SIZE) {
+                return false;
+            }
+            leafImage.put(0, store.buffer(left), store.offset(left), pageSize);
+            resetLeaf(left, prefix);
+            appendLeafEntries(left, leafImage, 0, 0, leftCount);
+            appendLeafEntries(left, store.buffer(right), store.offset(right), 0, rightCount);
+            var newRight = rightSibling(right);
+            setRightSibling(left, newRight);
+            if (newRight != PageStore.NO_PAGE) {
+                setLeftSibling(newRight, left);
+            }
+        } else {
+            var separator = keyAt(parent, separatorIndex);
+            if (available(left) < usedBytes(right) + INTERNAL_ENTRY_OVERHEAD + separator.length + SLOT_SIZE) {
+                return false;
+            }
+            insertInternalEntry(left, count(left), separator, leftmostChild(right));
+            moveEntries(right, 0, left);
+        }
+        removeEntry(parent, separatorIndex);
+        store.freePage(right);
+        return true;
+    }
+
+    private int splitPoint(int page) {
+        var buffer = store.buffer(page);
+        var base = store.offset(page);
+        var count = count(page);
+        var half = usedBytes(page) / 2;
+        var accumulated = 0;
+        var index = 0;
+        while (index < count - 1 && accumulated < half) {
+            accumulated += entrySize(buffer, entryOffset(buffer, base, index), type(page)) + SLOT_SIZE;
+            index++;
+        }
+        return Math.max(1, Math.min(index, count - 1));
+    }
+
+    private void initPage(int page, byte type) {
+        var buffer = store.buffer(page);
+        var base = store.offset(page);
+        buffer.put(base + TYPE, type);
+        buffer.putShort(base + COUNT, (short)0);
+        buffer.putInt(base + DATA_START, pageSize);
+        buffer.putInt(base + GARBAGE, 0);
+        buffer.putInt(base + LEFT_SIBLING, PageStore.NO_PAGE);
+        buffer.putInt(base + RIGHT_SIBLING, PageStore.NO_PAGE);
+        buffer.putShort(base + PREFIX_LENGTH, (short)0);
+    }
+
+    private int prefixLength(int page) {
+        return store.buffer(page).getShort(store.offset(page) + PREFIX_LENGTH) & 0xFFFF;
+    }
+
+    // how much of the leaf's prefix the key shares
+    private int sharedPrefixLength(int leaf, byte[] key) {
+        var buffer = store.buffer(leaf);
+        var prefix = store.offset(leaf) + pageSize - prefixLength(leaf);
+        var length = Math.min(prefixLength(leaf), key.length);
+        var shared = 0;
+        while (shared < length && buffer.get(prefix + shared) == key[shared]) {
+            shared++;
+        }
+        return shared;
+    }
+
+    // negative if every key in the leaf sorts before key because of the prefix alone, positive if every key sorts
+    // after it, 0 if key starts with the prefix
+    private int comparePrefix(int leaf, byte[] key) {
+        var buffer = store.buffer(leaf);
+        var prefixLength = prefixLength(leaf);
+        var prefix = store.offset(leaf) + pageSize - prefixLength;
+        var length = Math.min(prefixLength, key.length);
+        for (var i = 0; i < length; i++) {
+            var compareResult = (buffer.get(prefix + i) & 0xFF) - (key[i] & 0xFF);
+            if (compareResult != 0) {
+                return compareResult;
+            }
+        }
+        return prefixLength > key.length ? 1 : 0;
+    }
+
+    private int compareLeafKey(int leaf, int index, byte[] key) {
+        var prefixCompare = comparePrefix(leaf, key);
+        if (prefixCompare != 0) {
+            return prefixCompare;
+        }
+        var buffer = store.buffer(leaf);
+        return compareKey(buffer, entryOffset(buffer, store.offset(leaf), index), key, prefixLength(leaf));
+    }
+
+    // bytes the leaf would take if its entries were re-encoded around a prefix of the given length
+    private int reencodedSize(int leaf, int newPrefixLength) {
+        var prefixLength = prefixLength(leaf);
+        return usedBytes(leaf) - prefixLength + count(leaf) * (prefixLength - newPrefixLength);
+    }
+
+    private void shrinkPrefix(int leaf, int newPrefixLength) {
+        var count = count(leaf);
+        leafImage.put(0, store.buffer(leaf), store.offset(leaf), pageSize);
+        resetLeaf(leaf, imageKeyPrefix(0, newPrefixLength));
+        appendLeafEntries(leaf, leafImage, 0, 0, count);
+    }
+
+    // empties the leaf and gives it a new prefix, keeping its siblings
+    private void resetLeaf(int leaf, byte[] prefix) {
+        var buffer = store.buffer(leaf);
+        var base = store.offset(leaf);
+        buffer.putShort(base + COUNT, (short)0);
+        buffer.putInt(base + DATA_START, pageSize - prefix.length);
+        buffer.putInt(base + GARBAGE, 0);
+        buffer.putShort(base + PREFIX_LENGTH, (short)prefix.length);
+        buffer.put(base + pageSize - prefix.length, prefix);
+    }
+
+    // appends entries [from, to) of the leaf image at srcBase to leaf, they must all start with the leaf's prefix
+    private void appendLeafEntries(int leaf, ByteBuffer src, int srcBase, int from, int to) {
+        var buffer = store.buffer(leaf);
+        var srcPrefixLength = src.getShort(srcBase + PREFIX_LENGTH) & 0xFFFF;
+        var srcPrefix = srcBase + pageSize - srcPrefixLength;
+        var prefixLength = prefixLength(leaf);
+        for (var i = from; i < to; i++) {
+            var entry = entryOffset(src, srcBase, i);
+            var srcSuffixLength = keyLength(src, entry);
+            var valueLength = src.getShort(entry + 2 + srcSuffixLength) & 0xFFFF;
+            var suffixLength = srcPrefixLength + srcSuffixLength - prefixLength;
+            var target = reserveEntry(leaf, count(leaf), LEAF_ENTRY_OVERHEAD + suffixLength + valueLength);
+
+            // when the prefix got shorter the suffix starts with the tail of the old prefix, when it got longer
+            // the head of the old suffix is now covered by the prefix
+            var fromOldPrefix = Math.max(0, srcPrefixLength - prefixLength);
+            var skipped = Math.max(0, prefixLength - srcPrefixLength);
+            buffer.putShort(target, (short)suffixLength);
+            buffer.put(target + 2, src, srcPrefix + srcPrefixLength - fromOldPrefix, fromOldPrefix);
+            buffer.put(target + 2 + fromOldPrefix, src, entry + 2 + skipped, srcSuffixLength - skipped);
+            buffer.putShort(target + 2 + suffixLength, (short)valueLength);
+            buffer.put(target + 4 + suffixLength, src, entry + 4 + srcSuffixLength, valueLength);
+        }
+    }
+
+    // length of the prefix shared by keys first and last of the leaf image, and so by every key between them
+    private int commonPrefixLength(ByteBuffer image, int first, int last) {
+        var prefixLength = image.getShort(PREFIX_LENGTH) & 0xFFFF;
+        var firstEntry = entryOffset(image, 0, first);
+        var lastEntry = entryOffset(image, 0, last);
+        var length = Math.min(keyLength(image, firstEntry), keyLength(image, lastEntry));
+        var shared = 0;
+        while (shared < length && image.get(firstEntry + 2 + shared) == image.get(lastEntry + 2 + shared)) {
+            shared++;
+        }
+        return prefixLength + shared;
+    }
+
+    // the first length bytes of key index in leafImage
+    private byte[] imageKeyPrefix(int index, int length) {
+        var prefixLength = leafImage.getShort(PREFIX_LENGTH) & 0xFFFF;
+        var ret = new byte[length];
+        var fromPrefix = Math.min(prefixLength, length);
+        leafImage.get(pageSize - prefixLength, ret, 0, fromPrefix);
+        if (length > fromPrefix) {
+            leafImage.get(entryOffset(leafImage, 0, index) + 2, ret, fromPrefix, length - fromPrefix);
+        }
+        return ret;
+    }
+
+    private byte type(int page) {
+        return store.buffer(page).get(store.offset(page) + TYPE);
+    }
+
+    protected int count(int page) {
+        return store.buffer(page).getShort(store.offset(page) + COUNT) & 0xFFFF;
+    }
+
+    private int leftSibling(int page) {
+        return store.buffer(page).getInt(store.offset(page) + LEFT_SIBLING);
+    }
+
+    private void setLeftSibling(int page, int sibling) {
+        store.buffer(page).putInt(store.offset(page) + LEFT_SIBLING, sibling);
+    }
+
+    private int rightSibling(int page) {
+        return store.buffer(page).getInt(store.offset(page) + RIGHT_SIBLING);
+    }
+
+    private void setRightSibling(int page, int sibling) {
+        store.buffer(page).putInt(store.offset(page) + RIGHT_SIBLING, sibling);
+    }
+
+    private int leftmostChild(int page) {
+        return rightSibling(page);
+    }
+
+    private void setLeftmostChild(int page, int child) {
+        setRightSibling(page, child);
+    }
+
+    private int childAt(int page, int childIndex) {
+        return childIndex == 0 ? leftmostChild(page) : childOfEntry(page, childIndex - 1);
+    }
+
+    private int childOfEntry(int page, int index) {
+        var buffer = store.buffer(page);
+        var entry = entryOffset(buffer, store.offset(page), index);
+        return buffer.getInt(entry + 2 + keyLength(buffer, entry));
+    }
+
+    private int available(int page) {
+        var buffer = store.buffer(page);
+        var base = store.offset(page);
+        return buffer.getInt(base + DATA_START) - HEADER_SIZE - count(page) * SLOT_SIZE
+               + buffer.getInt(base + GARBAGE);
+    }
+
+    private int usedBytes(int page) {
+        return pageSize - HEADER_SIZE - available(page);
+    }
+
+    protected byte[] keyAt(int page, int index) {
+        var buffer = store.buffer(page);
+        var base = store.offset(page);
+        var entry = entryOffset(buffer, base, index);
+        var prefixLength = prefixLength(page);
+        var key = new byte[prefixLength + keyLength(buffer, entry)];
+        buffer.get(base + pageSize - prefixLength, key, 0, prefixLength);
+        buffer.get(entry + 2, key, prefixLength, key.length - prefixLength);
+        return key;
+    }
+
+    private Pair<K, V> decodeEntry(int leaf, int index) {
+        if (prefixLength(leaf) != 0) {
+            var key = keyAt(leaf, index);
+            return new Pair<>(keyCodec.decode(ByteBuffer.wrap(key), 0, key.length), decodeValue(leaf, index));
+        }
+        var buffer = store.buffer(leaf);
+        var entry = entryOffset(buffer, store.offset(leaf), index);
+        var keyLength = keyLength(buffer, entry);
+        return new Pair<>(keyCodec.decode(buffer, entry + 2, keyLength), decodeValue(leaf, index));
+    }
+
+    private V decodeValue(int leaf, int index) {
+        var buffer = store.buffer(leaf);
+        var entry = entryOffset(buffer, store.offset(leaf), index);
+        var valueEntry = entry + 2 + keyLength(buffer, entry);
+        return valueCodec.decode(buffer, valueEntry + 2, buffer.getShort(valueEntry) & 0xFFFF);
+    }
+
+    private int search(int leaf, byte[] key) {
+        var prefixCompare = comparePrefix(leaf, key);
+        if (prefixCompare != 0) {
+            return prefixCompare < 0 ? -(count(leaf) + 1) : -1;
+        }
+
+        var buffer = store.buffer(leaf);
+        var base = store.offset(leaf);
+        var prefixLength = prefixLength(leaf);
+        var low = 0;
+        var high = count(leaf) - 1;
+        while (low <= high) {
+            var mid = (low + high) >>> 1;
+            var compareResult = compareKey(buffer, entryOffset(buffer, base, mid), key, prefixLength);
+            if (compareResult < 0) {
+                low = mid + 1;
+            } else if (compareResult > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int route(int page, byte[] key) {
+        var buffer = store.buffer(page);
+        var base = store.offset(page);
+        var low = 0;
+        var high = count(page);
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (compareKey(buffer, entryOffset(buffer, base, mid), key, 0) > 0) /* keys[mid] > key */ {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    // key must start with the leaf's prefix, only the rest of it is stored
+    private void insertLeafEntry(int leaf, int index, byte[] key, byte[] value) {
+        var prefixLength = prefixLength(leaf);
+        var suffixLength = key.length - prefixLength;
+        var entry = reserveEntry(leaf, index, LEAF_ENTRY_OVERHEAD + suffixLength + value.length);
+        var buffer = store.buffer(leaf);
+        buffer.putShort(entry, (short)suffixLength);
+        buffer.put(entry + 2, key, prefixLength, suffixLength);
+        buffer.putShort(entry + 2 + suffixLength, (short)value.length);
+        buffer.put(entry + 4 + suffixLength, value);
+    }
+
+    private void insertInternalEntry(int page, int index, byte[] key, int child) {
+        var entry = reserveEntry(page, index, INTERNAL_ENTRY_OVERHEAD + key.length);
+        var buffer = store.buffer(page);
+        buffer.putShort(entry, (short)key.length);
+        buffer.put(entry + 2, key);
+        buffer.putInt(entry + 2 + key.length, child);
+    }
+
+    private int reserveEntry(int page, int index, int size) {
+        var buffer = store.buffer(page);
+        var base = store.offset(page);
+        var count = count(page);
+        var dataStart = buffer.getInt(base + DATA_START);
+        if (dataStart - HEADER_SIZE - count * SLOT_SIZE < size + SLOT_SIZE) {
+            compact(page);
+            dataStart = buffer.getInt(base + DATA_START);
+        }
+
+        dataStart -= size;
+        buffer.putInt(base + DATA_START, dataStart);
+        var slots = base + HEADER_SIZE;
+        buffer.put(slots + (index + 1) * SLOT_SIZE, buffer, slots + index * SLOT_SIZE, (count - index) * SLOT_SIZE);
+        buffer.putShort(slots + index * SLOT_SIZE, (short)dataStart);
+        buffer.putShort(base + COUNT, (short)(count + 1));
+        return base + dataStart;
+    }
+
+    private void removeEntry(int page, int index) {
+        var buffer = store.buffer(page);
+        var base = store.offset(page);
+        var count = count(page);
+        var size = entrySize(buffer, entryOffset(buffer, base, index), type(page));
+
+        var slots = base + HEADER_SIZE;
+        buffer.put(slots + index * SLOT_SIZE, buffer, slots + (index + 1) * SLOT_SIZE, (count - index - 1) * SLOT_SIZE);
+        buffer.putShort(base + COUNT, (short)(count - 1));
+        if (count == 1) {
+            buffer.putInt(base + DATA_START, pageSize);
+            buffer.putInt(base + GARBAGE, 0);
+            buffer.putShort(base + PREFIX_LENGTH, (short)0);
+        } else {
+            buffer.putInt(base + GARBAGE, buffer.getInt(base + GARBAGE) + size);
+        }
+    }
+
+    // moves entries [from, count) of src to the end of dst, internal pages only since leaves re-encode their keys
+    private void moveEntries(int src, int from, int dst) {
+        var srcBuffer = store.buffer(src);
+        var srcBase = store.offset(src);
+        var count = count(src);
+        var type = type(src);
+        for (var i = from; i < count; i++) {
+            var entry = entryOffset(srcBuffer, srcBase, i);
+            var size = entrySize(srcBuffer, entry, type);
+            var target = reserveEntry(dst, count(dst), size);
+            store.buffer(dst).put(target, srcBuffer, entry, size);
+        }
+        for (var i = count - 1; i >= from; i--) {
+            removeEntry(src, i);
+        }
+    }
+
+    private void compact(int page) {
+        var buffer = store.buffer(page);
+        var base = store.offset(page);
+        var count = count(page);
+        var type = type(page);
+        scratch.put(0, buffer, base, pageSize);
+
+        var dataStart = pageSize - prefixLength(page);
+        for (var i = 0; i < count; i++) {
+            var entry = entryOffset(scratch, 0, i);
+            var size = entrySize(scratch, entry, type);
+            dataStart -= size;
+            buffer.put(base + dataStart, scratch, entry, size);
+            buffer.putShort(base + HEADER_SIZE + i * SLOT_SIZE, (short)dataStart);
+        }
+        buffer.putInt(base + DATA_START, dataStart);
+        buffer.putInt(base + GARBAGE, 0);
+    }
+
+    private static int entryOffset(ByteBuffer buffer, int base, int index) {
+        return base + (buffer.getShort(base + HEADER_SIZE + index * SLOT_SIZE) & 0xFFFF);
+    }
+
+    private static int keyLength(ByteBuffer buffer, int entry) {
+        return buffer.getShort(entry) & 0xFFFF;
+    }
+
+    private static int entrySize(ByteBuffer buffer, int entry, byte type) {
+        var keyLength = keyLength(buffer, entry);
+        if (type == LEAF) {
+            return LEAF_ENTRY_OVERHEAD + keyLength + (buffer.getShort(entry + 2 + keyLength) & 0xFFFF);
+        } else {
+            return INTERNAL_ENTRY_OVERHEAD + keyLength;
+        }
+    }
+
+    // negative if the key stored at entry sorts before key[keyOffset..]
+    private static int compareKey(ByteBuffer buffer, int entry, byte[] key, int keyOffset) {
+        var keyLength = keyLength(buffer, entry);
+        var length = Math.min(keyLength, key.length - keyOffset);
+        for (var i = 0; i < length; i++) {
+            var compareResult = (buffer.get(entry + 2 + i) & 0xFF) - (key[keyOffset + i] & 0xFF);
+            if (compareResult != 0) {
+                return compareResult;
+            }
+        }
+        return keyLength - (key.length - keyOffset);
+    }
+
+    private class PageRangeIterator implements Iterator<Pair<K, V>> {
+        PageRangeIterator(byte[] fromKey, byte[] toKey, boolean descending) {
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+            this.descending = descending;
+            if (!descending) {
+                if (fromKey == null) {
+                    this.leaf = edgeLeaf(false);
+                    this.index = 0;
+                } else {
+                    this.leaf = findLeaf(fromKey);
+                    var searchResult = search(leaf, fromKey);
+                    this.index = searchResult >= 0 ? searchResult : -(searchResult + 1);
+                }
+            } else {
+                if (toKey == null) {
+                    this.leaf = edgeLeaf(true);
+                    this.index = count(leaf) - 1;
+                } else {
+                    this.leaf = findLeaf(toKey);
+                    var searchResult = search(leaf, toKey);
+                    this.index = (searchResult >= 0 ? searchResult : -(searchResult + 1)) - 1;
+                }
+            }
+            seek();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        @Override
+        public Pair<K, V> next() {
+            if (!hasNext) {
+                throw new NoSuchElementException();
+            }
+            var ret = decodeEntry(leaf, index);
+            if (descending) {
+                index--;
+            } else {
+                index++;
+            }
+            seek();
+            return ret;
+        }
+
+        private void seek() {
+            if (descending) {
+                while (leaf != PageStore.NO_PAGE && index < 0) {
+                    leaf = leftSibling(leaf);
+                    index = leaf == PageStore.NO_PAGE ? -1 : count(leaf) - 1;
+                }
+            } else {
+                while (leaf != PageStore.NO_PAGE && index >= count(leaf)) {
+                    leaf = rightSibling(leaf);
+                    index = 0;
+                }
+            }
+
+            if (leaf == PageStore.NO_PAGE) {
+                hasNext = false;
+                return;
+            }
+            if (descending && fromKey != null) {
+                hasNext = compareLeafKey(leaf, index, fromKey) >= 0;
+            } else if (!descending && toKey != null) {
+                hasNext = compareLeafKey(leaf, index, toKey) < 0;
+            } else {
+                hasNext = true;
+            }
+        }
+
+        private final byte[] fromKey, toKey;
+        private final boolean descending;
+        private int leaf;
+        private int index;
+        private boolean hasNext;
+    }
+
+    protected static final byte LEAF = 1;
+    protected static final byte INTERNAL = 2;
+
+    private static final int TYPE = 0;
+    private static final int COUNT = 2;
+    private static final int DATA_START = 4;
+    private static final int GARBAGE = 8;
+    private static final int LEFT_SIBLING = 12;
+    private static final int RIGHT_SIBLING = 16;
+    private static final int PREFIX_LENGTH = 20;
+    private static final int HEADER_SIZE = 24;
+    private static final int SLOT_SIZE = 2;
+    private static final int LEAF_ENTRY_OVERHEAD = 4;
+    private static final int INTERNAL_ENTRY_OVERHEAD = 6;
+    private static final int MAX_HEIGHT = 64;
+
+    public static final int MIN_PAGE_SIZE = 256;
+    public static final int MAX_PAGE_SIZE = 65536;
+
+    protected final PageStore store;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final int pageSize;
+    private final int maxEntrySize;
+    private final ByteBuffer scratch;
+    private final ByteBuffer leafImage;
+    private final int[] pathPages = new int[MAX_HEIGHT];
+    private final int[] pathChildIndexes = new int[MAX_HEIGHT];
+}
@@ -0,0 +1,445 @@
+package tech.icey.ds;
+
+import tech.icey.basic.Comparators;
+import tech.icey.basic.Pair;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// one BPlusTree and its key range [lowerBound, upperBound), read under readLock and replaced or modified under
+// writeLock; a null bound is unbounded. BPlusTree lookups and scans only read, so readers can share a shard
+class ShardedBPlusTreeShard<K, V> {
+    ShardedBPlusTreeShard(int degree, Comparator<? super K> comparator, K lowerBound, K upperBound) {
+        var lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+        this.comparator = comparator;
+        this.tree = new BPlusTree<>(degree, comparator);
+        this.tree.enableOrderStatistics();
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+    }
+
+    boolean owns(K key) {
+        return (lowerBound == null || comparator.compare(key, lowerBound) >= 0)
+               && (upperBound == null || comparator.compare(key, upperBound) < 0);
+    }
+
+    void updateSize() {
+        size = tree.countRange(null, null);
+    }
+
+    // the caller holds writeLock
+    void insert(K key, V value) {
+        tree.insert(key, value);
+        if (changes != null) {
+            changes.add(new Pair<>(key, value));
+        }
+        updateSize();
+    }
+
+    // the caller holds writeLock
+    boolean delete(K key) {
+        var deleted = tree.delete(key);
+        if (deleted && changes != null) {
+            changes.add(new Pair<>(key, DELETED));
+        }
+        updateSize();
+        return deleted;
+    }
+
+    Lock lock(boolean exclusive) {
+        return exclusive ? writeLock : readLock;
+    }
+
+    final Lock readLock, writeLock;
+    BPlusTree<K, V> tree;
+    K lowerBound, upperBound;
+    // written under writeLock, read without a lock to decide whether a rebalance is worth the locks
+    volatile int size;
+    // non-null while a rebalance rebuilds this shard from a copy: the writes made since the copy, in order, with
+    // DELETED as the value of a delete. Guarded by writeLock
+    List<Pair<K, Object>> changes;
+
+    static final Object DELETED = new Object();
+
+    private final Comparator<? super K> comparator;
+}
+
+// Splits the key space into ranges owned by independent BPlusTrees, each behind its own read-write lock, so writers
+// to different shards never contend and readers of one shard share it. Routing goes through an immutable copy of
+// the boundaries that is replaced as a whole; since a stale copy may send a key to a shard that no longer owns it,
+// every operation re-checks ownership under the shard lock and re-routes if needed.
+//
+// A shard that grows past SKEW_FACTOR times the average is evened out with its smaller neighbour by a task on the
+// common fork-join pool, so the writer that notices pays nothing: both trees are rebuilt with BPlusTreeBuilder from
+// their combined entries around a new boundary, in linear time and without a single split or merge, and swapped in.
+// The entries are copied under the read locks and the trees built with no lock held; writes arriving meanwhile are
+// recorded by their shard and replayed onto the new trees under the write locks just before the swap, so writers
+// only wait for the copy and the replay.
+//
+// Range scans read a bounded batch under one shard lock at a time and resume from the last key seen, so they cross
+// boundaries, including ones that move mid-scan, without a global lock.
+public class ShardedBPlusTree<K, V> {
+    public ShardedBPlusTree(int degree, List<K> splitKeys) {
+        this(degree, Comparators.naturalOrder(), splitKeys);
+    }
+
+    // splitKeys must be strictly increasing, n split keys make n + 1 shards
+    public ShardedBPlusTree(int degree, Comparator<? super K> comparator, List<K> splitKeys) {
+        for (var i = 1; i < splitKeys.size(); i++) {
+            if (comparator.compare(splitKeys.get(i - 1), splitKeys.get(i)) >= 0) {
+                throw new IllegalArgumentException("split keys must be strictly increasing");
+            }
+        }
+        this.degree = degree;
+        this.comparator = comparator;
+
+        @SuppressWarnings("unchecked")
+        var shards = (ShardedBPlusTreeShard<K, V>[])new ShardedBPlusTreeShard<?, ?>[splitKeys.size() + 1];
+        var lowerBounds = new ArrayList<K>();
+        for (var i = 0; i < shards.length; i++) {
+            var lowerBound = i == 0 ? null : splitKeys.get(i - 1);
+            var upperBound = i == splitKeys.size() ? null : splitKeys.get(i);
+            shards[i] = new ShardedBPlusTreeShard<>(degree, comparator, lowerBound, upperBound);
+            lowerBounds.add(lowerBound);
+        }
+        this.shards = shards;
+        this.lowerBounds = lowerBounds;
+    }
+
+    public V get(K key) {
+        var shard = lockOwner(key, false);
+        try {
+            return shard.tree.get(key);
+        } finally {
+            shard.readLock.unlock();
+        }
+    }
+
+    public boolean containsKey(K key) {
+        var shard = lockOwner(key, false);
+        try {
+            return shard.tree.containsKey(key);
+        } finally {
+            shard.readLock.unlock();
+        }
+    }
+
+    public void insert(K key, V value) {
+        var shard = lockOwner(key, true);
+        int size;
+        try {
+            shard.insert(key, value);
+            size = shard.size;
+        } finally {
+            shard.writeLock.unlock();
+        }
+        if (size % REBALANCE_CHECK_INTERVAL == 0 && isSkewed(size)) {
+            requestRebalance();
+        }
+    }
+
+    public boolean delete(K key) {
+        var shard = lockOwner(key, true);
+        try {
+            return shard.delete(key);
+        } finally {
+            shard.writeLock.unlock();
+        }
+    }
+
+    // not a snapshot under concurrent writes, each shard is counted at a different moment
+    public int size() {
+        var ret = 0;
+        for (var shard : shards) {
+            ret += shard.size;
+        }
+        return ret;
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    // [fromKey, toKey), a null bound means unbounded on that side. Each batch is consistent within its shard, the
+    // scan as a whole is not a snapshot under concurrent writes
+    public Iterator<Pair<K, V>> range(K fromKey, K toKey) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                while (index == batch.size() && !exhausted) {
+                    fetch();
+                }
+                return index < batch.size();
+            }
+
+            @Override
+            public Pair<K, V> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.get(index++);
+            }
+
+            // reads up to SCAN_BATCH entries from the shard owning resumeKey, moving on to the next shard if this
+            // one runs out before the end of the range
+            private void fetch() {
+                batch.clear();
+                index = 0;
+                var shard = resumeKey == null ? lockFirst() : lockOwner(resumeKey, false);
+                try {
+                    var upperBound = shard.upperBound;
+                    var lastShard = upperBound == null
+                                    || (toKey != null && comparator.compare(toKey, upperBound) <= 0);
+                    var end = lastShard ? toKey : upperBound;
+                    var iterator = shard.tree.range(resumeKey, end);
+                    while (iterator.hasNext() && batch.size() < SCAN_BATCH) {
+                        var entry = iterator.next();
+                        if (resumeExclusive && comparator.compare(entry.getFirst(), resumeKey) == 0) {
+                            continue;
+                        }
+                        batch.add(entry);
+                    }
+
+                    if (iterator.hasNext()) {
+                        resumeKey = batch.get(batch.size() - 1).getFirst();
+                        resumeExclusive = true;
+                    } else if (!lastShard) {
+                        resumeKey = upperBound;
+                        resumeExclusive = false;
+                    } else {
+                        exhausted = true;
+                    }
+                } finally {
+                    shard.readLock.unlock();
+                }
+            }
+
+            private final List<Pair<K, V>> batch = new ArrayList<>();
+            private int index;
+            private K resumeKey = fromKey;
+            private boolean resumeExclusive;
+            private boolean exhausted;
+        };
+    }
+
+    public List<Pair<K, V>> traverse() {
+        var ret = new ArrayList<Pair<K, V>>();
+        range(null, null).forEachRemaining(ret::add);
+        return ret;
+    }
+
+    // for tests, waits until no rebalance is running or asked for
+    void awaitRebalancing() throws InterruptedException {
+        synchronized (rebalancing) {
+            while (rebalancing.get()) {
+                rebalancing.wait();
+            }
+        }
+    }
+
+    // for tests
+    int[] shardSizes() {
+        var ret = new int[shards.length];
+        for (var i = 0; i < shards.length; i++) {
+            ret[i] = shards[i].size;
+        }
+        return ret;
+    }
+
+    // returns the shard that owns key with its write lock held if exclusive, its read lock otherwise
+    private ShardedBPlusTreeShard<K, V> lockOwner(K key, boolean exclusive) {
+        while (true) {
+            var shard = shards[route(lowerBounds, key)];
+            var lock = shard.lock(exclusive);
+            lock.lock();
+            if (shard.owns(key)) {
+                return shard;
+            }
+            lock.unlock();
+        }
+    }
+
+    // the first shard always owns everything below the first boundary, however boundaries move; returned with its
+    // read lock held
+    private ShardedBPlusTreeShard<K, V> lockFirst() {
+        shards[0].readLock.lock();
+        return shards[0];
+    }
+
+    // last i with lowerBounds[i] <= key, lowerBounds[0] being null
+    private int route(List<K> lowerBounds, K key) {
+        var low = 1;
+        var high = lowerBounds.size();
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (comparator.compare(lowerBounds.get(mid), key) > 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low - 1;
+    }
+
+    private boolean isSkewed(int size) {
+        return size >= MIN_REBALANCE_SIZE && size >= (long)SKEW_FACTOR * size() / shards.length;
+    }
+
+    // at most one rebalancing task runs at a time; a request arriving while it runs makes it do another pass
+    private void requestRebalance() {
+        rebalanceRequested = true;
+        if (rebalancing.compareAndSet(false, true)) {
+            ForkJoinPool.commonPool().execute(this::runRebalances);
+        }
+    }
+
+    // a shard only sheds to its neighbours, so passes repeat until one moves nothing; writes concentrated at one end
+    // of the key space spread over several shards this way. A request that comes in just as the task is finishing
+    // is caught by the check after rebalancing is cleared
+    private void runRebalances() {
+        do {
+            try {
+                while (rebalanceRequested) {
+                    rebalanceRequested = false;
+                    for (var shard : shards) {
+                        if (maybeRebalance(shard)) {
+                            rebalanceRequested = true;
+                        }
+                    }
+                }
+            } finally {
+                synchronized (rebalancing) {
+                    rebalancing.set(false);
+                    rebalancing.notifyAll();
+                }
+            }
+        } while (rebalanceRequested && rebalancing.compareAndSet(false, true));
+    }
+
+    // evens shard out with its smaller neighbour if it is skewed, true if anything moved
+    private boolean maybeRebalance(ShardedBPlusTreeShard<K, V> shard) {
+        if (shards.length == 1 || !isSkewed(shard.size)) {
+            return false;
+        }
+        var index = indexOf(shard);
+        if (index == shards.length - 1 || (index > 0 && shards[index - 1].size < shards[index + 1].size)) {
+            return shed(index, index - 1);
+        }
+        return shed(index, index + 1);
+    }
+
+    // evens shards[from] out with its neighbour shards[to]. If the two are even already, shards[to] sheds further in
+    // the same direction first, so the next pass finds room next to shards[from]
+    private boolean shed(int from, int to) {
+        if (rebalance(shards[Math.min(from, to)], shards[Math.max(from, to)])) {
+            return true;
+        }
+        var next = 2 * to - from;
+        return next >= 0 && next < shards.length && shed(to, next);
+    }
+
+    // rebuilds two adjacent shards around a boundary that splits their entries evenly, unless they are close enough
+    // already, and tells whether it did. Only the rebalancing task calls this, one pair at a time; locks are taken
+    // left to right like everywhere else
+    private boolean rebalance(ShardedBPlusTreeShard<K, V> left, ShardedBPlusTreeShard<K, V> right) {
+        // copied under the read locks, then built without any lock while both shards take writes and record them
+        List<Pair<K, V>> entries;
+        left.readLock.lock();
+        right.readLock.lock();
+        try {
+            if (Math.abs(left.size - right.size) / 2 < MIN_REBALANCE_SIZE / 4) {
+                return false;
+            }
+            // every key of left sorts before every key of right, so the concatenation is sorted
+            entries = left.tree.traverse();
+            entries.addAll(right.tree.traverse());
+            left.changes = new ArrayList<>();
+            right.changes = new ArrayList<>();
+        } finally {
+            right.readLock.unlock();
+            left.readLock.unlock();
+        }
+
+        var leftCount = entries.size() / 2;
+        var boundary = entries.get(leftCount).getFirst();
+        var leftTree = build(entries.subList(0, leftCount));
+        var rightTree = build(entries.subList(leftCount, entries.size()));
+
+        left.writeLock.lock();
+        right.writeLock.lock();
+        try {
+            // keys of the two shards are disjoint, so only the order within each list matters
+            replay(left.changes, boundary, leftTree, rightTree);
+            replay(right.changes, boundary, leftTree, rightTree);
+            left.changes = null;
+            right.changes = null;
+            left.tree = leftTree;
+            right.tree = rightTree;
+            left.upperBound = boundary;
+            right.lowerBound = boundary;
+            left.updateSize();
+            right.updateSize();
+
+            // published before the shard locks are released, so a writer bounced off a stale route finds the new one
+            var lowerBounds = new ArrayList<>(this.lowerBounds);
+            lowerBounds.set(indexOf(right), boundary);
+            this.lowerBounds = lowerBounds;
+            return true;
+        } finally {
+            right.writeLock.unlock();
+            left.writeLock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void replay(List<Pair<K, Object>> changes, K boundary, BPlusTree<K, V> left, BPlusTree<K, V> right) {
+        for (var change : changes) {
+            var key = change.getFirst();
+            var tree = comparator.compare(key, boundary) < 0 ? left : right;
+            if (change.getSecond() == ShardedBPlusTreeShard.DELETED) {
+                tree.delete(key);
+            } else {
+                tree.insert(key, (V) change.getSecond());
+            }
+        }
+    }
+
+    private BPlusTree<K, V> build(List<Pair<K, V>> sortedEntries) {
+        var tree = BPlusTreeBuilder.bulkLoad(degree, comparator, REBUILD_FILL_FACTOR, sortedEntries.iterator());
+        tree.enableOrderStatistics();
+        return tree;
+    }
+
+    private int indexOf(ShardedBPlusTreeShard<K, V> shard) {
+        for (var i = 0; i < shards.length; i++) {
+            if (shards[i] == shard) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("shard is not part of this tree");
+    }
+
+    static final int SCAN_BATCH = 256;
+    static final int REBALANCE_CHECK_INTERVAL = 256;
+    static final int MIN_REBALANCE_SIZE = 4096;
+    static final int SKEW_FACTOR = 2;
+    // leaves room in the rebuilt leaves for the inserts that follow
+    static final double REBUILD_FILL_FACTOR = 0.7;
+
+    private final int degree;
+    private final Comparator<? super K> comparator;
+    private final ShardedBPlusTreeShard<K, V>[] shards;
+    // lowerBounds.get(i) is the lower bound of shards[i], replaced as a whole by rebalance
+    private volatile List<K> lowerBounds;
+    private final AtomicBoolean rebalancing = new AtomicBoolean();
+    private volatile boolean rebalanceRequested;
+}
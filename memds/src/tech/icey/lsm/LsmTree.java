@@ -0,0 +1,781 @@
+package tech.icey.lsm;
+
+import tech.icey.basic.Codec;
+import tech.icey.basic.Pair;
+import tech.icey.ds.CopyOnWriteBPlusTree;
+import tech.icey.storage.StorageException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/*
+ * A log-structured merge tree. Writes go to an in-memory CopyOnWriteBPlusTree, the memtable, so readers take an O(1)
+ * snapshot of it under the lock and do the actual reading outside of it; once it holds about memtableSize bytes it
+ * is frozen, a fresh one takes its place and a background thread writes the frozen one out as an SSTable in level 0.
+ * Tables in level 0 may overlap and are searched newest first. Each deeper level is a set of disjoint tables allowed
+ * LEVEL_SIZE_RATIO times the bytes of the level above it. Once L0_COMPACTION_TRIGGER tables pile up in level 0 they
+ * are all merged into level 1, and a deeper level that outgrows its budget has one of its tables, picked
+ * round-robin, merged into the tables it overlaps one level down.
+ *
+ * A delete writes a tombstone that hides older versions until a compaction into the last populated level drops it.
+ * Keys are ordered by their encodings compared as unsigned bytes, so the key codec has to be order-preserving like
+ * the ones in Codecs.
+ *
+ * The directory holds the tables as <number>.sst and a MANIFEST listing the tables of every level:
+ *
+ *   0  int   magic
+ *   4  int   format version
+ *   8  long  next table number
+ *  16  int   level count
+ *  20        per level, [int table count][long table number...]
+ *            int CRC32 of everything before it
+ *
+ * The manifest is replaced atomically after every flush and compaction, and a table is only deleted once a manifest
+ * without it is on disk, so tables left behind by a crash are simply removed on the next open. There is no log:
+ * writes still sitting in memtables are lost on a crash, flush() and close() write them out.
+ *
+ * Writers stall while MAX_IMMUTABLE_MEMTABLES frozen memtables wait to be flushed or level 0 holds L0_STALL_TRIGGER
+ * tables, which keeps the background thread from falling behind for good.
+ */
+public class LsmTree<K, V> implements Closeable {
+    public LsmTree(Path directory, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        this(directory, keyCodec, valueCodec, DEFAULT_MEMTABLE_SIZE);
+    }
+
+    public LsmTree(Path directory, Codec<K> keyCodec, Codec<V> valueCodec, int memtableSize) throws IOException {
+        if (memtableSize <= 0 || memtableSize > MAX_MEMTABLE_SIZE) {
+            throw new IllegalArgumentException("memtable size must be in (0, " + MAX_MEMTABLE_SIZE + "]");
+        }
+        this.directory = directory;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.memtableSize = memtableSize;
+
+        Files.createDirectories(directory);
+        this.levels = loadManifest();
+        this.backgroundThread = new Thread(this::runBackground, "lsm-" + directory.getFileName());
+        backgroundThread.setDaemon(true);
+        backgroundThread.start();
+    }
+
+    public void insert(K key, V value) {
+        write(keyCodec.encode(key), valueCodec.encode(value));
+    }
+
+    // frozen memtables and tables never change, so they are searched without the lock; only the active memtable is
+    // checked again under it, and the whole lookup retried if that memtable was frozen in the meantime
+    public boolean delete(K key) {
+        var encodedKey = keyCodec.encode(key);
+        while (true) {
+            CopyOnWriteBPlusTree<byte[], byte[]> active;
+            List<CopyOnWriteBPlusTree.Snapshot<byte[], byte[]>> frozen;
+            List<List<SSTable>> tables;
+            lock.lock();
+            try {
+                checkUsable();
+                active = memtable;
+                frozen = immutables;
+                tables = levels;
+            } finally {
+                lock.unlock();
+            }
+
+            var older = lookupFrozen(encodedKey, frozen, tables);
+            lock.lock();
+            try {
+                // a stall releases the lock, so it has to be over before the check
+                awaitWriteRoom();
+                if (memtable != active) {
+                    continue;
+                }
+                var value = memtable.get(encodedKey);
+                if ((value != null ? liveValue(value) : older) == null) {
+                    return false;
+                }
+                apply(encodedKey, SSTable.TOMBSTONE);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public V get(K key) {
+        var value = lookup(keyCodec.encode(key));
+        return value == null ? null : valueCodec.decode(ByteBuffer.wrap(value), 0, value.length);
+    }
+
+    public boolean containsKey(K key) {
+        return lookup(keyCodec.encode(key)) != null;
+    }
+
+    // [fromKey, toKey), a null bound means unbounded on that side
+    public Iterator<Pair<K, V>> range(K fromKey, K toKey) {
+        var from = fromKey == null ? null : keyCodec.encode(fromKey);
+        var to = toKey == null ? null : keyCodec.encode(toKey);
+        var sources = new ArrayList<Iterator<Pair<byte[], byte[]>>>();
+        List<List<SSTable>> tables;
+        lock.lock();
+        try {
+            checkUsable();
+            sources.add(memtable.snapshot().range(from, to));
+            for (var frozen : immutables) {
+                sources.add(frozen.range(from, to));
+            }
+            tables = levels;
+        } finally {
+            lock.unlock();
+        }
+
+        for (var table : tables.get(0)) {
+            sources.add(table.iterator(from));
+        }
+        for (var level = 1; level < tables.size(); level++) {
+            sources.add(new LevelIterator(tables.get(level), from));
+        }
+        return new LsmRangeIterator(new MergingIterator(sources, true), to);
+    }
+
+    public List<Pair<K, V>> traverse() {
+        var ret = new ArrayList<Pair<K, V>>();
+        range(null, null).forEachRemaining(ret::add);
+        return ret;
+    }
+
+    // writes out everything inserted so far and waits until it is in level 0
+    public void flush() {
+        lock.lock();
+        try {
+            checkUsable();
+            if (memtableBytes > 0) {
+                freezeMemtable();
+            }
+            while (!immutables.isEmpty()) {
+                changed.awaitUninterruptibly();
+                checkUsable();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (memtableBytes > 0 && failure == null) {
+                freezeMemtable();
+            }
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        var interrupted = false;
+        while (true) {
+            try {
+                backgroundThread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // waits until every frozen memtable is flushed and no level is over its budget
+    void awaitBackgroundWork() {
+        lock.lock();
+        try {
+            while (!immutables.isEmpty() || compactionLevel(levels) >= 0) {
+                checkUsable();
+                changed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int[] tableCounts() {
+        lock.lock();
+        try {
+            return levels.stream().mapToInt(List::size).toArray();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(byte[] key, byte[] value) {
+        lock.lock();
+        try {
+            awaitWriteRoom();
+            apply(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // called with the lock held, which it releases while writers are stalled
+    private void awaitWriteRoom() {
+        checkUsable();
+        while (immutables.size() >= MAX_IMMUTABLE_MEMTABLES || levels.get(0).size() >= L0_STALL_TRIGGER) {
+            changed.awaitUninterruptibly();
+            checkUsable();
+        }
+    }
+
+    private void apply(byte[] key, byte[] value) {
+        memtable.insert(key, value);
+        // overwrites are counted again, which only makes the memtable freeze a little early
+        memtableBytes += ENTRY_OVERHEAD + key.length + value.length;
+        if (memtableBytes >= memtableSize) {
+            freezeMemtable();
+        }
+    }
+
+    // the live value for key, null if it is absent or deleted
+    private byte[] lookup(byte[] key) {
+        CopyOnWriteBPlusTree.Snapshot<byte[], byte[]> active;
+        List<CopyOnWriteBPlusTree.Snapshot<byte[], byte[]>> frozen;
+        List<List<SSTable>> tables;
+        lock.lock();
+        try {
+            checkUsable();
+            active = memtable.snapshot();
+            frozen = immutables;
+            tables = levels;
+        } finally {
+            lock.unlock();
+        }
+
+        var value = active.get(key);
+        return value != null ? liveValue(value) : lookupFrozen(key, frozen, tables);
+    }
+
+    // the live value for key in the frozen memtables and the tables, null if it is absent or deleted there
+    private static byte[] lookupFrozen(byte[] key, List<CopyOnWriteBPlusTree.Snapshot<byte[], byte[]>> frozen,
+                                       List<List<SSTable>> tables) {
+        for (var frozenMemtable : frozen) {
+            var value = frozenMemtable.get(key);
+            if (value != null) {
+                return liveValue(value);
+            }
+        }
+        for (var table : tables.get(0)) {
+            var value = table.get(key);
+            if (value != null) {
+                return liveValue(value);
+            }
+        }
+        for (var level = 1; level < tables.size(); level++) {
+            var levelTables = tables.get(level);
+            var index = findTable(levelTables, key);
+            if (index >= 0) {
+                var value = levelTables.get(index).get(key);
+                if (value != null) {
+                    return liveValue(value);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static byte[] liveValue(byte[] value) {
+        return value == SSTable.TOMBSTONE ? null : value;
+    }
+
+    // index of the last table whose first key is <= key in a level of disjoint tables, -1 if there is none
+    private static int findTable(List<SSTable> tables, byte[] key) {
+        var low = 0;
+        var high = tables.size() - 1;
+        while (low <= high) {
+            var mid = (low + high) >>> 1;
+            if (SSTable.compareKeys(tables.get(mid).firstKey(), key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    private void freezeMemtable() {
+        var frozen = new ArrayList<CopyOnWriteBPlusTree.Snapshot<byte[], byte[]>>();
+        frozen.add(memtable.snapshot());
+        frozen.addAll(immutables);
+        immutables = List.copyOf(frozen);
+        memtable = newMemtable();
+        memtableBytes = 0;
+        changed.signalAll();
+    }
+
+    private void checkUsable() {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new IllegalStateException("the tree is closed");
+        }
+    }
+
+    private void runBackground() {
+        try {
+            while (true) {
+                CopyOnWriteBPlusTree.Snapshot<byte[], byte[]> toFlush = null;
+                lock.lock();
+                try {
+                    while (immutables.isEmpty() && !closed && compactionLevel(levels) < 0) {
+                        changed.awaitUninterruptibly();
+                    }
+                    if (!immutables.isEmpty()) {
+                        toFlush = immutables.get(immutables.size() - 1);
+                    } else if (closed) {
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+
+                if (toFlush != null) {
+                    flushMemtable(toFlush);
+                } else {
+                    compact();
+                }
+            }
+        } catch (IOException e) {
+            fail(new StorageException("background work failed in " + directory, e));
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(RuntimeException e) {
+        lock.lock();
+        try {
+            failure = e;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // levels only ever change on the background thread, which is why it may read them without the lock
+    private void flushMemtable(CopyOnWriteBPlusTree.Snapshot<byte[], byte[]> frozen) throws IOException {
+        var number = nextTableNumber++;
+        var table = SSTable.write(tablePath(number), number, frozen.range(null, null), Long.MAX_VALUE);
+        var levelZero = new ArrayList<SSTable>();
+        levelZero.add(table);
+        levelZero.addAll(levels.get(0));
+        var newLevels = new ArrayList<>(levels);
+        newLevels.set(0, List.copyOf(levelZero));
+        writeManifest(newLevels);
+
+        lock.lock();
+        try {
+            levels = List.copyOf(newLevels);
+            immutables = immutables.subList(0, immutables.size() - 1);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void compact() throws IOException {
+        var current = levels;
+        var level = compactionLevel(current);
+        if (level < 0) {
+            return;
+        }
+
+        var inputs = level == 0 ? current.get(0) : List.of(pickTable(current.get(level), level));
+        var smallest = inputs.get(0).firstKey();
+        var largest = inputs.get(0).lastKey();
+        for (var table : inputs) {
+            smallest = SSTable.compareKeys(table.firstKey(), smallest) < 0 ? table.firstKey() : smallest;
+            largest = SSTable.compareKeys(table.lastKey(), largest) > 0 ? table.lastKey() : largest;
+        }
+        var overlapping = new ArrayList<SSTable>();
+        for (var table : current.get(level + 1)) {
+            if (SSTable.compareKeys(table.firstKey(), largest) <= 0
+                && SSTable.compareKeys(table.lastKey(), smallest) >= 0) {
+                overlapping.add(table);
+            }
+        }
+
+        var outputs = new ArrayList<SSTable>();
+        if (level > 0 && overlapping.isEmpty()) {
+            // nothing to merge with, the table moves down as it is
+            outputs.addAll(inputs);
+        } else {
+            var sources = new ArrayList<Iterator<Pair<byte[], byte[]>>>();
+            for (var table : inputs) {
+                sources.add(table.iterator(null));
+            }
+            sources.add(new LevelIterator(overlapping, null));
+            var dropTombstones = true;
+            for (var deeper = level + 2; deeper < current.size(); deeper++) {
+                dropTombstones &= current.get(deeper).isEmpty();
+            }
+            var merged = new MergingIterator(sources, dropTombstones);
+            while (merged.hasNext()) {
+                var number = nextTableNumber++;
+                outputs.add(SSTable.write(tablePath(number), number, merged, memtableSize));
+            }
+        }
+
+        var nextLevel = new ArrayList<>(current.get(level + 1));
+        nextLevel.removeAll(overlapping);
+        nextLevel.addAll(outputs);
+        nextLevel.sort((lhs, rhs) -> SSTable.compareKeys(lhs.firstKey(), rhs.firstKey()));
+        var remaining = new ArrayList<>(current.get(level));
+        remaining.removeAll(inputs);
+        var newLevels = new ArrayList<>(current);
+        newLevels.set(level, List.copyOf(remaining));
+        newLevels.set(level + 1, List.copyOf(nextLevel));
+        writeManifest(newLevels);
+
+        // readers still holding the old levels keep their mappings of the deleted files
+        var obsolete = new ArrayList<>(inputs);
+        obsolete.addAll(overlapping);
+        obsolete.removeAll(outputs);
+        for (var table : obsolete) {
+            Files.deleteIfExists(tablePath(table.number()));
+        }
+
+        lock.lock();
+        try {
+            levels = List.copyOf(newLevels);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the level most in need of compaction, -1 if every level is within its budget
+    private int compactionLevel(List<List<SSTable>> levels) {
+        if (levels.get(0).size() >= L0_COMPACTION_TRIGGER) {
+            return 0;
+        }
+        var budget = (long)memtableSize;
+        for (var level = 1; level < levels.size() - 1; level++) {
+            budget *= LEVEL_SIZE_RATIO;
+            var size = 0L;
+            for (var table : levels.get(level)) {
+                size += table.sizeInBytes();
+            }
+            if (size > budget) {
+                return level;
+            }
+        }
+        return -1;
+    }
+
+    private SSTable pickTable(List<SSTable> tables, int level) {
+        var picked = tables.get(0);
+        if (compactPointers[level] != null) {
+            for (var table : tables) {
+                if (SSTable.compareKeys(table.firstKey(), compactPointers[level]) > 0) {
+                    picked = table;
+                    break;
+                }
+            }
+        }
+        compactPointers[level] = picked.lastKey();
+        return picked;
+    }
+
+    private List<List<SSTable>> loadManifest() throws IOException {
+        var path = directory.resolve(MANIFEST_FILE);
+        var levels = new ArrayList<List<SSTable>>();
+        var live = new HashSet<Long>();
+        if (Files.exists(path)) {
+            var buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            var crc = new CRC32();
+            crc.update(buffer.array(), 0, Math.max(0, buffer.limit() - 4));
+            if (buffer.limit() < MANIFEST_HEADER_SIZE + 4
+                || buffer.getInt(0) != MANIFEST_MAGIC
+                || buffer.getInt(buffer.limit() - 4) != (int)crc.getValue()) {
+                throw new IOException(path + " is not a valid manifest");
+            }
+            if (buffer.getInt(4) != MANIFEST_FORMAT_VERSION) {
+                throw new IOException(path + " has format version " + buffer.getInt(4)
+                                      + ", expected " + MANIFEST_FORMAT_VERSION);
+            }
+
+            nextTableNumber = buffer.getLong(8);
+            var levelCount = buffer.getInt(16);
+            buffer.position(MANIFEST_HEADER_SIZE);
+            for (var level = 0; level < levelCount; level++) {
+                var tables = new ArrayList<SSTable>();
+                var tableCount = buffer.getInt();
+                for (var i = 0; i < tableCount; i++) {
+                    var number = buffer.getLong();
+                    tables.add(SSTable.open(tablePath(number), number));
+                    live.add(number);
+                }
+                levels.add(List.copyOf(tables));
+            }
+        }
+        while (levels.size() < MAX_LEVELS) {
+            levels.add(List.of());
+        }
+
+        // written by a flush or compaction that crashed before its manifest made it to disk
+        try (var files = Files.list(directory)) {
+            for (var file : (Iterable<Path>)files::iterator) {
+                var name = file.getFileName().toString();
+                if (!name.endsWith(TABLE_SUFFIX)) {
+                    continue;
+                }
+                var stem = name.substring(0, name.length() - TABLE_SUFFIX.length());
+                if (!stem.isEmpty() && stem.chars().allMatch(Character::isDigit)
+                    && !live.contains(Long.parseLong(stem))) {
+                    Files.delete(file);
+                }
+            }
+        }
+        return List.copyOf(levels);
+    }
+
+    private void writeManifest(List<List<SSTable>> levels) throws IOException {
+        var size = MANIFEST_HEADER_SIZE + 4;
+        for (var tables : levels) {
+            size += 4 + 8 * tables.size();
+        }
+        var buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MANIFEST_MAGIC).putInt(MANIFEST_FORMAT_VERSION).putLong(nextTableNumber).putInt(levels.size());
+        for (var tables : levels) {
+            buffer.putInt(tables.size());
+            for (var table : tables) {
+                buffer.putLong(table.number());
+            }
+        }
+        var crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int)crc.getValue());
+        buffer.flip();
+
+        var temporary = directory.resolve(MANIFEST_FILE + ".tmp");
+        try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                            StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(MANIFEST_FILE), StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+        try (var directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        }
+    }
+
+    private Path tablePath(long number) {
+        return directory.resolve(number + TABLE_SUFFIX);
+    }
+
+    private static CopyOnWriteBPlusTree<byte[], byte[]> newMemtable() {
+        return new CopyOnWriteBPlusTree<>(MEMTABLE_DEGREE, SSTable::compareKeys);
+    }
+
+    private class LsmRangeIterator implements Iterator<Pair<K, V>> {
+        LsmRangeIterator(MergingIterator entries, byte[] toKey) {
+            this.entries = entries;
+            this.toKey = toKey;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Pair<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            var key = next.getFirst();
+            var value = next.getSecond();
+            advance();
+            return new Pair<>(keyCodec.decode(ByteBuffer.wrap(key), 0, key.length),
+                              valueCodec.decode(ByteBuffer.wrap(value), 0, value.length));
+        }
+
+        private void advance() {
+            next = entries.hasNext() ? entries.next() : null;
+            if (next != null && toKey != null && SSTable.compareKeys(next.getFirst(), toKey) >= 0) {
+                next = null;
+            }
+        }
+
+        private final MergingIterator entries;
+        private final byte[] toKey;
+        private Pair<byte[], byte[]> next;
+    }
+
+    public static final int DEFAULT_MEMTABLE_SIZE = 4 * 1024 * 1024;
+    public static final int MAX_MEMTABLE_SIZE = 256 * 1024 * 1024;
+
+    static final int MAX_LEVELS = 7;
+    static final int L0_COMPACTION_TRIGGER = 4;
+    static final int L0_STALL_TRIGGER = 12;
+    static final int MAX_IMMUTABLE_MEMTABLES = 2;
+    static final int LEVEL_SIZE_RATIO = 10;
+
+    // every write copies its root-to-leaf path, which favours smaller nodes than a mutable tree would use
+    private static final int MEMTABLE_DEGREE = 32;
+    private static final int ENTRY_OVERHEAD = 32;
+    private static final String MANIFEST_FILE = "MANIFEST";
+    private static final String TABLE_SUFFIX = ".sst";
+    private static final int MANIFEST_MAGIC = 0x4c534d4d;
+    private static final int MANIFEST_FORMAT_VERSION = 1;
+    private static final int MANIFEST_HEADER_SIZE = 20;
+
+    private final Path directory;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final int memtableSize;
+    private final Thread backgroundThread;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final byte[][] compactPointers = new byte[MAX_LEVELS][];
+
+    // guarded by lock; immutables and levels are replaced rather than modified, so readers may keep a snapshot
+    private CopyOnWriteBPlusTree<byte[], byte[]> memtable = newMemtable();
+    private int memtableBytes;
+    private List<CopyOnWriteBPlusTree.Snapshot<byte[], byte[]>> immutables = List.of();
+    private List<List<SSTable>> levels;
+    private boolean closed;
+    private RuntimeException failure;
+
+    // only touched by the constructor and the background thread
+    private long nextTableNumber;
+}
+
+// entries of a level's disjoint tables one table after the other
+class LevelIterator implements Iterator<Pair<byte[], byte[]>> {
+    LevelIterator(List<SSTable> tables, byte[] fromKey) {
+        this.tables = tables;
+        if (fromKey != null) {
+            var index = 0;
+            while (index < tables.size() && SSTable.compareKeys(tables.get(index).lastKey(), fromKey) < 0) {
+                index++;
+            }
+            this.index = index;
+        }
+        this.fromKey = fromKey;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while ((current == null || !current.hasNext()) && index < tables.size()) {
+            current = tables.get(index++).iterator(fromKey);
+        }
+        return current != null && current.hasNext();
+    }
+
+    @Override
+    public Pair<byte[], byte[]> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    private final List<SSTable> tables;
+    private final byte[] fromKey;
+    private int index;
+    private Iterator<Pair<byte[], byte[]>> current;
+}
+
+// merges sorted sources into one, a key present in several sources comes from the earliest of them in the list
+class MergingIterator implements Iterator<Pair<byte[], byte[]>> {
+    MergingIterator(List<Iterator<Pair<byte[], byte[]>>> sources, boolean dropTombstones) {
+        this.dropTombstones = dropTombstones;
+        for (var i = 0; i < sources.size(); i++) {
+            var cursor = new Cursor(i, sources.get(i));
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+        advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public Pair<byte[], byte[]> next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        var ret = next;
+        advance();
+        return ret;
+    }
+
+    private void advance() {
+        next = null;
+        while (next == null && !heap.isEmpty()) {
+            var top = heap.poll();
+            var entry = top.head;
+            if (top.advance()) {
+                heap.add(top);
+            }
+            while (!heap.isEmpty() && SSTable.compareKeys(heap.peek().head.getFirst(), entry.getFirst()) == 0) {
+                var shadowed = heap.poll();
+                if (shadowed.advance()) {
+                    heap.add(shadowed);
+                }
+            }
+            if (!dropTombstones || entry.getSecond() != SSTable.TOMBSTONE) {
+                next = entry;
+            }
+        }
+    }
+
+    private static class Cursor {
+        Cursor(int rank, Iterator<Pair<byte[], byte[]>> source) {
+            this.rank = rank;
+            this.source = source;
+        }
+
+        boolean advance() {
+            head = source.hasNext() ? source.next() : null;
+            return head != null;
+        }
+
+        final int rank;
+        final Iterator<Pair<byte[], byte[]>> source;
+        Pair<byte[], byte[]> head;
+    }
+
+    private final boolean dropTombstones;
+    private final PriorityQueue<Cursor> heap = new PriorityQueue<>((lhs, rhs) -> {
+        var cmp = SSTable.compareKeys(lhs.head.getFirst(), rhs.head.getFirst());
+        return cmp != 0 ? cmp : Integer.compare(lhs.rank, rhs.rank);
+    });
+    private Pair<byte[], byte[]> next;
+}
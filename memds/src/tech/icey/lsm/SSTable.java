@@ -0,0 +1,265 @@
+package tech.icey.lsm;
+
+import tech.icey.basic.Pair;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * An immutable sorted run of entries, written once by a flush or a compaction and only read afterwards:
+ *
+ *   data    entries packed into blocks of about BLOCK_SIZE bytes,
+ *           [int key length][key][int value length, or TOMBSTONE_LENGTH for a delete][value]
+ *   index   one entry per block, [int block offset][int key length][first key of the block]
+ *           then [int key length][last key of the table]
+ *   footer  [int index offset][int block count][int magic][int format version]
+ *
+ * Blocks follow each other without gaps, so a scan simply walks the data area. The index is loaded when the table
+ * is opened, a lookup binary searches it and scans a single block. The file is mapped and only read with absolute
+ * gets, so any number of threads can read a table at once, and a reader still holding a table keeps seeing it after
+ * a compaction deleted the file.
+ */
+class SSTable {
+    private SSTable(long number, ByteBuffer buffer, int dataEnd, int[] blockOffsets, byte[][] firstKeys,
+                    byte[] lastKey) {
+        this.number = number;
+        this.buffer = buffer;
+        this.dataEnd = dataEnd;
+        this.blockOffsets = blockOffsets;
+        this.firstKeys = firstKeys;
+        this.lastKey = lastKey;
+    }
+
+    // writes entries, which must be sorted and non-empty, until the data passes targetSize bytes or runs out
+    static SSTable write(Path path, long number, Iterator<Pair<byte[], byte[]>> entries, long targetSize)
+            throws IOException {
+        var blockOffsets = new ArrayList<Integer>();
+        var firstKeys = new ArrayList<byte[]>();
+        byte[] lastKey = null;
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                            StandardOpenOption.TRUNCATE_EXISTING)) {
+            var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            var blockStart = 0;
+            while (entries.hasNext() && out.size() < targetSize) {
+                var entry = entries.next();
+                if (lastKey == null || out.size() - blockStart >= BLOCK_SIZE) {
+                    blockStart = out.size();
+                    blockOffsets.add(blockStart);
+                    firstKeys.add(entry.getFirst());
+                }
+                out.writeInt(entry.getFirst().length);
+                out.write(entry.getFirst());
+                if (entry.getSecond() == TOMBSTONE) {
+                    out.writeInt(TOMBSTONE_LENGTH);
+                } else {
+                    out.writeInt(entry.getSecond().length);
+                    out.write(entry.getSecond());
+                }
+                lastKey = entry.getFirst();
+            }
+            if (lastKey == null) {
+                throw new IllegalArgumentException("an SSTable needs at least one entry");
+            }
+
+            var indexOffset = out.size();
+            for (var i = 0; i < blockOffsets.size(); i++) {
+                out.writeInt(blockOffsets.get(i));
+                out.writeInt(firstKeys.get(i).length);
+                out.write(firstKeys.get(i));
+            }
+            out.writeInt(lastKey.length);
+            out.write(lastKey);
+            out.writeInt(indexOffset);
+            out.writeInt(blockOffsets.size());
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.flush();
+            channel.force(true);
+        }
+        return open(path, number);
+    }
+
+    static SSTable open(Path path, long number) throws IOException {
+        ByteBuffer buffer;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < FOOTER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is not a valid SSTable");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        var footer = buffer.capacity() - FOOTER_SIZE;
+        if (buffer.getInt(footer + 8) != MAGIC) {
+            throw new IOException(path + " is not a valid SSTable");
+        }
+        if (buffer.getInt(footer + 12) != FORMAT_VERSION) {
+            throw new IOException(path + " has format version " + buffer.getInt(footer + 12)
+                                  + ", expected " + FORMAT_VERSION);
+        }
+
+        var indexOffset = buffer.getInt(footer);
+        var blockCount = buffer.getInt(footer + 4);
+        var blockOffsets = new int[blockCount];
+        var firstKeys = new byte[blockCount][];
+        var position = indexOffset;
+        for (var i = 0; i < blockCount; i++) {
+            blockOffsets[i] = buffer.getInt(position);
+            firstKeys[i] = readBytes(buffer, position + 8, buffer.getInt(position + 4));
+            position += 8 + firstKeys[i].length;
+        }
+        var lastKey = readBytes(buffer, position + 4, buffer.getInt(position));
+        return new SSTable(number, buffer, indexOffset, blockOffsets, firstKeys, lastKey);
+    }
+
+    long number() {
+        return number;
+    }
+
+    long sizeInBytes() {
+        return buffer.capacity();
+    }
+
+    byte[] firstKey() {
+        return firstKeys[0];
+    }
+
+    byte[] lastKey() {
+        return lastKey;
+    }
+
+    // the value stored for key, TOMBSTONE if it was deleted, null if this table knows nothing about it
+    byte[] get(byte[] key) {
+        if (compareKeys(key, lastKey) > 0) {
+            return null;
+        }
+        var block = findBlock(key);
+        if (block < 0) {
+            return null;
+        }
+
+        var position = blockOffsets[block];
+        var end = block + 1 < blockOffsets.length ? blockOffsets[block + 1] : dataEnd;
+        while (position < end) {
+            var keyLength = buffer.getInt(position);
+            var cmp = compareKey(position + 4, keyLength, key);
+            var valueLength = buffer.getInt(position + 4 + keyLength);
+            if (cmp == 0) {
+                return valueLength == TOMBSTONE_LENGTH
+                       ? TOMBSTONE
+                       : readBytes(buffer, position + 8 + keyLength, valueLength);
+            } else if (cmp > 0) {
+                return null;
+            }
+            position += 8 + keyLength + Math.max(valueLength, 0);
+        }
+        return null;
+    }
+
+    // entries with keys >= fromKey in order, tombstones included, a null fromKey starts at the first entry
+    Iterator<Pair<byte[], byte[]>> iterator(byte[] fromKey) {
+        return new EntryIterator(fromKey);
+    }
+
+    static int compareKeys(byte[] lhs, byte[] rhs) {
+        return Arrays.compareUnsigned(lhs, rhs);
+    }
+
+    // index of the last block whose first key is <= key, -1 if key sorts before the whole table
+    private int findBlock(byte[] key) {
+        var low = 0;
+        var high = firstKeys.length - 1;
+        while (low <= high) {
+            var mid = (low + high) >>> 1;
+            if (compareKeys(firstKeys[mid], key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    private int compareKey(int offset, int length, byte[] key) {
+        var common = Math.min(length, key.length);
+        for (var i = 0; i < common; i++) {
+            var cmp = Byte.compareUnsigned(buffer.get(offset + i), key[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer, int offset, int length) {
+        var bytes = new byte[length];
+        buffer.get(offset, bytes, 0, length);
+        return bytes;
+    }
+
+    private class EntryIterator implements Iterator<Pair<byte[], byte[]>> {
+        EntryIterator(byte[] fromKey) {
+            if (fromKey == null) {
+                return;
+            }
+            position = blockOffsets[Math.max(findBlock(fromKey), 0)];
+            while (position < dataEnd && compareKey(position + 4, buffer.getInt(position), fromKey) < 0) {
+                skipEntry();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < dataEnd;
+        }
+
+        @Override
+        public Pair<byte[], byte[]> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            var keyLength = buffer.getInt(position);
+            var key = readBytes(buffer, position + 4, keyLength);
+            var valueLength = buffer.getInt(position + 4 + keyLength);
+            var value = valueLength == TOMBSTONE_LENGTH
+                        ? TOMBSTONE
+                        : readBytes(buffer, position + 8 + keyLength, valueLength);
+            skipEntry();
+            return new Pair<>(key, value);
+        }
+
+        private void skipEntry() {
+            var keyLength = buffer.getInt(position);
+            position += 8 + keyLength + Math.max(buffer.getInt(position + 4 + keyLength), 0);
+        }
+
+        private int position;
+    }
+
+    // stands for a deleted key in memtables and in what tables hand out, told apart from real values by identity
+    static final byte[] TOMBSTONE = new byte[0];
+
+    static final int BLOCK_SIZE = 4096;
+
+    private static final int TOMBSTONE_LENGTH = -1;
+    private static final int FOOTER_SIZE = 16;
+    private static final int MAGIC = 0x53535442;
+    private static final int FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long number;
+    private final ByteBuffer buffer;
+    private final int dataEnd;
+    private final int[] blockOffsets;
+    private final byte[][] firstKeys;
+    private final byte[] lastKey;
+}
@@ -0,0 +1,195 @@
+package tech.icey.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Counters and shape gauges for one tree. The tree only touches this object once metrics are enabled on it, so a tree
+ * without metrics pays nothing but a null check per structural change. Counters are LongAdders so a tree shared by
+ * several threads does not turn them into a contention point, and gauges are maintained from the same events instead
+ * of walking the tree, so reading them through JMX never races with writers.
+ *
+ * The fill factor is entries per entry-holding node over nodeCapacity: leaves for B+ trees, every node for B trees.
+ */
+public class TreeMetrics implements TreeMetricsMBean {
+    public TreeMetrics(String type, int nodeCapacity, boolean entriesInLeavesOnly) {
+        this.type = type;
+        this.nodeCapacity = nodeCapacity;
+        this.entriesInLeavesOnly = entriesInLeavesOnly;
+    }
+
+    // sets the gauges from a walk of the tree, called when metrics are enabled on a tree that already has contents
+    public void initShape(int height, long nodeCount, long leafCount, long entryCount) {
+        this.height = height;
+        this.nodeCount.reset();
+        this.nodeCount.add(nodeCount);
+        this.leafCount.reset();
+        this.leafCount.add(leafCount);
+        this.entryCount.reset();
+        this.entryCount.add(entryCount);
+    }
+
+    public <T> Comparator<T> countingComparator(Comparator<T> comparator) {
+        return (lhs, rhs) -> {
+            comparisons.increment();
+            return comparator.compare(lhs, rhs);
+        };
+    }
+
+    public void recordInsert() {
+        inserts.increment();
+    }
+
+    public void recordDelete() {
+        deletes.increment();
+    }
+
+    public void recordLookup() {
+        lookups.increment();
+    }
+
+    public void recordEntries(long delta) {
+        entryCount.add(delta);
+    }
+
+    public void recordSplit(boolean leaf, int newNodes) {
+        splits.add(newNodes);
+        nodeCount.add(newNodes);
+        if (leaf) {
+            leafCount.add(newNodes);
+        }
+    }
+
+    public void recordMerge(boolean leaf) {
+        merges.increment();
+        nodeCount.decrement();
+        if (leaf) {
+            leafCount.decrement();
+        }
+    }
+
+    public void recordRebalance() {
+        rebalances.increment();
+    }
+
+    public synchronized void recordRootSplit() {
+        nodeCount.increment();
+        height++;
+    }
+
+    public synchronized void recordRootCollapse() {
+        nodeCount.decrement();
+        height--;
+    }
+
+    public ObjectName register(String name) {
+        try {
+            var objectName = new ObjectName("tech.icey.ds:type=" + type + ",name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalArgumentException("cannot register metrics as " + name, e);
+        }
+    }
+
+    public void unregister(ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalArgumentException("cannot unregister " + objectName, e);
+        }
+    }
+
+    @Override
+    public long getInserts() {
+        return inserts.sum();
+    }
+
+    @Override
+    public long getDeletes() {
+        return deletes.sum();
+    }
+
+    @Override
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    @Override
+    public long getSplits() {
+        return splits.sum();
+    }
+
+    @Override
+    public long getMerges() {
+        return merges.sum();
+    }
+
+    @Override
+    public long getRebalances() {
+        return rebalances.sum();
+    }
+
+    @Override
+    public long getComparisons() {
+        return comparisons.sum();
+    }
+
+    @Override
+    public double getComparisonsPerOperation() {
+        var operations = inserts.sum() + deletes.sum() + lookups.sum();
+        return operations == 0 ? 0.0 : (double)comparisons.sum() / operations;
+    }
+
+    @Override
+    public synchronized int getHeight() {
+        return height;
+    }
+
+    @Override
+    public long getNodeCount() {
+        return nodeCount.sum();
+    }
+
+    @Override
+    public long getEntryCount() {
+        return entryCount.sum();
+    }
+
+    @Override
+    public double getAverageFillFactor() {
+        var holders = entriesInLeavesOnly ? leafCount.sum() : nodeCount.sum();
+        return holders == 0 ? 0.0 : (double)entryCount.sum() / (holders * nodeCapacity);
+    }
+
+    @Override
+    public void resetCounters() {
+        inserts.reset();
+        deletes.reset();
+        lookups.reset();
+        splits.reset();
+        merges.reset();
+        rebalances.reset();
+        comparisons.reset();
+    }
+
+    private final String type;
+    private final int nodeCapacity;
+    private final boolean entriesInLeavesOnly;
+
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder deletes = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder splits = new LongAdder();
+    private final LongAdder merges = new LongAdder();
+    private final LongAdder rebalances = new LongAdder();
+    private final LongAdder comparisons = new LongAdder();
+
+    private final LongAdder nodeCount = new LongAdder();
+    private final LongAdder leafCount = new LongAdder();
+    private final LongAdder entryCount = new LongAdder();
+    private int height;
+}
@@ -0,0 +1,19 @@
+package tech.icey.metrics;
+
+public interface TreeMetricsMBean {
+    long getInserts();
+    long getDeletes();
+    long getLookups();
+    long getSplits();
+    long getMerges();
+    long getRebalances();
+    long getComparisons();
+    double getComparisonsPerOperation();
+
+    int getHeight();
+    long getNodeCount();
+    long getEntryCount();
+    double getAverageFillFactor();
+
+    void resetCounters();
+}
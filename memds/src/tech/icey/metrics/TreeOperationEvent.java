@@ -0,0 +1,50 @@
+package tech.icey.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/*
+ * Recorded for tree operations slower than the threshold, 1 ms unless the recording settings say otherwise, e.g.
+ * tech.icey.TreeOperation#threshold=100 us. Trees only fill in the fields once shouldCommit() says the event will be
+ * kept, and only create the event while it is enabled, so with recording off an operation pays for one
+ * EventType.isEnabled() check.
+ */
+@Name("tech.icey.TreeOperation")
+@Label("Tree Operation")
+@Category({ "memds", "Tree" })
+@Description("An insert, delete or lookup that took longer than the threshold, with the restructuring it caused")
+@Threshold("1 ms")
+public class TreeOperationEvent extends Event {
+    @Label("Tree")
+    public String tree;
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Key Size")
+    @Description("Length of a String or byte[] key, -1 for other key types")
+    public int keySize;
+
+    @Label("Levels Split")
+    public int levelsSplit;
+
+    @Label("Levels Merged")
+    public int levelsMerged;
+
+    @Label("Nodes Allocated")
+    @Description("Nodes created by the operation, not counting ones taken from a node pool")
+    public int nodesAllocated;
+
+    public static int keySize(Object key) {
+        if (key instanceof CharSequence) {
+            return ((CharSequence)key).length();
+        } else if (key instanceof byte[]) {
+            return ((byte[])key).length;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,23 @@
+package tech.icey.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("tech.icey.TreeRootChange")
+@Label("Tree Root Change")
+@Category({ "memds", "Tree" })
+@Description("The tree grew a new root after a split reached the old one, or lost its root after a merge emptied it")
+public class TreeRootChangeEvent extends Event {
+    @Label("Tree")
+    public String tree;
+
+    @Label("Grew")
+    public boolean grew;
+
+    @Label("Height")
+    @Description("Height of the tree after the change")
+    public int height;
+}
@@ -0,0 +1,193 @@
+package tech.icey.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Page 0 of the file is the superblock:
+ *
+ *   0  int  magic
+ *   4  int  format version
+ *   8  int  page size
+ *  12  int  number of pages in the file, superblock included
+ *  16  int  root page id
+ *  20  int  head of the free page list, freed pages link to the next one through their first int
+ *  24  int  CLEAN if every page was on disk when it was written, DIRTY otherwise
+ *
+ * Pages are rewritten in place and the OS writes mapped pages back in any order, so a crash in the middle of changes
+ * leaves a file that cannot be trusted. The first change after opening or flushing therefore forces DIRTY to disk
+ * before touching a page, flush() and close() put CLEAN back once every chunk has been forced, and opening refuses a
+ * file that is still DIRTY.
+ */
+public class MappedPageStore implements PageStore {
+    public MappedPageStore(Path path, int pageSize, int pagesPerChunk) throws IOException {
+        if (pagesPerChunk <= 0 || (long)pageSize * pagesPerChunk > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid chunk size: " + pagesPerChunk + " pages of " + pageSize);
+        }
+        this.pageSize = pageSize;
+        this.pagesPerChunk = pagesPerChunk;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+
+        try {
+            var fresh = channel.size() == 0;
+            if (!fresh) {
+                checkSuperblock(path);
+            }
+            // only mapped once the checks have passed, mapping grows the file to a whole chunk
+            this.superblock = chunk(0);
+            if (fresh) {
+                superblock.putInt(MAGIC_OFFSET, MAGIC);
+                superblock.putInt(VERSION_OFFSET, FORMAT_VERSION);
+                superblock.putInt(PAGE_SIZE_OFFSET, pageSize);
+                superblock.putInt(PAGE_COUNT_OFFSET, 1);
+                superblock.putInt(ROOT_OFFSET, NO_PAGE);
+                superblock.putInt(FREE_LIST_OFFSET, NO_PAGE);
+                superblock.putInt(STATE_OFFSET, DIRTY);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int pageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public int allocatePage() {
+        var freeListHead = superblock.getInt(FREE_LIST_OFFSET);
+        if (freeListHead != NO_PAGE) {
+            superblock.putInt(FREE_LIST_OFFSET, buffer(freeListHead).getInt(offset(freeListHead)));
+            return freeListHead;
+        }
+        var pageId = superblock.getInt(PAGE_COUNT_OFFSET);
+        superblock.putInt(PAGE_COUNT_OFFSET, pageId + 1);
+        return pageId;
+    }
+
+    @Override
+    public void freePage(int pageId) {
+        buffer(pageId).putInt(offset(pageId), superblock.getInt(FREE_LIST_OFFSET));
+        superblock.putInt(FREE_LIST_OFFSET, pageId);
+    }
+
+    @Override
+    public ByteBuffer buffer(int pageId) {
+        return chunk(pageId / pagesPerChunk);
+    }
+
+    @Override
+    public int offset(int pageId) {
+        return pageId % pagesPerChunk * pageSize;
+    }
+
+    @Override
+    public int rootPageId() {
+        return superblock.getInt(ROOT_OFFSET);
+    }
+
+    @Override
+    public void setRootPageId(int pageId) {
+        superblock.putInt(ROOT_OFFSET, pageId);
+    }
+
+    @Override
+    public void beginWrite() {
+        if (superblock.getInt(STATE_OFFSET) != DIRTY) {
+            superblock.putInt(STATE_OFFSET, DIRTY);
+            superblock.force();
+        }
+    }
+
+    public int pageCount() {
+        return superblock.getInt(PAGE_COUNT_OFFSET);
+    }
+
+    // the superblock goes last, so CLEAN only reaches the disk after the pages it vouches for
+    public void flush() {
+        for (var chunk : chunks) {
+            if (chunk != null) {
+                chunk.force();
+            }
+        }
+        if (superblock.getInt(STATE_OFFSET) != CLEAN) {
+            superblock.putInt(STATE_OFFSET, CLEAN);
+            superblock.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        chunks.clear();
+        channel.close();
+    }
+
+    // read through the channel rather than a mapping, which would grow a file that turns out not to be a page file
+    private void checkSuperblock(Path path) throws IOException {
+        if (channel.size() < pageSize) {
+            throw new IOException(path + " is not a page file");
+        }
+        var header = ByteBuffer.allocate(SUPERBLOCK_SIZE);
+        while (header.hasRemaining()) {
+            channel.read(header, header.position());
+        }
+        if (header.getInt(MAGIC_OFFSET) != MAGIC) {
+            throw new IOException(path + " is not a page file");
+        } else if (header.getInt(VERSION_OFFSET) != FORMAT_VERSION) {
+            throw new IOException(path + " has format version " + header.getInt(VERSION_OFFSET)
+                                  + ", expected " + FORMAT_VERSION);
+        } else if (header.getInt(PAGE_SIZE_OFFSET) != pageSize) {
+            throw new IOException(path + " has page size " + header.getInt(PAGE_SIZE_OFFSET)
+                                  + ", expected " + pageSize);
+        } else if (header.getInt(STATE_OFFSET) != CLEAN) {
+            throw new IOException(path + " was not flushed or closed after its last change and may be inconsistent");
+        }
+    }
+
+    private MappedByteBuffer chunk(int chunkIndex) {
+        while (chunks.size() <= chunkIndex) {
+            chunks.add(null);
+        }
+        var chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            try {
+                var chunkSize = (long)pageSize * pagesPerChunk;
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkIndex * chunkSize, chunkSize);
+            } catch (IOException e) {
+                throw new StorageException("failed to map chunk " + chunkIndex, e);
+            }
+            chunks.set(chunkIndex, chunk);
+        }
+        return chunk;
+    }
+
+    public static final int FORMAT_VERSION = 3;
+
+    private static final int MAGIC = 0x53435054;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int PAGE_SIZE_OFFSET = 8;
+    private static final int PAGE_COUNT_OFFSET = 12;
+    private static final int ROOT_OFFSET = 16;
+    private static final int FREE_LIST_OFFSET = 20;
+    private static final int STATE_OFFSET = 24;
+    private static final int SUPERBLOCK_SIZE = 28;
+    private static final int CLEAN = 1;
+    private static final int DIRTY = 2;
+
+    private final int pageSize;
+    private final int pagesPerChunk;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final MappedByteBuffer superblock;
+}
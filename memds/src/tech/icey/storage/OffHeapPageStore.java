@@ -0,0 +1,71 @@
+package tech.icey.storage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class OffHeapPageStore implements PageStore {
+    public OffHeapPageStore(int pageSize, int pagesPerChunk) {
+        if (pagesPerChunk <= 0 || (long)pageSize * pagesPerChunk > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid chunk size: " + pagesPerChunk + " pages of " + pageSize);
+        }
+        this.pageSize = pageSize;
+        this.pagesPerChunk = pagesPerChunk;
+    }
+
+    @Override
+    public int pageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public int allocatePage() {
+        if (freeListHead != NO_PAGE) {
+            var pageId = freeListHead;
+            freeListHead = buffer(pageId).getInt(offset(pageId));
+            return pageId;
+        }
+        if (nextPageId == chunks.size() * pagesPerChunk) {
+            chunks.add(ByteBuffer.allocateDirect(pageSize * pagesPerChunk));
+        }
+        return nextPageId++;
+    }
+
+    @Override
+    public void freePage(int pageId) {
+        buffer(pageId).putInt(offset(pageId), freeListHead);
+        freeListHead = pageId;
+    }
+
+    @Override
+    public ByteBuffer buffer(int pageId) {
+        return chunks.get(pageId / pagesPerChunk);
+    }
+
+    @Override
+    public int offset(int pageId) {
+        return pageId % pagesPerChunk * pageSize;
+    }
+
+    @Override
+    public int rootPageId() {
+        return rootPageId;
+    }
+
+    @Override
+    public void setRootPageId(int pageId) {
+        this.rootPageId = pageId;
+    }
+
+    @Override
+    public void close() {
+        chunks.clear();
+    }
+
+    private final int pageSize;
+    private final int pagesPerChunk;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private int nextPageId = 0;
+    private int freeListHead = NO_PAGE;
+    private int rootPageId = NO_PAGE;
+}
@@ -0,0 +1,28 @@
+package tech.icey.storage;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+public interface PageStore extends Closeable {
+    int NO_PAGE = -1;
+
+    int pageSize();
+
+    int allocatePage();
+
+    void freePage(int pageId);
+
+    // the buffer holding the page, to be accessed with absolute gets and puts starting at offset(pageId)
+    ByteBuffer buffer(int pageId);
+
+    int offset(int pageId);
+
+    int rootPageId();
+
+    void setRootPageId(int pageId);
+
+    // called before a tree starts changing pages, so a store that records whether its file is consistent can mark it
+    // as being modified first
+    default void beginWrite() {
+    }
+}
@@ -0,0 +1,12 @@
+package tech.icey.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+public class StorageException extends UncheckedIOException {
+    public StorageException(String message, IOException cause) {
+        super(message, cause);
+    }
+
+    private static final long serialVersionUID = 1L;
+}
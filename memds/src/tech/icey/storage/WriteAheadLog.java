@@ -0,0 +1,242 @@
+package tech.icey.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/*
+ * Records are appended back to back:
+ *
+ *   0  int  payload length
+ *   4  int  CRC32 of the payload
+ *   8       payload
+ *
+ * A record cut short or failing its checksum can only be the tail of an append interrupted by a crash, so replay
+ * stops there and truncates it away.
+ *
+ * Appending only copies the record into memory and hands back its LSN, the logical end offset of the record.
+ * sync(lsn) makes it durable with group commit: the first waiter becomes the leader, writes out everything appended
+ * so far and forces it with one FileChannel.force, while every writer whose record was in that batch simply waits
+ * for it. Writers arriving during the force are picked up by the next leader in one batch.
+ */
+public class WriteAheadLog implements Closeable {
+    public WriteAheadLog(Path path, Consumer<ByteBuffer> replayHandler) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+        try {
+            this.filePosition = replay(replayHandler);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.appendedLsn = filePosition;
+        this.durableLsn = filePosition;
+    }
+
+    public long append(byte[] payload) {
+        var crc = new CRC32();
+        crc.update(payload);
+
+        lock.lock();
+        try {
+            checkUsable();
+            ensurePendingCapacity(HEADER_SIZE + payload.length);
+            var header = ByteBuffer.wrap(pending, pendingLength, HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            header.putInt(payload.length);
+            header.putInt((int)crc.getValue());
+            System.arraycopy(payload, 0, pending, pendingLength + HEADER_SIZE, payload.length);
+            pendingLength += HEADER_SIZE + payload.length;
+            appendedLsn += HEADER_SIZE + payload.length;
+            return appendedLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void sync(long lsn) {
+        lock.lock();
+        try {
+            while (durableLsn < lsn) {
+                checkUsable();
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+
+                syncing = true;
+                var batch = pending;
+                var batchLength = pendingLength;
+                var batchLsn = appendedLsn;
+                pending = spare;
+                pendingLength = 0;
+                spare = batch;
+
+                IOException ioFailure = null;
+                lock.unlock();
+                try {
+                    writeFully(ByteBuffer.wrap(batch, 0, batchLength), filePosition);
+                    channel.force(false);
+                } catch (IOException e) {
+                    ioFailure = e;
+                } finally {
+                    lock.lock();
+                }
+
+                syncing = false;
+                if (ioFailure != null) {
+                    failure = new StorageException("failed to write the write-ahead log", ioFailure);
+                } else {
+                    filePosition += batchLength;
+                    durableLsn = batchLsn;
+                    syncCount++;
+                }
+                synced.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long lastLsn() {
+        lock.lock();
+        try {
+            return appendedLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // bytes in the log, including records not yet synced
+    public long size() {
+        lock.lock();
+        try {
+            return filePosition + pendingLength;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // number of forces so far, each of which may have covered many records
+    public long syncCount() {
+        lock.lock();
+        try {
+            return syncCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // drops every record once they are all durable, callers make sure nothing is appended concurrently
+    public void truncate() {
+        sync(lastLsn());
+        lock.lock();
+        try {
+            while (syncing) {
+                synced.awaitUninterruptibly();
+            }
+            if (pendingLength != 0) {
+                throw new IllegalStateException("records were appended while the log was being truncated");
+            }
+            channel.truncate(0);
+            channel.force(true);
+            filePosition = 0;
+        } catch (IOException e) {
+            throw new StorageException("failed to truncate the write-ahead log", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sync(lastLsn());
+        } finally {
+            channel.close();
+        }
+    }
+
+    private long replay(Consumer<ByteBuffer> replayHandler) throws IOException {
+        var size = channel.size();
+        var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        var position = 0L;
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            var length = header.getInt(0);
+            var checksum = header.getInt(4);
+            if (length < 0 || position + HEADER_SIZE + length > size) {
+                break;
+            }
+
+            var payload = ByteBuffer.allocate(length);
+            readFully(payload, position + HEADER_SIZE);
+            var crc = new CRC32();
+            crc.update(payload.array());
+            if ((int)crc.getValue() != checksum) {
+                break;
+            }
+            replayHandler.accept(payload.flip().asReadOnlyBuffer());
+            position += HEADER_SIZE + length;
+        }
+
+        if (position != size) {
+            channel.truncate(position);
+            channel.force(true);
+        }
+        return position;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of write-ahead log");
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private void ensurePendingCapacity(int extra) {
+        if (pendingLength + extra > pending.length) {
+            var newPending = new byte[Math.max(pending.length * 2, pendingLength + extra)];
+            System.arraycopy(pending, 0, newPending, 0, pendingLength);
+            pending = newPending;
+        }
+    }
+
+    private void checkUsable() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static final int HEADER_SIZE = 8;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+
+    private byte[] pending = new byte[INITIAL_BUFFER_SIZE];
+    private byte[] spare = new byte[INITIAL_BUFFER_SIZE];
+    private int pendingLength;
+    private long filePosition;
+    private long appendedLsn;
+    private long durableLsn;
+    private boolean syncing;
+    private long syncCount;
+    private StorageException failure;
+}
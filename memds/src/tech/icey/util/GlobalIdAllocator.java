@@ -1,13 +1,14 @@
 package tech.icey.util;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class GlobalIdAllocator {
     private static GlobalIdAllocator instance = new GlobalIdAllocator();
 
-    private int id = 0;
+    private final AtomicInteger id = new AtomicInteger();
 
     public int nextId() {
-        this.id++;
-        return this.id;
+        return id.incrementAndGet();
     }
 
     public static GlobalIdAllocator getInstance() {
@@ -0,0 +1,54 @@
+package tech.icey.basic;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+class CodecsTest {
+    @Test
+    void stringOrderMatchesCompareTo() {
+        // U+E000..U+FFFF sort before supplementary characters by UTF-16 code unit but after them by code point
+        var values = new ArrayList<>(List.of("", "a", "ab", "\u0000", "\u007F", "\u0080", "\u07FF", "\u0800",
+                                             "\uD7FF", "\uE000", "\uFFFF", "\uD83D\uDE00", "\uD800\uDC00x",
+                                             "\uDBFF\uDFFF", "caf\u00E9"));
+        var r = new Random();
+        for (var i = 0; i < 2000; i++) {
+            var chars = new char[r.nextInt(6)];
+            for (var j = 0; j < chars.length; j++) {
+                chars[j] = (char)r.nextInt(0x10000);
+            }
+            values.add(new String(chars));
+        }
+
+        for (var lhs : values) {
+            var lhsBytes = Codecs.STRING.encode(lhs);
+            Assertions.assertEquals(lhs, Codecs.STRING.decode(ByteBuffer.wrap(lhsBytes), 0, lhsBytes.length));
+            for (var rhs : values.subList(0, 40)) {
+                var rhsBytes = Codecs.STRING.encode(rhs);
+                Assertions.assertEquals(Integer.signum(lhs.compareTo(rhs)),
+                                        Integer.signum(Arrays.compareUnsigned(lhsBytes, rhsBytes)));
+            }
+        }
+    }
+
+    @Test
+    void numbersOrderLikeTheirValues() {
+        var longs = new long[] { Long.MIN_VALUE, -1L << 40, -1, 0, 1, 255, 256, 1L << 40, Long.MAX_VALUE };
+        for (var i = 0; i + 1 < longs.length; i++) {
+            Assertions.assertTrue(Arrays.compareUnsigned(Codecs.LONG.encode(longs[i]),
+                                                         Codecs.LONG.encode(longs[i + 1])) < 0);
+            var bytes = Codecs.LONG.encode(longs[i]);
+            Assertions.assertEquals((Long)longs[i], Codecs.LONG.decode(ByteBuffer.wrap(bytes), 0, bytes.length));
+        }
+        var ints = new int[] { Integer.MIN_VALUE, -65536, -1, 0, 1, 65536, Integer.MAX_VALUE };
+        for (var i = 0; i + 1 < ints.length; i++) {
+            Assertions.assertTrue(Arrays.compareUnsigned(Codecs.INT.encode(ints[i]),
+                                                         Codecs.INT.encode(ints[i + 1])) < 0);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package tech.icey.ds;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tech.icey.basic.ListUtil;
+import tech.icey.basic.Pair;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class BPlusTreeCompactorTest {
+    @Test
+    void compactsSparseLeavesDegree16() {
+        testCompaction(16);
+    }
+
+    @Test
+    void compactsSparseLeavesDegree4() {
+        testCompaction(4);
+    }
+
+    @Test
+    void toleratesChangesBetweenSlices() {
+        var r = new Random();
+        var bplustree = new BPlusTree<String, String>(6);
+        var map = new TreeMap<String, String>();
+        var compactor = new BPlusTreeCompactor<>(bplustree, 0.5, Duration.ZERO);
+        for (var i = 0; i < 20000; i++) {
+            var key = Integer.toString(r.nextInt(3000));
+            if (r.nextInt(2) == 0) {
+                bplustree.insert(key, key);
+                map.put(key, key);
+            } else {
+                Assertions.assertEquals(map.remove(key) != null, bplustree.delete(key));
+            }
+            compactor.run();
+        }
+        Assertions.assertTrue(compactor.passes() > 0);
+        assertArrayEquals(ListUtil.flatten(map).toArray(), bplustree.traverse().toArray());
+    }
+
+    void testCompaction(int degree) {
+        var bplustree = new BPlusTree<String, String>(degree);
+        var map = new TreeMap<String, String>();
+        for (var key : BPlusTreeTest.getRandomKeySequence(20000)) {
+            bplustree.insert(key, key);
+            map.put(key, key);
+        }
+        var r = new Random();
+        for (var key : BPlusTreeTest.getRandomKeySequence(20000)) {
+            if (r.nextInt(10) != 0) {
+                bplustree.delete(key);
+                map.remove(key);
+            }
+        }
+        var leavesBefore = leafCount(bplustree);
+
+        var compactor = new BPlusTreeCompactor<>(bplustree, 0.5, Duration.ofNanos(1));
+        var slices = 1;
+        while (!compactor.runSlice()) {
+            slices++;
+        }
+        Assertions.assertTrue(slices > 1);
+        Assertions.assertEquals(1, compactor.passes());
+
+        assertArrayEquals(ListUtil.flatten(map).toArray(), bplustree.traverse().toArray());
+        var descending = new ArrayList<Pair<String, String>>();
+        bplustree.descendingRange(null, null).forEachRemaining(descending::add);
+        Collections.reverse(descending);
+        assertArrayEquals(ListUtil.flatten(map).toArray(), descending.toArray());
+        for (var key : BPlusTreeTest.getRandomKeySequence(20000).subList(0, 2000)) {
+            Assertions.assertEquals(map.get(key), bplustree.get(key));
+        }
+
+        var minimum = (degree - 1 + 1) / 2;
+        var root = bplustree.rootNode();
+        for (var leaf = root.firstLeaf(); leaf != null; leaf = leaf.getRightSibling()) {
+            Assertions.assertTrue(leaf == root || leaf.size() >= minimum);
+        }
+        Assertions.assertTrue(leafCount(bplustree) * 2 < leavesBefore);
+    }
+
+    private static int leafCount(BPlusTree<String, String> bplustree) {
+        var ret = 0;
+        for (var leaf = bplustree.rootNode().firstLeaf(); leaf != null; leaf = leaf.getRightSibling()) {
+            ret++;
+        }
+        return ret;
+    }
+}
@@ -1,10 +1,18 @@
 package tech.icey.ds;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import tech.icey.basic.ListUtil;
+import tech.icey.basic.Monoid;
+import tech.icey.basic.Pair;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 
@@ -101,10 +109,630 @@ public class BPlusTreeTest {
         mixInsertAndDelete(20, 1000, 50);
     }
 
+    @Test
+    void lookupDegree3() {
+        testLookup(3, 1000);
+    }
+
+    @Test
+    void lookupDegree20() {
+        testLookup(20, 1000);
+    }
+
+    void testLookup(int degree, int size) {
+        var bplustree = new BPlusTree<String, String>(degree);
+        var map = new TreeMap<String, String>();
+        Assertions.assertNull(bplustree.firstEntry());
+        Assertions.assertNull(bplustree.lastEntry());
+        Assertions.assertNull(bplustree.floorEntry("5"));
+        Assertions.assertNull(bplustree.ceilingEntry("5"));
+
+        var keySequence = getRandomKeySequence(size);
+        var valueSequence = getRandomValueSequence(size);
+        for (var i = 0; i < size; i += 2) {
+            bplustree.insert(keySequence.get(i), valueSequence.get(i));
+            map.put(keySequence.get(i), valueSequence.get(i));
+        }
+        for (var i = 0; i < size / 4; i++) {
+            bplustree.delete(keySequence.get(i));
+            map.remove(keySequence.get(i));
+        }
+
+        for (var probe : getRandomKeySequence(size + 10)) {
+            Assertions.assertEquals(map.get(probe), bplustree.get(probe));
+            Assertions.assertEquals(map.containsKey(probe), bplustree.containsKey(probe));
+            assertEntryEquals(map.floorEntry(probe), bplustree.floorEntry(probe));
+            assertEntryEquals(map.ceilingEntry(probe), bplustree.ceilingEntry(probe));
+        }
+        assertEntryEquals(map.firstEntry(), bplustree.firstEntry());
+        assertEntryEquals(map.lastEntry(), bplustree.lastEntry());
+    }
+
+    @Test
+    void rangeDegree3() {
+        testRange(3, 500);
+    }
+
+    @Test
+    void rangeDegree20() {
+        testRange(20, 500);
+    }
+
+    void testRange(int degree, int size) {
+        var r = new Random();
+        var bplustree = new BPlusTree<String, String>(degree);
+        var map = new TreeMap<String, String>();
+        var keySequence = getRandomKeySequence(size);
+        var valueSequence = getRandomValueSequence(size);
+        for (var i = 0; i < size; i += 2) {
+            bplustree.insert(keySequence.get(i), valueSequence.get(i));
+            map.put(keySequence.get(i), valueSequence.get(i));
+        }
+
+        for (var i = 0; i < 200; i++) {
+            var fromKey = r.nextInt(10) == 0 ? null : Integer.toString(r.nextInt(size));
+            var toKey = r.nextInt(10) == 0 ? null : Integer.toString(r.nextInt(size));
+            if (fromKey != null && toKey != null && fromKey.compareTo(toKey) > 0) {
+                var t = fromKey;
+                fromKey = toKey;
+                toKey = t;
+            }
+            NavigableMap<String, String> subMap = map;
+            if (fromKey != null) {
+                subMap = subMap.tailMap(fromKey, true);
+            }
+            if (toKey != null) {
+                subMap = subMap.headMap(toKey, false);
+            }
+
+            var expected = ListUtil.flatten(new TreeMap<>(subMap));
+            var actual = new ArrayList<Pair<String, String>>();
+            bplustree.range(fromKey, toKey).forEachRemaining(actual::add);
+            assertArrayEquals(expected.toArray(), actual.toArray());
+
+            Collections.reverse(expected);
+            actual.clear();
+            bplustree.descendingRange(fromKey, toKey).forEachRemaining(actual::add);
+            assertArrayEquals(expected.toArray(), actual.toArray());
+        }
+    }
+
+    @Test
+    void bulkLoadDegree3() {
+        testBulkLoad(3, 1.0);
+        testBulkLoad(3, 0.5);
+    }
+
+    @Test
+    void bulkLoadDegree20() {
+        testBulkLoad(20, 1.0);
+        testBulkLoad(20, 0.7);
+    }
+
+    void testBulkLoad(int degree, double fillFactor) {
+        for (var size : List.of(0, 1, 2, 3, 7, 20, 1000)) {
+            var map = new TreeMap<String, String>();
+            var keySequence = getRandomKeySequence(size);
+            var valueSequence = getRandomValueSequence(size);
+            for (var i = 0; i < size; i++) {
+                map.put(keySequence.get(i), valueSequence.get(i));
+            }
+
+            var bplustree = BPlusTreeBuilder.bulkLoad(degree, fillFactor, ListUtil.flatten(map).iterator());
+            assertArrayEquals(ListUtil.flatten(map).toArray(), bplustree.traverse().toArray());
+
+            for (var i = 0; i < size; i += 3) {
+                bplustree.delete(keySequence.get(i));
+                map.remove(keySequence.get(i));
+                assertArrayEquals(ListUtil.flatten(map).toArray(), bplustree.traverse().toArray());
+            }
+            for (var key : getRandomKeySequence(size)) {
+                bplustree.insert(key, key);
+                map.put(key, key);
+            }
+            assertArrayEquals(ListUtil.flatten(map).toArray(), bplustree.traverse().toArray());
+            for (var key : getRandomKeySequence(size)) {
+                Assertions.assertTrue(bplustree.delete(key));
+                map.remove(key);
+            }
+            assertArrayEquals(ListUtil.flatten(map).toArray(), bplustree.traverse().toArray());
+        }
+    }
+
+    @Test
+    void parallelBulkLoad() {
+        var r = new Random();
+        for (var size : List.of(0, 1, 5, 1000, 100000)) {
+            var entries = new ArrayList<Pair<Integer, Integer>>();
+            for (var i = 0; i < size; i++) {
+                entries.add(new Pair<>(r.nextInt(size * 2 + 1), i));
+            }
+
+            for (var fillFactor : List.of(0.5, 1.0)) {
+                // later duplicates win, as with one insert per entry
+                var map = new TreeMap<Integer, Integer>();
+                for (var entry : entries) {
+                    map.put(entry.getFirst(), entry.getSecond());
+                }
+                var bplustree = BPlusTreeBuilder.parallelBulkLoad(5, fillFactor, entries);
+                assertArrayEquals(ListUtil.flatten(map).toArray(), bplustree.traverse().toArray());
+
+                for (var i = 0; i < size; i += 3) {
+                    Assertions.assertEquals(map.get(i), bplustree.get(i));
+                    bplustree.insert(i, -i);
+                    map.put(i, -i);
+                }
+                for (var i = 1; i < size; i += 2) {
+                    Assertions.assertEquals(map.remove(i) != null, bplustree.delete(i));
+                }
+                assertArrayEquals(ListUtil.flatten(map).toArray(), bplustree.traverse().toArray());
+            }
+        }
+    }
+
+    @Test
+    void bulkLoadRejectsUnsortedInput() {
+        var builder = new BPlusTreeBuilder<String, String>(4, 1.0).add("2", "2");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> builder.add("1", "1"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> builder.add("2", "2"));
+    }
+
+    @Test
+    void customComparator() {
+        var bplustree = new BPlusTree<Integer, String>(4, Comparator.reverseOrder());
+        var map = new TreeMap<Integer, String>(Comparator.reverseOrder());
+        for (var key : getRandomKeySequence(1000)) {
+            bplustree.insert(Integer.parseInt(key), key);
+            map.put(Integer.parseInt(key), key);
+        }
+        for (var i = 0; i < 1000; i += 2) {
+            bplustree.delete(i);
+            map.remove(i);
+        }
+        assertArrayEquals(ListUtil.flatten(map).toArray(), bplustree.traverse().toArray());
+        Assertions.assertEquals(new Pair<>(999, "999"), bplustree.firstEntry());
+        Assertions.assertEquals(new Pair<>(1, "1"), bplustree.lastEntry());
+        Assertions.assertEquals(new Pair<>(41, "41"), bplustree.ceilingEntry(42));
+    }
+
+    @Test
+    void insertAllDegree3() {
+        testInsertAll(3);
+    }
+
+    @Test
+    void insertAllDegree4() {
+        testInsertAll(4);
+    }
+
+    @Test
+    void insertAllDegree20() {
+        testInsertAll(20);
+    }
+
+    void testInsertAll(int degree) {
+        var r = new Random();
+        var bplustree = new BPlusTree<Integer, String>(degree);
+        var map = new TreeMap<Integer, String>();
+        for (var round = 0; round < 30; round++) {
+            var batch = new ArrayList<Pair<Integer, String>>();
+            var batchSize = r.nextInt(round % 3 == 0 ? 2000 : 50);
+            for (var i = 0; i < batchSize; i++) {
+                var key = r.nextInt(5000);
+                batch.add(new Pair<>(key, round + "-" + i));
+                map.put(key, round + "-" + i);
+            }
+            if (round % 2 == 0) {
+                batch.sort(Comparator.comparing(Pair::getFirst));
+            }
+            bplustree.insertAll(batch);
+            assertArrayEquals(ListUtil.flatten(map).toArray(), bplustree.traverse().toArray());
+
+            for (var i = 0; i < 200; i++) {
+                var key = r.nextInt(5000);
+                Assertions.assertEquals(map.get(key), bplustree.get(key));
+            }
+            var descending = new ArrayList<Pair<Integer, String>>();
+            bplustree.descendingRange(null, null).forEachRemaining(descending::add);
+            Collections.reverse(descending);
+            assertArrayEquals(ListUtil.flatten(map).toArray(), descending.toArray());
+        }
+
+        for (var key : new ArrayList<>(map.keySet())) {
+            Assertions.assertTrue(bplustree.delete(key));
+            map.remove(key);
+            if (map.size() % 97 == 0) {
+                assertArrayEquals(ListUtil.flatten(map).toArray(), bplustree.traverse().toArray());
+            }
+        }
+        Assertions.assertNull(bplustree.firstEntry());
+    }
+
+    @Test
+    void nodePoolDegree3() {
+        testNodePool(3);
+    }
+
+    @Test
+    void nodePoolDegree20() {
+        testNodePool(20);
+    }
+
+    void testNodePool(int degree) {
+        var r = new Random();
+        var bplustree = new BPlusTree<String, String>(degree, Comparator.naturalOrder(), 16);
+        var map = new TreeMap<String, String>();
+        for (var round = 0; round < 20; round++) {
+            for (var key : getRandomKeySequence(500)) {
+                if (r.nextInt(4) != 0) {
+                    bplustree.insert(key, key + round);
+                    map.put(key, key + round);
+                }
+            }
+            for (var key : getRandomKeySequence(500)) {
+                if (r.nextInt(4) != 0) {
+                    Assertions.assertEquals(map.remove(key) != null, bplustree.delete(key));
+                }
+            }
+
+            assertArrayEquals(ListUtil.flatten(map).toArray(), bplustree.traverse().toArray());
+            var descending = new ArrayList<Pair<String, String>>();
+            bplustree.descendingRange(null, null).forEachRemaining(descending::add);
+            Collections.reverse(descending);
+            assertArrayEquals(ListUtil.flatten(map).toArray(), descending.toArray());
+            for (var key : getRandomKeySequence(500)) {
+                Assertions.assertEquals(map.get(key), bplustree.get(key));
+            }
+        }
+        Assertions.assertNotNull(bplustree.toDirectedGraph());
+    }
+
+    @Test
+    void metricsDegree4() {
+        var keys = getRandomKeySequence(2000);
+        var bplustree = new BPlusTree<String, String>(4);
+        var reference = new BPlusTree<String, String>(4);
+        for (var i = 0; i < keys.size(); i++) {
+            if (i == 500) {
+                bplustree.enableMetrics();
+            }
+            bplustree.insert(keys.get(i), keys.get(i));
+            reference.insert(keys.get(i), keys.get(i));
+        }
+        for (var i = 0; i < 1500; i++) {
+            bplustree.delete(keys.get(i));
+            reference.delete(keys.get(i));
+            bplustree.get(keys.get(i));
+        }
+
+        var metrics = bplustree.enableMetrics();
+        var expected = reference.enableMetrics();
+        Assertions.assertEquals(1500, metrics.getInserts());
+        Assertions.assertEquals(1500, metrics.getDeletes());
+        Assertions.assertEquals(1500, metrics.getLookups());
+        Assertions.assertTrue(metrics.getSplits() > 0);
+        Assertions.assertTrue(metrics.getMerges() > 0);
+        Assertions.assertTrue(metrics.getComparisonsPerOperation() > 1.0);
+        Assertions.assertEquals(expected.getHeight(), metrics.getHeight());
+        Assertions.assertEquals(expected.getNodeCount(), metrics.getNodeCount());
+        Assertions.assertEquals(500, metrics.getEntryCount());
+        Assertions.assertEquals(expected.getAverageFillFactor(), metrics.getAverageFillFactor(), 1e-9);
+
+        for (var i = 1500; i < keys.size(); i++) {
+            bplustree.delete(keys.get(i));
+        }
+        Assertions.assertEquals(1, metrics.getHeight());
+        Assertions.assertEquals(1, metrics.getNodeCount());
+        Assertions.assertEquals(0, metrics.getEntryCount());
+    }
+
+    @Test
+    void flightRecorderEvents() throws IOException {
+        var bplustree = new BPlusTree<String, String>(3);
+        var path = Files.createTempFile("bplustree", ".jfr");
+        try (var recording = new Recording()) {
+            recording.enable("tech.icey.TreeOperation").withThreshold(Duration.ZERO);
+            recording.enable("tech.icey.TreeRootChange");
+            recording.start();
+            for (var i = 0; i < 64; i++) {
+                bplustree.insert(String.format("%02d", i), "");
+            }
+            for (var i = 0; i < 64; i++) {
+                bplustree.get(String.format("%02d", i));
+            }
+            for (var i = 0; i < 64; i++) {
+                bplustree.delete(String.format("%02d", i));
+            }
+            recording.stop();
+            recording.dump(path);
+
+            var events = RecordingFile.readAllEvents(path);
+            var operations = events.stream()
+                                   .filter(e -> e.getEventType().getName().equals("tech.icey.TreeOperation"))
+                                   .collect(Collectors.toList());
+            var rootChanges = events.stream()
+                                    .filter(e -> e.getEventType().getName().equals("tech.icey.TreeRootChange"))
+                                    .collect(Collectors.toList());
+            Assertions.assertEquals(192, operations.size());
+            Assertions.assertTrue(operations.stream().allMatch(e -> e.getInt("keySize") == 2));
+            Assertions.assertTrue(operations.stream()
+                                            .filter(e -> e.getString("operation").equals("get"))
+                                            .allMatch(e -> e.getInt("levelsSplit") == 0
+                                                           && e.getInt("levelsMerged") == 0
+                                                           && e.getInt("nodesAllocated") == 0));
+            Assertions.assertTrue(operations.stream().anyMatch(e -> e.getInt("levelsSplit") > 1
+                                                                    && e.getInt("nodesAllocated") > 1));
+            Assertions.assertTrue(operations.stream().anyMatch(e -> e.getInt("levelsMerged") > 1));
+
+            var grown = rootChanges.stream().filter(e -> e.getBoolean("grew")).count();
+            Assertions.assertTrue(grown > 1);
+            Assertions.assertEquals(grown, rootChanges.size() - grown);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void minimumFillDegree8() {
+        var r = new Random();
+        var bplustree = new BPlusTree<String, String>(8);
+        bplustree.setMinimumFill(0.5);
+        var map = new TreeMap<String, String>();
+        for (var round = 0; round < 10; round++) {
+            for (var key : getRandomKeySequence(2000)) {
+                if (r.nextInt(3) == 0) {
+                    bplustree.insert(key, key);
+                    map.put(key, key);
+                } else {
+                    Assertions.assertEquals(map.remove(key) != null, bplustree.delete(key));
+                }
+            }
+            assertArrayEquals(ListUtil.flatten(map).toArray(), bplustree.traverse().toArray());
+            var root = bplustree.rootNode();
+            for (var leaf = root.firstLeaf(); leaf != null; leaf = leaf.getRightSibling()) {
+                Assertions.assertTrue(leaf == root || leaf.size() >= 3);
+            }
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> bplustree.setMinimumFill(0.6));
+    }
+
+    @Test
+    void leafFiltersDegree4() {
+        testLeafFilters(4);
+    }
+
+    @Test
+    void leafFiltersDegree32() {
+        testLeafFilters(32);
+    }
+
+    @Test
+    void orderStatisticsDegree3() {
+        testOrderStatistics(3);
+    }
+
+    @Test
+    void orderStatisticsDegree20() {
+        testOrderStatistics(20);
+    }
+
+    void testOrderStatistics(int degree) {
+        var r = new Random();
+        var bplustree = new BPlusTree<Integer, Integer>(degree);
+        var map = new TreeMap<Integer, Integer>();
+        Assertions.assertThrows(IllegalStateException.class, () -> bplustree.rank(0));
+        for (var i = 0; i < 3000; i++) {
+            var key = r.nextInt(5000);
+            bplustree.insert(key, i);
+            map.put(key, i);
+        }
+        bplustree.enableOrderStatistics();
+        bplustree.setMinimumFill(0.3);
+
+        for (var round = 0; round < 4; round++) {
+            for (var i = 0; i < 2000; i++) {
+                var key = r.nextInt(5000);
+                if (r.nextBoolean()) {
+                    Assertions.assertEquals(map.remove(key) != null, bplustree.delete(key));
+                } else {
+                    bplustree.insert(key, i);
+                    map.put(key, i);
+                }
+            }
+            var batch = new ArrayList<Pair<Integer, Integer>>();
+            for (var i = 0; i < 500; i++) {
+                var key = r.nextInt(5000);
+                batch.add(new Pair<>(key, -i));
+                map.put(key, -i);
+            }
+            bplustree.insertAll(batch);
+
+            var entries = ListUtil.flatten(map);
+            for (var i = 0; i < entries.size(); i++) {
+                Assertions.assertEquals(entries.get(i), bplustree.select(i));
+            }
+            Assertions.assertThrows(IndexOutOfBoundsException.class, () -> bplustree.select(entries.size()));
+            for (var key = -1; key <= 5000; key += 7) {
+                Assertions.assertEquals(map.headMap(key).size(), bplustree.rank(key));
+                var to = key + r.nextInt(300);
+                Assertions.assertEquals(map.subMap(key, to).size(), bplustree.countRange(key, to));
+            }
+            Assertions.assertEquals(map.size(), bplustree.countRange(null, null));
+            Assertions.assertEquals(map.tailMap(2500).size(), bplustree.countRange(2500, null));
+        }
+    }
+
+    @Test
+    void aggregateDegree3() {
+        testAggregate(3);
+    }
+
+    @Test
+    void aggregateDegree16() {
+        testAggregate(16);
+    }
+
+    // concatenation is not commutative, so any partial combined out of key order shows up
+    void testAggregate(int degree) {
+        var r = new Random();
+        var bplustree = new BPlusTree<Integer, String>(degree);
+        var map = new TreeMap<Integer, String>();
+        Assertions.assertThrows(IllegalStateException.class, () -> bplustree.aggregate(null, null));
+        for (var i = 0; i < 500; i++) {
+            var key = r.nextInt(2000);
+            bplustree.insert(key, String.valueOf((char)('a' + r.nextInt(26))));
+            map.put(key, bplustree.get(key));
+        }
+        bplustree.enableAggregate(Monoid.of("", String::concat));
+        bplustree.enableOrderStatistics();
+        bplustree.setMinimumFill(0.3);
+
+        for (var round = 0; round < 5; round++) {
+            for (var i = 0; i < 1000; i++) {
+                var key = r.nextInt(2000);
+                var value = String.valueOf((char)('a' + r.nextInt(26)));
+                if (r.nextInt(3) == 0) {
+                    Assertions.assertEquals(map.remove(key) != null, bplustree.delete(key));
+                } else {
+                    bplustree.insert(key, value);
+                    map.put(key, value);
+                }
+            }
+            var batch = new ArrayList<Pair<Integer, String>>();
+            for (var i = 0; i < 200; i++) {
+                var key = r.nextInt(2000);
+                batch.add(new Pair<>(key, "A"));
+                map.put(key, "A");
+            }
+            bplustree.insertAll(batch);
+
+            Assertions.assertEquals(String.join("", map.values()), bplustree.aggregate(null, null));
+            for (var i = 0; i < 200; i++) {
+                var from = r.nextInt(2100) - 50;
+                var to = from + r.nextInt(500);
+                Assertions.assertEquals(String.join("", map.subMap(from, to).values()), bplustree.aggregate(from, to));
+                Assertions.assertEquals(String.join("", map.headMap(to).values()), bplustree.aggregate(null, to));
+                Assertions.assertEquals(String.join("", map.tailMap(from).values()), bplustree.aggregate(from, null));
+            }
+            Assertions.assertEquals("", bplustree.aggregate(100, 100));
+            Assertions.assertEquals(map.size(), bplustree.countRange(null, null));
+        }
+    }
+
+    @Test
+    void spliteratorDegree3() {
+        testSpliterator(3);
+    }
+
+    @Test
+    void spliteratorDegree16() {
+        testSpliterator(16);
+    }
+
+    void testSpliterator(int degree) {
+        var r = new Random();
+        var bplustree = new BPlusTree<Integer, Integer>(degree);
+        Assertions.assertEquals(0, bplustree.stream().count());
+        for (var i = 0; i < 20000; i++) {
+            bplustree.insert(r.nextInt(50000), i);
+        }
+        for (var i = 0; i < 5000; i++) {
+            bplustree.delete(r.nextInt(50000));
+        }
+        var expected = bplustree.traverse();
+
+        assertArrayEquals(expected.toArray(), bplustree.stream().toArray());
+        assertArrayEquals(expected.toArray(), bplustree.stream().parallel().toArray());
+        Assertions.assertEquals(expected.stream().mapToLong(Pair::getFirst).sum(),
+                                bplustree.stream().parallel().mapToLong(Pair::getFirst).sum());
+        Assertions.assertFalse(bplustree.spliterator().hasCharacteristics(Spliterator.SIZED));
+        assertArrayEquals(expected.toArray(), splitAll(bplustree.spliterator()).toArray());
+
+        bplustree.enableOrderStatistics();
+        var spliterator = bplustree.spliterator();
+        Assertions.assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+        Assertions.assertEquals(expected.size(), spliterator.getExactSizeIfKnown());
+        var prefix = spliterator.trySplit();
+        Assertions.assertEquals(expected.size(), prefix.getExactSizeIfKnown() + spliterator.getExactSizeIfKnown());
+        assertArrayEquals(expected.toArray(), splitAll(bplustree.spliterator()).toArray());
+    }
+
+    // splits all the way down, then concatenates the pieces in encounter order. Every piece that reports SIZED has to
+    // produce exactly as many elements as it estimated
+    static <T> List<T> splitAll(Spliterator<T> spliterator) {
+        var exactSize = spliterator.getExactSizeIfKnown();
+        var ret = new ArrayList<T>();
+        var prefix = spliterator.trySplit();
+        if (prefix != null) {
+            ret.addAll(splitAll(prefix));
+            ret.addAll(splitAll(spliterator));
+        } else {
+            // a failed split may still have descended into a node that knows its size
+            if (exactSize == -1) {
+                exactSize = spliterator.getExactSizeIfKnown();
+            }
+            spliterator.forEachRemaining(ret::add);
+        }
+        if (exactSize != -1) {
+            Assertions.assertEquals(exactSize, ret.size());
+        }
+        return ret;
+    }
+
+    void testLeafFilters(int degree) {
+        var r = new Random();
+        var comparisons = new int[1];
+        Comparator<Integer> countingComparator = (lhs, rhs) -> {
+            comparisons[0]++;
+            return Integer.compare(lhs, rhs);
+        };
+        var filtered = new BPlusTree<Integer, Integer>(degree, countingComparator);
+        var plain = new BPlusTree<Integer, Integer>(degree, countingComparator);
+        var map = new TreeMap<Integer, Integer>();
+        for (var i = 0; i < 20000; i++) {
+            if (i == 5000) {
+                filtered.enableLeafFilters();
+            }
+            var key = r.nextInt(10000) * 2;
+            if (r.nextInt(3) == 0) {
+                Assertions.assertEquals(map.remove(key) != null, filtered.delete(key));
+                plain.delete(key);
+            } else {
+                filtered.insert(key, i);
+                plain.insert(key, i);
+                map.put(key, i);
+            }
+            Assertions.assertEquals(map.get(key), filtered.get(key));
+        }
+        assertArrayEquals(ListUtil.flatten(map).toArray(), filtered.traverse().toArray());
+        for (var key = -1; key <= 20000; key++) {
+            Assertions.assertEquals(map.containsKey(key), filtered.containsKey(key));
+        }
+
+        comparisons[0] = 0;
+        for (var key = 1; key < 20000; key += 2) {
+            Assertions.assertNull(plain.get(key));
+        }
+        var plainComparisons = comparisons[0];
+        comparisons[0] = 0;
+        for (var key = 1; key < 20000; key += 2) {
+            Assertions.assertNull(filtered.get(key));
+        }
+        Assertions.assertTrue(comparisons[0] < plainComparisons * 0.9);
+    }
+
+    static<K, V> void assertEntryEquals(Map.Entry<K, V> expected, Pair<K, V> actual) {
+        if (expected == null) {
+            Assertions.assertNull(actual);
+        } else {
+            Assertions.assertEquals(new Pair<>(expected.getKey(), expected.getValue()), actual);
+        }
+    }
+
     void mixInsertAndDelete(int degree, int initSize, int batchSize) {
         var r = new Random();
         for (var i = 0; i < 10; i++) {
-            var bplustree = new BPlusTree(degree);
+            var bplustree = new BPlusTree<String, String>(degree);
             var map = new TreeMap<String, String>();
             var keySequence = getRandomKeySequence(initSize);
             var valueSequence = getRandomValueSequence(initSize);
@@ -138,7 +766,7 @@ public class BPlusTreeTest {
     void testSimpleInsertDelete(int degree, List<String> keySequence, List<String> valueSequence,
                                 List<String> deleteSequence) {
         for (var i = 0; i < 10; i++) {
-            var bplustree = new BPlusTree(degree);
+            var bplustree = new BPlusTree<String, String>(degree);
             var map = new TreeMap<String, String>();
 
             for (var j = 0; j < keySequence.size(); j++) {
@@ -155,4 +783,29 @@ public class BPlusTreeTest {
             }
         }
     }
+
+    @Test
+    void metricsCountBatchAndRangeComparisons() {
+        var bplustree = new BPlusTree<Integer, Integer>(8);
+        bplustree.enableAggregate(Monoid.of(0, Integer::sum));
+        var metrics = bplustree.enableMetrics();
+        var batch = new ArrayList<Pair<Integer, Integer>>();
+        for (var i = 0; i < 1000; i++) {
+            batch.add(new Pair<>(i, i));
+        }
+
+        bplustree.insertAll(batch);
+        Assertions.assertTrue(metrics.getComparisons() >= batch.size() - 1);
+
+        metrics.resetCounters();
+        bplustree.range(100, 200).forEachRemaining(entry -> {});
+        var rangeComparisons = metrics.getComparisons();
+        Assertions.assertTrue(rangeComparisons > 0);
+        bplustree.descendingRange(100, 200).forEachRemaining(entry -> {});
+        Assertions.assertTrue(metrics.getComparisons() > rangeComparisons);
+
+        metrics.resetCounters();
+        Assertions.assertEquals((Integer)0, bplustree.aggregate(200, 100));
+        Assertions.assertEquals(1, metrics.getComparisons());
+    }
 }
@@ -74,10 +74,70 @@ class BTreeTest {
         mixInsertAndDelete(20);
     }
 
+    @Test
+    void containsDegree3() {
+        testContains(3);
+    }
+
+    @Test
+    void containsDegree20() {
+        testContains(20);
+    }
+
+    @Test
+    void spliteratorDegree3() {
+        testSpliterator(3);
+    }
+
+    @Test
+    void spliteratorDegree20() {
+        testSpliterator(20);
+    }
+
+    void testSpliterator(int degree) {
+        var btree = new BTree<Integer>(degree);
+        Assertions.assertEquals(0, btree.stream().count());
+        var r = new Random();
+        for (var i = 0; i < 20000; i++) {
+            btree.insert(r.nextInt(50000));
+        }
+        var expected = btree.traverse();
+
+        assertArrayEquals(expected.toArray(), btree.stream().toArray());
+        assertArrayEquals(expected.toArray(), btree.stream().parallel().toArray());
+        Assertions.assertEquals(expected.stream().mapToLong(Integer::longValue).sum(),
+                                btree.stream().parallel().mapToLong(Integer::longValue).sum());
+        assertArrayEquals(expected.toArray(), BPlusTreeTest.splitAll(btree.spliterator()).toArray());
+
+        var spliterator = btree.spliterator();
+        var pieces = new ArrayList<Integer>();
+        while (spliterator.tryAdvance(pieces::add)) {
+            Assertions.assertNull(spliterator.trySplit());
+        }
+        assertArrayEquals(expected.toArray(), pieces.toArray());
+
+        Assertions.assertNull(btree.spliterator().getComparator());
+        var reversed = new BTree<Integer>(degree, Comparator.reverseOrder());
+        Assertions.assertSame(Comparator.reverseOrder(), reversed.spliterator().getComparator());
+    }
+
+    void testContains(int degree) {
+        var btree = new BTree<String>(degree);
+        var inserted = getRandomSequence().subList(0, 500);
+        for (var elem : inserted) {
+            btree.insert(elem);
+        }
+        var insertedSet = new TreeSet<>(inserted);
+        for (var elem : getRandomSequence()) {
+            assertEquals(insertedSet.contains(elem), btree.contains(elem));
+        }
+        assertFalse(btree.contains("0"));
+    }
+
     void mixInsertAndDelete(int degree) {
         var r = new Random();
         for (var i = 0; i < 10; i++) {
-            var btree = new BTree(degree);
+            var btree = new BTree<String>(degree);
             var set = new TreeSet<String>();
             for (var elem : getRandomSequence()) {
                 btree.insert(elem);
@@ -105,7 +165,7 @@ class BTreeTest {
 
     void testSimpleInsertDelete(int degree, List<String> insertSequence, List<String> deleteSequence) {
         for (var i = 0; i < 10; i++) {
-            var btree = new BTree(degree);
+            var btree = new BTree<String>(degree);
             var set = new TreeSet<String>();
 
             for (var elem : insertSequence) {
@@ -135,4 +195,36 @@ class BTreeTest {
             }
         }
     }
+
+    @Test
+    void metricsDegree5() {
+        var keys = getRandomSequence();
+        var btree = new BTree<String>(5);
+        var reference = new BTree<String>(5);
+        for (var i = 0; i < keys.size(); i++) {
+            if (i == 300) {
+                btree.enableMetrics();
+            }
+            btree.insert(keys.get(i));
+            reference.insert(keys.get(i));
+        }
+        for (var i = 0; i < 700; i++) {
+            btree.delete(keys.get(i));
+            reference.delete(keys.get(i));
+            btree.contains(keys.get(i));
+        }
+
+        var metrics = btree.enableMetrics();
+        var expected = reference.enableMetrics();
+        Assertions.assertEquals(keys.size() - 300, metrics.getInserts());
+        Assertions.assertEquals(700, metrics.getDeletes());
+        Assertions.assertEquals(700, metrics.getLookups());
+        Assertions.assertTrue(metrics.getSplits() > 0);
+        Assertions.assertTrue(metrics.getMerges() > 0);
+        Assertions.assertTrue(metrics.getComparisons() > 0);
+        Assertions.assertEquals(expected.getHeight(), metrics.getHeight());
+        Assertions.assertEquals(expected.getNodeCount(), metrics.getNodeCount());
+        Assertions.assertEquals(keys.size() - 700, metrics.getEntryCount());
+        Assertions.assertEquals(expected.getAverageFillFactor(), metrics.getAverageFillFactor(), 1e-9);
+    }
 }
@@ -0,0 +1,206 @@
+package tech.icey.ds;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tech.icey.basic.Comparators;
+import tech.icey.basic.ListUtil;
+import tech.icey.ds.ConcurrentBPlusTree.LatchMode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class ConcurrentBPlusTreeTest {
+    @Test
+    void insertDeleteDegree3() {
+        testInsertDelete(3, 1000, LatchMode.CRABBING);
+    }
+
+    @Test
+    void optimisticInsertDeleteDegree3() {
+        testInsertDelete(3, 1000, LatchMode.OPTIMISTIC);
+    }
+
+    @Test
+    void insertDeleteDegree4() {
+        testInsertDelete(4, 1000, LatchMode.CRABBING);
+    }
+
+    @Test
+    void optimisticInsertDeleteDegree4() {
+        testInsertDelete(4, 1000, LatchMode.OPTIMISTIC);
+    }
+
+    @Test
+    void insertDeleteDegree20() {
+        testInsertDelete(20, 1000, LatchMode.CRABBING);
+    }
+
+    @Test
+    void optimisticInsertDeleteDegree20() {
+        testInsertDelete(20, 1000, LatchMode.OPTIMISTIC);
+    }
+
+    @Test
+    void concurrentInsertDeleteDegree3() throws Exception {
+        testConcurrentInsertDelete(3, 8, 4000, LatchMode.CRABBING);
+    }
+
+    @Test
+    void concurrentInsertDeleteDegree16() throws Exception {
+        testConcurrentInsertDelete(16, 8, 20000, LatchMode.CRABBING);
+    }
+
+    @Test
+    void optimisticConcurrentInsertDeleteDegree3() throws Exception {
+        testConcurrentInsertDelete(3, 8, 4000, LatchMode.OPTIMISTIC);
+    }
+
+    @Test
+    void optimisticConcurrentInsertDeleteDegree16() throws Exception {
+        testConcurrentInsertDelete(16, 8, 20000, LatchMode.OPTIMISTIC);
+    }
+
+    @Test
+    void concurrentReadersSeeStableKeys() throws Exception {
+        testReadersSeeStableKeys(LatchMode.CRABBING);
+    }
+
+    @Test
+    void optimisticReadersSeeStableKeys() throws Exception {
+        testReadersSeeStableKeys(LatchMode.OPTIMISTIC);
+    }
+
+    @Test
+    void nullValues() {
+        for (var latchMode : LatchMode.values()) {
+            var tree = new ConcurrentBPlusTree<Integer, String>(4, Comparators.naturalOrder(), latchMode);
+            for (var key = 0; key < 100; key++) {
+                tree.insert(key, key % 2 == 0 ? null : "v");
+            }
+            for (var key = 0; key < 100; key++) {
+                Assertions.assertTrue(tree.containsKey(key));
+                Assertions.assertEquals(key % 2 == 0 ? null : "v", tree.get(key));
+            }
+            Assertions.assertFalse(tree.containsKey(100));
+            Assertions.assertNull(tree.get(100));
+        }
+    }
+
+    void testReadersSeeStableKeys(LatchMode latchMode) throws Exception {
+        var tree = new ConcurrentBPlusTree<Long, String>(4, Comparators.naturalOrder(), latchMode);
+        for (var key = 0L; key < 10000; key += 2) {
+            tree.insert(key, Long.toString(key));
+        }
+
+        var stop = new AtomicBoolean();
+        var pool = Executors.newFixedThreadPool(6);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (var t = 0; t < 2; t++) {
+                futures.add(pool.submit(() -> {
+                    var r = new Random();
+                    for (var i = 0; i < 200000; i++) {
+                        var key = (long)r.nextInt(5000) * 2 + 1;
+                        if (r.nextBoolean()) {
+                            tree.insert(key, Long.toString(key));
+                        } else {
+                            tree.delete(key);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            var readers = new ArrayList<Future<?>>();
+            for (var t = 0; t < 4; t++) {
+                readers.add(pool.submit(() -> {
+                    var r = new Random();
+                    while (!stop.get()) {
+                        var key = (long)r.nextInt(5000) * 2;
+                        Assertions.assertEquals(Long.toString(key), tree.get(key));
+                    }
+                    return null;
+                }));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+            stop.set(true);
+            for (var future : readers) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        for (var key = 0L; key < 10000; key += 2) {
+            Assertions.assertEquals(Long.toString(key), tree.get(key));
+        }
+    }
+
+    void testInsertDelete(int degree, int size, LatchMode latchMode) {
+        var tree = new ConcurrentBPlusTree<String, String>(degree, Comparators.naturalOrder(), latchMode);
+        var map = new TreeMap<String, String>();
+        for (var key : BPlusTreeTest.getRandomKeySequence(size)) {
+            tree.insert(key, key + "v");
+            map.put(key, key + "v");
+            assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+        }
+        for (var key : map.keySet()) {
+            Assertions.assertEquals(key + "v", tree.get(key));
+            Assertions.assertFalse(tree.containsKey(key + "x"));
+        }
+        for (var key : BPlusTreeTest.getRandomKeySequence(size)) {
+            Assertions.assertTrue(tree.delete(key));
+            Assertions.assertFalse(tree.delete(key));
+            map.remove(key);
+            assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+        }
+        Assertions.assertEquals(0, tree.size());
+    }
+
+    void testConcurrentInsertDelete(int degree, int threadCount, int keysPerThread, LatchMode latchMode)
+            throws Exception {
+        var tree = new ConcurrentBPlusTree<Integer, Integer>(degree, Comparators.naturalOrder(), latchMode);
+        var expected = new ConcurrentHashMap<Integer, Integer>();
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (var t = 0; t < threadCount; t++) {
+                final var thread = t;
+                futures.add(pool.submit(() -> {
+                    var r = new Random(thread);
+                    var keys = new ArrayList<Integer>();
+                    for (var i = 0; i < keysPerThread; i++) {
+                        keys.add(i * threadCount + thread);
+                    }
+                    Collections.shuffle(keys, r);
+                    for (var key : keys) {
+                        tree.insert(key, -key);
+                    }
+                    for (var key : keys) {
+                        if (r.nextInt(3) == 0) {
+                            Assertions.assertTrue(tree.delete(key));
+                        } else {
+                            expected.put(key, -key);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertArrayEquals(ListUtil.flatten(new TreeMap<>(expected)).toArray(), tree.traverse().toArray());
+        Assertions.assertEquals(expected.size(), tree.size());
+    }
+}
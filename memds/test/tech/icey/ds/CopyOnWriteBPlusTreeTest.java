@@ -0,0 +1,159 @@
+package tech.icey.ds;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tech.icey.basic.ListUtil;
+import tech.icey.basic.Pair;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class CopyOnWriteBPlusTreeTest {
+    @Test
+    void insertDeleteDegree3() {
+        testInsertDelete(3, 1000);
+    }
+
+    @Test
+    void insertDeleteDegree4() {
+        testInsertDelete(4, 1000);
+    }
+
+    @Test
+    void insertDeleteDegree20() {
+        testInsertDelete(20, 1000);
+    }
+
+    @Test
+    void snapshotsAreUnaffectedByLaterWrites() {
+        var r = new Random();
+        var tree = new CopyOnWriteBPlusTree<Integer, String>(4);
+        var map = new TreeMap<Integer, String>();
+        var snapshots = new ArrayList<CopyOnWriteBPlusTree.Snapshot<Integer, String>>();
+        var expected = new ArrayList<Object[]>();
+        for (var i = 0; i < 5000; i++) {
+            var key = r.nextInt(800);
+            if (r.nextInt(3) == 0) {
+                Assertions.assertEquals(map.remove(key) != null, tree.delete(key));
+            } else {
+                tree.insert(key, Integer.toString(i));
+                map.put(key, Integer.toString(i));
+            }
+            if (i % 250 == 0) {
+                snapshots.add(tree.snapshot());
+                expected.add(ListUtil.flatten(map).toArray());
+            }
+        }
+        for (var i = 0; i < snapshots.size(); i++) {
+            assertArrayEquals(expected.get(i), snapshots.get(i).traverse().toArray());
+            Assertions.assertEquals(expected.get(i).length, snapshots.get(i).size());
+        }
+        assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+    }
+
+    @Test
+    void range() {
+        var tree = new CopyOnWriteBPlusTree<Integer, String>(3);
+        var map = new TreeMap<Integer, String>();
+        for (var i = 0; i < 500; i++) {
+            tree.insert(i * 2, Integer.toString(i));
+            map.put(i * 2, Integer.toString(i));
+        }
+        var snapshot = tree.snapshot();
+        var r = new Random();
+        for (var i = 0; i < 200; i++) {
+            var from = r.nextInt(1100) - 50;
+            var to = from + r.nextInt(200);
+            var actual = new ArrayList<Pair<Integer, String>>();
+            snapshot.range(from, to).forEachRemaining(actual::add);
+            assertArrayEquals(ListUtil.flatten(new TreeMap<>(map.subMap(from, to))).toArray(), actual.toArray());
+        }
+    }
+
+    @Test
+    void nullValues() {
+        var tree = new CopyOnWriteBPlusTree<Integer, String>(4);
+        for (var key = 0; key < 100; key++) {
+            tree.insert(key, key % 2 == 0 ? null : "v");
+        }
+        var snapshot = tree.snapshot();
+        tree.delete(0);
+        Assertions.assertTrue(snapshot.containsKey(0));
+        Assertions.assertFalse(tree.containsKey(0));
+        for (var key = 1; key < 100; key++) {
+            Assertions.assertTrue(tree.containsKey(key));
+            Assertions.assertEquals(key % 2 == 0 ? null : "v", tree.get(key));
+        }
+        Assertions.assertFalse(snapshot.containsKey(100));
+    }
+
+    @Test
+    void scansRunAlongsideWriters() throws Exception {
+        var tree = new CopyOnWriteBPlusTree<Integer, Integer>(8);
+        for (var i = 0; i < 10000; i++) {
+            tree.insert(i, i);
+        }
+        var stop = new AtomicBoolean();
+        var pool = Executors.newFixedThreadPool(3);
+        try {
+            var writer = pool.submit(() -> {
+                var r = new Random();
+                for (var i = 0; i < 100000; i++) {
+                    var key = r.nextInt(10000);
+                    if (r.nextBoolean()) {
+                        tree.delete(key);
+                    } else {
+                        tree.insert(key, key);
+                    }
+                }
+                return null;
+            });
+            var scanners = new ArrayList<Future<?>>();
+            for (var t = 0; t < 2; t++) {
+                scanners.add(pool.submit(() -> {
+                    while (!stop.get()) {
+                        var snapshot = tree.snapshot();
+                        var entries = snapshot.traverse();
+                        Assertions.assertEquals(snapshot.size(), entries.size());
+                        for (var i = 1; i < entries.size(); i++) {
+                            Assertions.assertTrue(entries.get(i - 1).getFirst() < entries.get(i).getFirst());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            writer.get();
+            stop.set(true);
+            for (var scanner : scanners) {
+                scanner.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    void testInsertDelete(int degree, int size) {
+        var tree = new CopyOnWriteBPlusTree<String, String>(degree);
+        var map = new TreeMap<String, String>();
+        for (var key : BPlusTreeTest.getRandomKeySequence(size)) {
+            tree.insert(key, key + "v");
+            map.put(key, key + "v");
+            assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+        }
+        for (var key : map.keySet()) {
+            Assertions.assertEquals(key + "v", tree.get(key));
+            Assertions.assertFalse(tree.containsKey(key + "x"));
+        }
+        for (var key : BPlusTreeTest.getRandomKeySequence(size)) {
+            Assertions.assertTrue(tree.delete(key));
+            Assertions.assertFalse(tree.delete(key));
+            map.remove(key);
+            assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+        }
+        Assertions.assertEquals(0, tree.size());
+    }
+}
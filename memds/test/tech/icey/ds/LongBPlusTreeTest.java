@@ -0,0 +1,75 @@
+// Generated from IntBPlusTreeTest.java by tools/generate-long-bplustree.sh, do not edit.
+package tech.icey.ds;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tech.icey.basic.ListUtil;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class LongBPlusTreeTest {
+    static List<Long> getRandomKeySequence(int size) {
+        var ret = new ArrayList<Long>();
+        for (var i = 0; i < size; i++) {
+            ret.add(i * 1000000007L - size / 2 * 1000000007L);
+        }
+        Collections.shuffle(ret);
+        return ret;
+    }
+
+    @Test
+    void insertDeleteDegree3() {
+        testInsertDelete(3, 1000);
+    }
+
+    @Test
+    void insertDeleteDegree4() {
+        testInsertDelete(4, 1000);
+    }
+
+    @Test
+    void insertDeleteDegree20() {
+        testInsertDelete(20, 1000);
+    }
+
+    @Test
+    void insertDeleteMixDegree5() {
+        var r = new Random();
+        var tree = new LongBPlusTree<String>(5);
+        var map = new TreeMap<Long, String>();
+        for (var i = 0; i < 20000; i++) {
+            var key = (long)r.nextInt(500);
+            if (r.nextInt(3) == 0) {
+                Assertions.assertEquals(map.remove(key) != null, tree.delete(key));
+            } else {
+                tree.insert(key, Long.toString(i));
+                map.put(key, Long.toString(i));
+            }
+            Assertions.assertEquals(map.size(), tree.size());
+        }
+        assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+    }
+
+    void testInsertDelete(int degree, int size) {
+        var tree = new LongBPlusTree<String>(degree);
+        var map = new TreeMap<Long, String>();
+        for (var key : getRandomKeySequence(size)) {
+            tree.insert(key, key.toString());
+            map.put(key, key.toString());
+            assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+        }
+        for (var key : map.keySet()) {
+            Assertions.assertEquals(key.toString(), tree.get(key));
+            Assertions.assertFalse(tree.containsKey(key + 1));
+        }
+        for (var key : getRandomKeySequence(size)) {
+            Assertions.assertTrue(tree.delete(key));
+            Assertions.assertFalse(tree.delete(key));
+            map.remove(key);
+            assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+        }
+        Assertions.assertEquals(0, tree.size());
+    }
+}
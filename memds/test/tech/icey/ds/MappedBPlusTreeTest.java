@@ -0,0 +1,137 @@
+package tech.icey.ds;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tech.icey.basic.Codecs;
+import tech.icey.basic.ListUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class MappedBPlusTreeTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void reopenKeepsContents() throws IOException {
+        var path = tempDir.resolve("tree.db");
+        var map = new TreeMap<String, String>();
+        var keys = BPlusTreeTest.getRandomKeySequence(10000);
+
+        try (var tree = new MappedBPlusTree<>(path, Codecs.STRING, Codecs.STRING, 512)) {
+            for (var key : keys) {
+                tree.insert(key, "value-" + key);
+                map.put(key, "value-" + key);
+            }
+        }
+
+        try (var tree = new MappedBPlusTree<>(path, Codecs.STRING, Codecs.STRING, 512)) {
+            assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+            for (var i = 0; i < keys.size(); i += 2) {
+                Assertions.assertTrue(tree.delete(keys.get(i)));
+                map.remove(keys.get(i));
+            }
+        }
+
+        try (var tree = new MappedBPlusTree<>(path, Codecs.STRING, Codecs.STRING, 512)) {
+            assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+            for (var key : keys) {
+                Assertions.assertEquals(map.get(key), tree.get(key));
+            }
+        }
+    }
+
+    @Test
+    void freedPagesAreReused() throws IOException {
+        var path = tempDir.resolve("reuse.db");
+        try (var tree = new MappedBPlusTree<>(path, Codecs.LONG, Codecs.STRING, 512)) {
+            var pageCount = 0;
+            for (long round = 0; round < 5; round++) {
+                for (long i = 0; i < 5000; i++) {
+                    tree.insert(i, "x");
+                }
+                if (round == 0) {
+                    pageCount = tree.pageCount();
+                }
+                for (long i = 0; i < 5000; i++) {
+                    Assertions.assertTrue(tree.delete(i));
+                }
+            }
+            Assertions.assertTrue(tree.traverse().isEmpty());
+            Assertions.assertEquals(pageCount, tree.pageCount());
+        }
+    }
+
+    @Test
+    void sharedPrefixesAreStoredOnce() throws IOException {
+        var path = tempDir.resolve("prefix.db");
+        var prefix = "https://example.com/repositories/tech.icey/project-scott/blob/master/memds/src/";
+        var keyBytes = 0L;
+        try (var tree = new MappedBPlusTree<>(path, Codecs.STRING, Codecs.INT, 4096)) {
+            for (var i = 0; i < 20000; i++) {
+                var key = prefix + i;
+                tree.insert(key, i);
+                keyBytes += key.length();
+            }
+        }
+
+        try (var tree = new MappedBPlusTree<>(path, Codecs.STRING, Codecs.INT, 4096)) {
+            Assertions.assertTrue((long)tree.pageCount() * 4096 < keyBytes / 2);
+            for (var i = 0; i < 20000; i++) {
+                Assertions.assertEquals(Integer.valueOf(i), tree.get(prefix + i));
+            }
+            Assertions.assertNull(tree.get(prefix));
+        }
+    }
+
+    @Test
+    void rejectsMismatchedPageSize() throws IOException {
+        var path = tempDir.resolve("mismatch.db");
+        try (var tree = new MappedBPlusTree<>(path, Codecs.STRING, Codecs.STRING, 512)) {
+            tree.insert("a", "b");
+        }
+        Assertions.assertThrows(IOException.class,
+                                () -> new MappedBPlusTree<>(path, Codecs.STRING, Codecs.STRING, 1024));
+    }
+
+    @Test
+    void rejectsForeignFilesWithoutGrowingThem() throws IOException {
+        var text = tempDir.resolve("text.db");
+        Files.writeString(text, "not a tree\n");
+        Assertions.assertThrows(IOException.class, () -> new MappedBPlusTree<>(text, Codecs.STRING, Codecs.STRING));
+        Assertions.assertEquals(11, Files.size(text));
+
+        var garbage = tempDir.resolve("garbage.db");
+        Files.write(garbage, new byte[8192]);
+        Assertions.assertThrows(IOException.class, () -> new MappedBPlusTree<>(garbage, Codecs.STRING, Codecs.STRING));
+        Assertions.assertEquals(8192, Files.size(garbage));
+    }
+
+    @Test
+    void rejectsFileChangedSinceLastFlush() throws IOException {
+        var path = tempDir.resolve("dirty.db");
+        try (var tree = new MappedBPlusTree<>(path, Codecs.INT, Codecs.INT, 512)) {
+            for (var i = 0; i < 1000; i++) {
+                tree.insert(i, i);
+            }
+            // a second store sees what a crash would leave behind
+            Assertions.assertThrows(IOException.class, () -> new MappedBPlusTree<>(path, Codecs.INT, Codecs.INT, 512));
+
+            tree.flush();
+            try (var flushed = new MappedBPlusTree<>(path, Codecs.INT, Codecs.INT, 512)) {
+                Assertions.assertEquals(1000, flushed.traverse().size());
+            }
+
+            tree.delete(0);
+            Assertions.assertThrows(IOException.class, () -> new MappedBPlusTree<>(path, Codecs.INT, Codecs.INT, 512));
+        }
+        try (var tree = new MappedBPlusTree<>(path, Codecs.INT, Codecs.INT, 512)) {
+            Assertions.assertEquals(999, tree.traverse().size());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package tech.icey.ds;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tech.icey.basic.Codecs;
+import tech.icey.basic.ListUtil;
+import tech.icey.basic.Pair;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class OffHeapBPlusTreeTest {
+    @Test
+    void insertDeleteStrings() {
+        var r = new Random();
+        var tree = new OffHeapBPlusTree<>(Codecs.STRING, Codecs.STRING, 256);
+        var map = new TreeMap<String, String>();
+        for (var i = 0; i < 20000; i++) {
+            var key = "key-" + r.nextInt(2000);
+            if (r.nextInt(3) == 0) {
+                Assertions.assertEquals(map.remove(key) != null, tree.delete(key));
+            } else {
+                var value = "v".repeat(r.nextInt(20)) + i;
+                tree.insert(key, value);
+                map.put(key, value);
+            }
+        }
+        assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+        for (var i = 0; i < 2000; i++) {
+            var key = "key-" + i;
+            Assertions.assertEquals(map.get(key), tree.get(key));
+            Assertions.assertEquals(map.containsKey(key), tree.containsKey(key));
+            BPlusTreeTest.assertEntryEquals(map.floorEntry(key + "!"), tree.floorEntry(key + "!"));
+            BPlusTreeTest.assertEntryEquals(map.ceilingEntry(key + "!"), tree.ceilingEntry(key + "!"));
+        }
+
+        for (var key : new ArrayList<>(map.keySet())) {
+            Assertions.assertTrue(tree.delete(key));
+            map.remove(key);
+        }
+        Assertions.assertNull(tree.firstEntry());
+        Assertions.assertTrue(tree.traverse().isEmpty());
+    }
+
+    @Test
+    void longKeysAndRanges() {
+        var tree = new OffHeapBPlusTree<>(Codecs.LONG, Codecs.STRING);
+        var map = new TreeMap<Long, String>();
+        var keys = new ArrayList<Long>();
+        for (long i = -50000; i < 50000; i += 7) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys);
+        for (var key : keys) {
+            tree.insert(key, Long.toString(key));
+            map.put(key, Long.toString(key));
+        }
+
+        assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+        BPlusTreeTest.assertEntryEquals(map.firstEntry(), tree.firstEntry());
+        BPlusTreeTest.assertEntryEquals(map.lastEntry(), tree.lastEntry());
+
+        var expected = ListUtil.flatten(new TreeMap<>(map.subMap(-100L, 100L)));
+        var actual = new ArrayList<Pair<Long, String>>();
+        tree.range(-100L, 100L).forEachRemaining(actual::add);
+        assertArrayEquals(expected.toArray(), actual.toArray());
+
+        Collections.reverse(expected);
+        actual.clear();
+        tree.descendingRange(-100L, 100L).forEachRemaining(actual::add);
+        assertArrayEquals(expected.toArray(), actual.toArray());
+    }
+
+    @Test
+    void sharedPrefixKeys() {
+        var r = new Random();
+        var tree = new OffHeapBPlusTree<>(Codecs.STRING, Codecs.STRING, 256);
+        var map = new TreeMap<String, String>();
+        var hosts = new String[] { "https://example.com/", "https://example.org/", "https://example.com.cn/", "" };
+        for (var i = 0; i < 30000; i++) {
+            var key = hosts[r.nextInt(hosts.length)] + "articles/" + r.nextInt(100) + "/comments/" + r.nextInt(50);
+            if (r.nextInt(3) == 0) {
+                Assertions.assertEquals(map.remove(key) != null, tree.delete(key));
+            } else {
+                tree.insert(key, Integer.toString(i));
+                map.put(key, Integer.toString(i));
+            }
+        }
+        assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+
+        for (var i = 0; i < 1000; i++) {
+            var key = hosts[r.nextInt(hosts.length)] + "articles/" + r.nextInt(100);
+            Assertions.assertEquals(map.get(key + "/comments/7"), tree.get(key + "/comments/7"));
+            BPlusTreeTest.assertEntryEquals(map.floorEntry(key), tree.floorEntry(key));
+            BPlusTreeTest.assertEntryEquals(map.ceilingEntry(key), tree.ceilingEntry(key));
+        }
+
+        var from = "https://example.com/articles/3";
+        var to = "https://example.com/articles/5";
+        var expected = ListUtil.flatten(new TreeMap<>(map.subMap(from, to)));
+        var actual = new ArrayList<Pair<String, String>>();
+        tree.range(from, to).forEachRemaining(actual::add);
+        assertArrayEquals(expected.toArray(), actual.toArray());
+
+        for (var key : new ArrayList<>(map.keySet())) {
+            Assertions.assertTrue(tree.delete(key));
+        }
+        Assertions.assertTrue(tree.traverse().isEmpty());
+    }
+
+    @Test
+    void rejectsOversizedEntries() {
+        var tree = new OffHeapBPlusTree<>(Codecs.STRING, Codecs.STRING, 256);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tree.insert("k", "v".repeat(100)));
+    }
+}
@@ -0,0 +1,137 @@
+package tech.icey.ds;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tech.icey.basic.ListUtil;
+import tech.icey.basic.Pair;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class ShardedBPlusTreeTest {
+    @Test
+    void randomOperations() {
+        var r = new Random();
+        var tree = new ShardedBPlusTree<Integer, Integer>(8, List.of(2000, 4000, 6000));
+        var map = new TreeMap<Integer, Integer>();
+        for (var i = 0; i < 50000; i++) {
+            var key = r.nextInt(8000);
+            if (r.nextInt(3) == 0) {
+                Assertions.assertEquals(map.remove(key) != null, tree.delete(key));
+            } else {
+                tree.insert(key, i);
+                map.put(key, i);
+            }
+            if (i % 1000 == 0) {
+                Assertions.assertEquals(map.get(key), tree.get(key));
+                Assertions.assertEquals(map.containsKey(key), tree.containsKey(key));
+            }
+        }
+        Assertions.assertEquals(map.size(), tree.size());
+        assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+
+        for (var i = 0; i < 200; i++) {
+            var from = r.nextInt(8200) - 100;
+            var to = from + r.nextInt(3000);
+            var expected = new ArrayList<Pair<Integer, Integer>>();
+            for (var entry : map.subMap(from, to).entrySet()) {
+                expected.add(new Pair<>(entry.getKey(), entry.getValue()));
+            }
+            var actual = new ArrayList<Pair<Integer, Integer>>();
+            tree.range(from, to).forEachRemaining(actual::add);
+            assertArrayEquals(expected.toArray(), actual.toArray());
+        }
+        Assertions.assertFalse(tree.range(5000, 5000).hasNext());
+    }
+
+    @Test
+    void skewedInsertsMoveBoundaries() throws InterruptedException {
+        var tree = new ShardedBPlusTree<Integer, Integer>(16, List.of(100, 200, 300));
+        var total = 100000;
+        for (var i = 0; i < total; i++) {
+            tree.insert(1000 + i, i);
+        }
+        tree.awaitRebalancing();
+        // every key landed in the last shard, rebalancing has to have spread them over the others
+        var sizes = tree.shardSizes();
+        Assertions.assertEquals(total, Arrays.stream(sizes).sum());
+        for (var size : sizes) {
+            Assertions.assertTrue(size < total / 2, Arrays.toString(sizes));
+        }
+        var entries = tree.traverse();
+        Assertions.assertEquals(total, entries.size());
+        for (var i = 0; i < total; i++) {
+            Assertions.assertEquals((Integer)(1000 + i), entries.get(i).getFirst());
+        }
+        for (var i = 0; i < total; i += 97) {
+            Assertions.assertEquals((Integer)i, tree.get(1000 + i));
+        }
+    }
+
+    @Test
+    void rejectsUnsortedSplitKeys() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                                () -> new ShardedBPlusTree<Integer, Integer>(4, List.of(10, 10)));
+    }
+
+    @Test
+    void concurrentWritersAndScans() throws Exception {
+        var threadCount = 8;
+        var keysPerThread = 20000;
+        var tree = new ShardedBPlusTree<Integer, Integer>(16, List.of(1000, 2000, 3000, 4000, 5000, 6000, 7000));
+        var pool = Executors.newFixedThreadPool(threadCount + 1);
+        var done = new AtomicBoolean();
+        try {
+            // keys skew towards the top of the range so rebalances run while the writers and the scanner do
+            var scanner = pool.submit(() -> {
+                while (!done.get()) {
+                    Integer previous = null;
+                    var iterator = tree.range(null, null);
+                    while (iterator.hasNext()) {
+                        var key = iterator.next().getFirst();
+                        Assertions.assertTrue(previous == null || previous < key);
+                        previous = key;
+                    }
+                }
+                return null;
+            });
+            var writers = new ArrayList<Future<?>>();
+            for (var t = 0; t < threadCount; t++) {
+                final var thread = t;
+                writers.add(pool.submit(() -> {
+                    for (var i = 0; i < keysPerThread; i++) {
+                        var key = 8000 + i * threadCount + thread;
+                        tree.insert(key, thread);
+                        Assertions.assertEquals((Integer)thread, tree.get(key));
+                        if (i % 2 == 1) {
+                            Assertions.assertTrue(tree.delete(key - threadCount));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (var writer : writers) {
+                writer.get();
+            }
+            done.set(true);
+            scanner.get();
+        } finally {
+            pool.shutdown();
+        }
+
+        tree.awaitRebalancing();
+        var entries = tree.traverse();
+        Assertions.assertEquals(threadCount * keysPerThread / 2, entries.size());
+        for (var entry : entries) {
+            var key = entry.getFirst() - 8000;
+            Assertions.assertEquals(key % threadCount, (int)entry.getSecond());
+            Assertions.assertEquals(1, key / threadCount % 2);
+        }
+        var sizes = tree.shardSizes();
+        Assertions.assertTrue(Arrays.stream(sizes).filter(size -> size > 0).count() > 1, Arrays.toString(sizes));
+    }
+}
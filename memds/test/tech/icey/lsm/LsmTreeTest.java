@@ -0,0 +1,194 @@
+package tech.icey.lsm;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tech.icey.basic.Codecs;
+import tech.icey.basic.ListUtil;
+import tech.icey.basic.Pair;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class LsmTreeTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void randomOperations() throws IOException {
+        var map = new TreeMap<Long, String>();
+        var r = new Random();
+        try (var tree = new LsmTree<>(tempDir, Codecs.LONG, Codecs.STRING, 8 * 1024)) {
+            for (var i = 0; i < 40000; i++) {
+                var key = (long)r.nextInt(5000) - 2500;
+                if (r.nextInt(4) == 0) {
+                    Assertions.assertEquals(map.remove(key) != null, tree.delete(key));
+                } else {
+                    tree.insert(key, "v" + i);
+                    map.put(key, "v" + i);
+                }
+                if (i % 1000 == 0) {
+                    Assertions.assertEquals(map.get(key), tree.get(key));
+                }
+            }
+            assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+
+            tree.awaitBackgroundWork();
+            var counts = tree.tableCounts();
+            Assertions.assertTrue(counts[0] < LsmTree.L0_COMPACTION_TRIGGER);
+            Assertions.assertTrue(counts[1] > 0);
+            for (var key = -2600L; key < 2600L; key++) {
+                Assertions.assertEquals(map.get(key), tree.get(key));
+                Assertions.assertEquals(map.containsKey(key), tree.containsKey(key));
+            }
+
+            var expected = new ArrayList<Pair<Long, String>>();
+            for (var entry : map.subMap(-1000L, 1000L).entrySet()) {
+                expected.add(new Pair<>(entry.getKey(), entry.getValue()));
+            }
+            var actual = new ArrayList<Pair<Long, String>>();
+            tree.range(-1000L, 1000L).forEachRemaining(actual::add);
+            assertArrayEquals(expected.toArray(), actual.toArray());
+        }
+    }
+
+    @Test
+    void reopenKeepsFlushedData() throws IOException {
+        var map = new TreeMap<String, String>();
+        try (var tree = new LsmTree<>(tempDir, Codecs.STRING, Codecs.STRING, 4 * 1024)) {
+            for (var i = 0; i < 3000; i++) {
+                tree.insert("key" + i, "value" + i);
+                map.put("key" + i, "value" + i);
+            }
+            for (var i = 0; i < 3000; i += 7) {
+                Assertions.assertTrue(tree.delete("key" + i));
+                Assertions.assertFalse(tree.delete("key" + i));
+                map.remove("key" + i);
+            }
+        }
+
+        try (var tree = new LsmTree<>(tempDir, Codecs.STRING, Codecs.STRING, 4 * 1024)) {
+            assertArrayEquals(ListUtil.flatten(map).toArray(), tree.traverse().toArray());
+            tree.insert("key0", "again");
+            tree.flush();
+            Assertions.assertEquals("again", tree.get("key0"));
+        }
+        try (var tree = new LsmTree<>(tempDir, Codecs.STRING, Codecs.STRING, 4 * 1024)) {
+            Assertions.assertEquals("again", tree.get("key0"));
+            Assertions.assertNull(tree.get("key7"));
+        }
+    }
+
+    @Test
+    void obsoleteTablesAreDeleted() throws IOException {
+        // left behind by a flush that crashed before its manifest was written
+        Files.write(tempDir.resolve("12345.sst"), new byte[] { 1, 2, 3 });
+        try (var tree = new LsmTree<>(tempDir, Codecs.INT, Codecs.INT, 2 * 1024)) {
+            Assertions.assertFalse(Files.exists(tempDir.resolve("12345.sst")));
+            for (var i = 0; i < 20000; i++) {
+                tree.insert(i % 4000, i);
+            }
+            tree.flush();
+            tree.awaitBackgroundWork();
+
+            var tableCount = Arrays.stream(tree.tableCounts()).sum();
+            try (var files = Files.list(tempDir)) {
+                Assertions.assertEquals(tableCount, files.filter(path -> path.toString().endsWith(".sst")).count());
+            }
+            for (var i = 0; i < 4000; i++) {
+                Assertions.assertEquals((Integer)(16000 + i), tree.get(i));
+            }
+        }
+    }
+
+    @Test
+    void concurrentWriters() throws Exception {
+        var threadCount = 4;
+        var keysPerThread = 5000;
+        try (var tree = new LsmTree<>(tempDir, Codecs.INT, Codecs.INT, 16 * 1024)) {
+            var pool = Executors.newFixedThreadPool(threadCount);
+            try {
+                var futures = new ArrayList<Future<?>>();
+                for (var t = 0; t < threadCount; t++) {
+                    final var thread = t;
+                    futures.add(pool.submit(() -> {
+                        for (var i = 0; i < keysPerThread; i++) {
+                            tree.insert(i * threadCount + thread, thread);
+                            Assertions.assertEquals((Integer)thread, tree.get(i * threadCount + thread));
+                        }
+                        return null;
+                    }));
+                }
+                for (var future : futures) {
+                    future.get();
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        try (var tree = new LsmTree<>(tempDir, Codecs.INT, Codecs.INT, 16 * 1024)) {
+            var entries = tree.traverse();
+            Assertions.assertEquals(threadCount * keysPerThread, entries.size());
+            for (var entry : entries) {
+                Assertions.assertEquals((int)entry.getFirst() % threadCount, (int)entry.getSecond());
+            }
+        }
+    }
+
+    @Test
+    void concurrentDeletesSucceedOnce() throws Exception {
+        var threadCount = 4;
+        var keyCount = 4000;
+        try (var tree = new LsmTree<>(tempDir, Codecs.INT, Codecs.INT, 16 * 1024)) {
+            for (var i = 0; i < keyCount; i++) {
+                tree.insert(i, i);
+            }
+            var deleted = new AtomicInteger();
+            var pool = Executors.newFixedThreadPool(threadCount + 1);
+            try {
+                // the inserts keep freezing memtables while the deletes look up what they are about to hide
+                var writer = pool.submit(() -> {
+                    for (var i = 0; i < keyCount; i++) {
+                        tree.insert(keyCount + i, i);
+                    }
+                    return null;
+                });
+                var futures = new ArrayList<Future<?>>();
+                for (var t = 0; t < threadCount; t++) {
+                    futures.add(pool.submit(() -> {
+                        var keys = new ArrayList<Integer>();
+                        for (var i = 0; i < keyCount; i++) {
+                            keys.add(i);
+                        }
+                        Collections.shuffle(keys);
+                        for (var key : keys) {
+                            if (tree.delete(key)) {
+                                deleted.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (var future : futures) {
+                    future.get();
+                }
+                writer.get();
+            } finally {
+                pool.shutdown();
+            }
+
+            Assertions.assertEquals(keyCount, deleted.get());
+            var entries = tree.traverse();
+            Assertions.assertEquals(keyCount, entries.size());
+            Assertions.assertEquals((Integer)keyCount, entries.get(0).getFirst());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package tech.icey.lsm;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tech.icey.basic.Codecs;
+import tech.icey.basic.Pair;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class SSTableTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void lookupsAndScans() throws IOException {
+        var entries = new ArrayList<Pair<byte[], byte[]>>();
+        for (var i = 0; i < 5000; i += 2) {
+            var value = i % 10 == 0 ? SSTable.TOMBSTONE : Codecs.STRING.encode("value" + i);
+            entries.add(new Pair<>(Codecs.INT.encode(i), value));
+        }
+        var path = tempDir.resolve("1.sst");
+        var written = SSTable.write(path, 1, entries.iterator(), Long.MAX_VALUE);
+        Assertions.assertTrue(written.sizeInBytes() > 4 * SSTable.BLOCK_SIZE);
+
+        var table = SSTable.open(path, 1);
+        assertArrayEquals(Codecs.INT.encode(0), table.firstKey());
+        assertArrayEquals(Codecs.INT.encode(4998), table.lastKey());
+        for (var i = -1; i <= 5000; i++) {
+            var value = table.get(Codecs.INT.encode(i));
+            if (i < 0 || i == 5000 || i % 2 != 0) {
+                Assertions.assertNull(value);
+            } else if (i % 10 == 0) {
+                Assertions.assertSame(SSTable.TOMBSTONE, value);
+            } else {
+                assertArrayEquals(Codecs.STRING.encode("value" + i), value);
+            }
+        }
+
+        var iterator = table.iterator(Codecs.INT.encode(1001));
+        for (var i = 1002; i < 5000; i += 2) {
+            var entry = iterator.next();
+            assertArrayEquals(Codecs.INT.encode(i), entry.getFirst());
+            Assertions.assertEquals(i % 10 == 0, entry.getSecond() == SSTable.TOMBSTONE);
+        }
+        Assertions.assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    void writeStopsAtTargetSize() throws IOException {
+        var entries = new ArrayList<Pair<byte[], byte[]>>();
+        for (var i = 0; i < 1000; i++) {
+            entries.add(new Pair<>(Codecs.INT.encode(i), new byte[100]));
+        }
+        var source = entries.iterator();
+        var tables = new ArrayList<SSTable>();
+        while (source.hasNext()) {
+            tables.add(SSTable.write(tempDir.resolve(tables.size() + ".sst"), tables.size(), source, 10000));
+        }
+        Assertions.assertTrue(tables.size() >= 10);
+
+        var next = 0;
+        for (var table : tables) {
+            var iterator = table.iterator(null);
+            while (iterator.hasNext()) {
+                assertArrayEquals(Codecs.INT.encode(next++), iterator.next().getFirst());
+            }
+        }
+        Assertions.assertEquals(1000, next);
+    }
+}
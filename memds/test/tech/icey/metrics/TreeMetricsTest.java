@@ -0,0 +1,59 @@
+package tech.icey.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+
+class TreeMetricsTest {
+    @Test
+    void countsThroughComparator() {
+        var metrics = new TreeMetrics("Test", 4, true);
+        var comparator = metrics.countingComparator(Comparator.<Integer>naturalOrder());
+        metrics.recordLookup();
+        comparator.compare(1, 2);
+        comparator.compare(2, 1);
+        Assertions.assertEquals(2, metrics.getComparisons());
+        Assertions.assertEquals(2.0, metrics.getComparisonsPerOperation(), 1e-9);
+
+        metrics.resetCounters();
+        Assertions.assertEquals(0, metrics.getComparisons());
+        Assertions.assertEquals(0.0, metrics.getComparisonsPerOperation(), 1e-9);
+    }
+
+    @Test
+    void shapeGauges() {
+        var metrics = new TreeMetrics("Test", 4, true);
+        metrics.initShape(1, 1, 1, 3);
+        metrics.recordEntries(2);
+        metrics.recordSplit(true, 1);
+        metrics.recordRootSplit();
+        Assertions.assertEquals(2, metrics.getHeight());
+        Assertions.assertEquals(3, metrics.getNodeCount());
+        Assertions.assertEquals(5, metrics.getEntryCount());
+        Assertions.assertEquals(5.0 / 8, metrics.getAverageFillFactor(), 1e-9);
+
+        metrics.recordMerge(true);
+        metrics.recordRootCollapse();
+        Assertions.assertEquals(1, metrics.getHeight());
+        Assertions.assertEquals(1, metrics.getNodeCount());
+        Assertions.assertEquals(1, metrics.getSplits());
+        Assertions.assertEquals(1, metrics.getMerges());
+    }
+
+    @Test
+    void publishedThroughJmx() throws Exception {
+        var metrics = new TreeMetrics("Test", 4, true);
+        metrics.recordInsert();
+        var objectName = metrics.register("jmx test");
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            Assertions.assertEquals(1L, server.getAttribute(objectName, "Inserts"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> metrics.register("jmx test"));
+        } finally {
+            metrics.unregister(objectName);
+        }
+        Assertions.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+    }
+}
@@ -0,0 +1,29 @@
+#!/bin/sh
+# LongBPlusTree and its test are IntBPlusTree and IntBPlusTreeTest with long keys. Edit the int versions and run
+# this from memds/ to regenerate the long ones.
+set -e
+
+header() {
+    echo "// Generated from $1 by tools/generate-long-bplustree.sh, do not edit."
+}
+
+{
+    header IntBPlusTree.java
+    sed -e 's/IntBPlusTree/LongBPlusTree/g' \
+        -e 's/int\[\] keys/long[] keys/g' \
+        -e 's/new int\[keyCapacity\]/new long[keyCapacity]/g' \
+        -e 's/int key\b/long key/g' \
+        -e 's/int separator\b/long separator/g' \
+        -e 's/int splitKey\b/long splitKey/g' \
+        -e 's/Pair<Integer, V>/Pair<Long, V>/g' \
+        src/tech/icey/ds/IntBPlusTree.java
+} > src/tech/icey/ds/LongBPlusTree.java
+
+{
+    header IntBPlusTreeTest.java
+    sed -e 's/IntBPlusTree/LongBPlusTree/g' \
+        -e 's/Integer/Long/g' \
+        -e 's/7919/1000000007L/g' \
+        -e 's/r\.nextInt(500)/(long)r.nextInt(500)/g' \
+        test/tech/icey/ds/IntBPlusTreeTest.java
+} > test/tech/icey/ds/LongBPlusTreeTest.java